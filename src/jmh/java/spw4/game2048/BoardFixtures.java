@@ -0,0 +1,42 @@
+package spw4.game2048;
+
+// Realistic boards shared by the benchmarks. Every fixture is a 4x4 board without automatic spawning, so the
+// benchmarks can copy it into a game of their own before every measured call.
+final class BoardFixtures {
+
+    private BoardFixtures() {
+    }
+
+    static Game create(String name) {
+        switch (name) {
+            case "sparse":
+                return fromRows(
+                        0, 0, 0, 0,
+                        0, 2, 0, 0,
+                        0, 0, 0, 0,
+                        2, 0, 0, 4);
+            case "midGame":
+                return fromRows(
+                        2, 0, 4, 8,
+                        0, 4, 16, 2,
+                        4, 32, 64, 0,
+                        128, 256, 8, 2);
+            case "fullNoMerge":
+                return fromRows(
+                        2, 4, 8, 16,
+                        32, 64, 128, 256,
+                        2, 4, 8, 16,
+                        32, 64, 128, 256);
+            default:
+                throw new IllegalArgumentException("Unknown board fixture: " + name);
+        }
+    }
+
+    private static Game fromRows(int... tiles) {
+        Game game = new Game(false);
+        for (int i = 0; i < tiles.length; i++) {
+            game.setTileAt(i / game.getBoardSize(), i % game.getBoardSize(), tiles[i]);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,69 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// One step of many games: a GameBatch against as many Game objects making the same moves. Games that are over are
+// started again from a new seed, so both sides always step a full set of running games.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBatchBenchmark {
+
+    @Param({"1024", "65536"})
+    public int games;
+
+    private GameBatch batch;
+    private Game[] objects;
+    // a different direction per game and step, cycling through four steps
+    private byte[][] directions;
+    private int step;
+    private long seed;
+
+    @Setup
+    public void setup() {
+        this.batch = new GameBatch(this.games);
+        this.objects = new Game[this.games];
+        this.directions = new byte[4][this.games];
+        long random = 0;
+        for (int i = 0; i < this.games; i++) {
+            this.batch.initialize(i, i);
+            this.objects[i] = new Game(4, true, i);
+            this.objects[i].initialize();
+            for (int s = 0; s < 4; s++) {
+                random += SplitMix64.GAMMA;
+                this.directions[s][i] = (byte) SplitMix64.bounded(SplitMix64.mix(random), 4);
+            }
+        }
+        this.seed = this.games;
+    }
+
+    @Benchmark
+    public GameBatch batch() {
+        this.batch.move(this.directions[this.step++ & 3]);
+        for (int i = 0; i < this.games; i++) {
+            if (this.batch.isOver(i)) this.batch.initialize(i, this.seed++);
+        }
+        return this.batch;
+    }
+
+    @Benchmark
+    public Game[] objects() {
+        byte[] directions = this.directions[this.step++ & 3];
+        Direction[] values = Direction.values();
+        for (int i = 0; i < this.games; i++) {
+            Game game = this.objects[i];
+            if (game.isOver()) {
+                game = new Game(4, true, this.seed++);
+                game.initialize();
+                this.objects[i] = game;
+            }
+            game.move(values[directions[i]]);
+        }
+        return this.objects;
+    }
+}
@@ -0,0 +1,38 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    @Param({"sparse", "midGame", "fullNoMerge"})
+    public String fixture;
+
+    @Param({"up", "down", "left", "right"})
+    public Direction direction;
+
+    private Game board;
+    private Game game;
+
+    @Setup
+    public void setup() {
+        this.board = BoardFixtures.create(this.fixture);
+        // spawning stays enabled, a real move always spawns a tile afterwards
+        this.game = new Game();
+        this.game.copyFrom(this.board);
+    }
+
+    @Benchmark
+    public Game move() {
+        this.game.copyFrom(this.board);
+        this.game.move(this.direction);
+        return this.game;
+    }
+}
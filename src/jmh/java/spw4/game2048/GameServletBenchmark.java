@@ -0,0 +1,59 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameServletBenchmark {
+
+    @Param({"sparse", "midGame", "fullNoMerge"})
+    public String fixture;
+
+    private GamePageRenderer renderer;
+    private UUID id;
+    private Game game;
+    private Game copy;
+    private CountingOutputStream out;
+
+    @Setup
+    public void setup() {
+        this.renderer = new GamePageRenderer();
+        this.id = UUID.randomUUID();
+        this.game = BoardFixtures.create(this.fixture);
+        this.copy = new Game(this.game.getBoardSize(), false);
+        this.out = new CountingOutputStream();
+    }
+
+    // what the servlet does per page: copy the game, compute Content-Length and write the page
+    @Benchmark
+    public long renderPage() throws IOException {
+        this.copy.copyFrom(this.game);
+        int length = this.renderer.length(this.copy);
+        this.renderer.render(this.id, this.copy, this.out);
+        return length + this.out.count;
+    }
+
+    // stands in for the response stream of a container, which only copies the bytes into its buffer
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.count += len;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+
+    @Param({"sparse", "midGame", "fullNoMerge"})
+    public String fixture;
+
+    private Game game;
+    private Game spawningGame;
+
+    @Setup
+    public void setup() {
+        this.game = BoardFixtures.create(this.fixture);
+        this.spawningGame = new Game();
+    }
+
+    @Benchmark
+    public boolean isOver() {
+        return this.game.isOver();
+    }
+
+    @Benchmark
+    public boolean isWon() {
+        return this.game.isWon();
+    }
+
+    @Benchmark
+    public String toStringBoard() {
+        return this.game.toString();
+    }
+
+    @Benchmark
+    public Game initialize() {
+        // clears the board and spawns the two starting tiles
+        this.spawningGame.initialize();
+        return this.spawningGame;
+    }
+}
@@ -0,0 +1,40 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameTokenBenchmark {
+
+    @Param({"sparse", "midGame", "fullNoMerge"})
+    public String fixture;
+
+    private GameTokens tokens;
+    private Game game;
+    private String token;
+
+    @Setup
+    public void setup() {
+        this.tokens = new GameTokens("benchmark-secret-0123456789".getBytes(StandardCharsets.UTF_8));
+        this.game = BoardFixtures.create(this.fixture);
+        this.token = this.tokens.encode(this.game);
+    }
+
+    @Benchmark
+    public String encode() {
+        return this.tokens.encode(this.game);
+    }
+
+    @Benchmark
+    public Game decode() {
+        // verifies the signature before it builds the game
+        return this.tokens.decode(this.token);
+    }
+}
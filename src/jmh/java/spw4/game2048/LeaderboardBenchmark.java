@@ -0,0 +1,59 @@
+package spw4.game2048;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LeaderboardBenchmark {
+
+    private Leaderboard leaderboard;
+    private final AtomicLong seeds = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        this.leaderboard = new Leaderboard(Leaderboard.DEFAULT_SIZE);
+        for (int i = 0; i < Leaderboard.DEFAULT_SIZE; i++) this.leaderboard.offer(game(i, 1_000_000 + i));
+    }
+
+    @State(Scope.Thread)
+    public static class Games {
+        Game low;
+
+        @Setup
+        public void setup() {
+            this.low = game(-1, 1000);
+        }
+    }
+
+    @Benchmark
+    public void offerBelowBoard(Games games) {
+        // what nearly every move costs
+        this.leaderboard.offer(games.low);
+    }
+
+    @Benchmark
+    public void offerOntoBoard() {
+        // a new best game every time, which pushes the last one off the board
+        long seed = this.seeds.incrementAndGet();
+        this.leaderboard.offer(game(seed, 2_000_000 + (int) seed));
+    }
+
+    @Benchmark
+    public Leaderboard.Snapshot snapshot() {
+        return this.leaderboard.snapshot();
+    }
+
+    private static Game game(long seed, int score) {
+        Game game = new Game(4, false, seed);
+        game.restore(score, 0, seed);
+        return game;
+    }
+}
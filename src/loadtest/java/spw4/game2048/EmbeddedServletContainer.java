@@ -0,0 +1,324 @@
+package spw4.game2048;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A servlet container just big enough to serve one servlet over HTTP on the loopback interface, for LoadTest: the HTTP
+// server of the JDK accepts and parses the requests on a fixed pool of container threads and hands them to the servlet
+// through proxies of request and response. The proxies implement the part of the Servlet API the game servlets use
+// and throw UnsupportedOperationException on everything else. Responses are buffered and sent with their length.
+//
+// Requests go through real sockets, HTTP parsing and a thread pool, like in a container, yet nothing but the JDK and
+// the Servlet API has to be on the class path.
+final class EmbeddedServletContainer implements AutoCloseable {
+
+    private final HttpServlet servlet;
+    private final String path;
+    private final Map<String, String> initParameters;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final ServletContext context = proxy(ServletContext.class, this::context);
+    private final ExecutorService threads;
+    private final HttpServer server;
+
+    // starts the container with the servlet initialised from the given init parameters of the web application; the
+    // servlet answers all requests below path
+    EmbeddedServletContainer(HttpServlet servlet, String path, Map<String, String> initParameters, int threads) throws IOException, ServletException {
+        this.servlet = servlet;
+        this.path = path;
+        this.initParameters = new HashMap<>(initParameters);
+        servlet.init(proxy(ServletConfig.class, this::config));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.threads = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "container-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // without TCP_NODELAY, Nagle's algorithm and delayed ACKs hold every response back for some 40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(this.threads);
+        this.server.start();
+    }
+
+    // the URI the servlet is reachable under
+    URI uri() {
+        InetSocketAddress address = this.server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort() + this.path);
+    }
+
+    HttpServlet getServlet() {
+        return this.servlet;
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.threads.shutdownNow();
+        this.servlet.destroy();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        Map<String, Object> requestAttributes = new HashMap<>();
+        Response response = new Response();
+        HttpServletRequest request = proxy(HttpServletRequest.class, (method, args) -> request(exchange, parameters, requestAttributes, method, args));
+        try {
+            this.servlet.service(request, proxy(HttpServletResponse.class, response::invoke));
+        } catch (Exception | LinkageError e) {
+            this.servlet.log("Request failed", e);
+            response.status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            response.body.reset();
+        }
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().putAll(response.headers);
+            if (response.writer != null) response.writer.flush();
+            // a length of -1 sends no body at all, as 204 and 304 demand
+            int length = response.body.size();
+            exchange.sendResponseHeaders(response.status, length == 0 ? -1 : length);
+            if (length > 0) response.body.writeTo(out);
+        }
+    }
+
+    private Object request(HttpExchange exchange, Map<String, String> parameters, Map<String, Object> attributes, String method, Object[] args) {
+        switch (method) {
+            case "getMethod":
+                return exchange.getRequestMethod();
+            case "getParameter":
+                return parameters.get((String) args[0]);
+            case "getParameterMap":
+                Map<String, String[]> map = new HashMap<>();
+                parameters.forEach((name, value) -> map.put(name, new String[] {value}));
+                return map;
+            case "getParameterNames":
+                return Collections.enumeration(parameters.keySet());
+            case "getHeader":
+                return exchange.getRequestHeaders().getFirst((String) args[0]);
+            case "getHeaders":
+                List<String> values = exchange.getRequestHeaders().get((String) args[0]);
+                return Collections.enumeration(values == null ? List.<String>of() : values);
+            case "getDateHeader":
+                // dates are not parsed, LoadTest sends none
+                if (exchange.getRequestHeaders().getFirst((String) args[0]) == null) return -1L;
+                break;
+            case "getRequestURI":
+                return exchange.getRequestURI().getRawPath();
+            case "getQueryString":
+                return exchange.getRequestURI().getRawQuery();
+            case "getContextPath":
+                return "";
+            case "getServletPath":
+                return this.path;
+            case "getPathInfo":
+                return null;
+            case "getProtocol":
+                return exchange.getProtocol();
+            case "getScheme":
+                return "http";
+            case "getRemoteAddr":
+                return exchange.getRemoteAddress().getAddress().getHostAddress();
+            case "getCharacterEncoding":
+                return null;
+            case "setCharacterEncoding":
+                return null;
+            case "getAttribute":
+                return attributes.get((String) args[0]);
+            case "setAttribute":
+                attributes.put((String) args[0], args[1]);
+                return null;
+            case "removeAttribute":
+                attributes.remove((String) args[0]);
+                return null;
+            case "isAsyncSupported":
+                return false;
+            case "getServletContext":
+                return this.context;
+        }
+        throw new UnsupportedOperationException("HttpServletRequest." + method);
+    }
+
+    private Object config(String method, Object[] args) {
+        switch (method) {
+            case "getServletContext":
+                return this.context;
+            case "getServletName":
+                return this.servlet.getClass().getSimpleName();
+            case "getInitParameter":
+                return null;
+            case "getInitParameterNames":
+                return Collections.emptyEnumeration();
+        }
+        throw new UnsupportedOperationException("ServletConfig." + method);
+    }
+
+    private Object context(String method, Object[] args) {
+        switch (method) {
+            case "getInitParameter":
+                return this.initParameters.get((String) args[0]);
+            case "getInitParameterNames":
+                return Collections.enumeration(this.initParameters.keySet());
+            case "getAttribute":
+                return this.attributes.get((String) args[0]);
+            case "setAttribute":
+                this.attributes.put((String) args[0], args[1]);
+                return null;
+            case "removeAttribute":
+                this.attributes.remove((String) args[0]);
+                return null;
+            case "getContextPath":
+                return "";
+            // the web application has no resources here, so static assets are not known (see StaticAssets)
+            case "getResource":
+            case "getResourceAsStream":
+            case "getRealPath":
+            case "getMimeType":
+                return null;
+            case "getServerInfo":
+                return "EmbeddedServletContainer";
+            case "log":
+                System.err.println(args[0]);
+                if (args.length > 1 && args[1] instanceof Throwable) ((Throwable) args[1]).printStackTrace();
+                return null;
+        }
+        throw new UnsupportedOperationException("ServletContext." + method);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            // the first value of a parameter wins, as with getParameter of a container
+            parameters.putIfAbsent(name, value);
+        }
+        return parameters;
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            return handler.invoke(method.getName(), args == null ? new Object[0] : args);
+        });
+    }
+
+    private static final class Response {
+
+        int status = HttpServletResponse.SC_OK;
+        final Map<String, List<String>> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        PrintWriter writer;
+
+        Object invoke(String method, Object[] args) {
+            switch (method) {
+                case "setStatus":
+                case "sendError":
+                    this.status = (Integer) args[0];
+                    return null;
+                case "getStatus":
+                    return this.status;
+                case "setContentType":
+                    if (args[0] != null) this.headers.put("Content-Type", List.of((String) args[0]));
+                    return null;
+                case "getContentType":
+                    List<String> contentType = this.headers.get("Content-Type");
+                    return contentType == null ? null : contentType.get(0);
+                case "setHeader":
+                    this.headers.put((String) args[0], List.of(String.valueOf(args[1])));
+                    return null;
+                case "addHeader":
+                    this.headers.merge((String) args[0], List.of(String.valueOf(args[1])), (a, b) -> {
+                        List<String> all = new ArrayList<>(a);
+                        all.addAll(b);
+                        return all;
+                    });
+                    return null;
+                case "setIntHeader":
+                    this.headers.put((String) args[0], List.of(String.valueOf(args[1])));
+                    return null;
+                case "containsHeader":
+                    return this.headers.containsKey((String) args[0]);
+                // the length is taken from the buffered body
+                case "setContentLength":
+                case "setCharacterEncoding":
+                case "setBufferSize":
+                case "setLocale":
+                case "flushBuffer":
+                    return null;
+                case "getCharacterEncoding":
+                    return StandardCharsets.UTF_8.name();
+                case "isCommitted":
+                    return false;
+                case "reset":
+                    this.headers.clear();
+                    this.status = HttpServletResponse.SC_OK;
+                    this.body.reset();
+                    return null;
+                case "resetBuffer":
+                    this.body.reset();
+                    return null;
+                case "getOutputStream":
+                    return new ServletOutputStream() {
+                        @Override
+                        public void write(int b) {
+                            Response.this.body.write(b);
+                        }
+
+                        @Override
+                        public void write(byte[] b, int off, int len) {
+                            Response.this.body.write(b, off, len);
+                        }
+                    };
+                case "getWriter":
+                    if (this.writer == null) this.writer = new PrintWriter(new OutputStreamWriter(this.body, StandardCharsets.UTF_8));
+                    return this.writer;
+            }
+            throw new UnsupportedOperationException("HttpServletResponse." + method);
+        }
+    }
+}
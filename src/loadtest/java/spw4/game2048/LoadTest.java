@@ -0,0 +1,370 @@
+package spw4.game2048;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Measures GameServlet under load before a release: starts the servlet in an EmbeddedServletContainer on the loopback
+// interface and lets simulated players play it over HTTP from a pool of client threads. Every player starts a game with
+// action=new and then makes its moves, one per request or in batches (moves=...), until its moves are used up or its
+// game is over. Player n draws its moves from a sequence seeded from the seed of the run and n alone, so every run sends
+// the same requests; where tiles spawn is still up to the games the servlet seeds. A warm-up round, which is not
+// measured, lets the JIT compile the hot paths first.
+//
+// Reports throughput, latency percentiles, error rate and the heap the games left behind, and writes them as JSON.
+// Given the results of an earlier run as baseline, it exits with 1 when throughput or p99 latency got worse by more than
+// the tolerance, and whenever more requests failed than allowed, which fails the build (see pom.xml, profile loadtest).
+//
+//   java -cp ... spw4.game2048.LoadTest --players 2000 --moves 200 [--clients n] [--container-threads n] [--batch n]
+//       [--size n] [--seed n] [--store heap|offheap] [--result file] [--baseline file] [--tolerance 0.2]
+public final class LoadTest {
+
+    static final String PATH = "/Game";
+    // requests that failed, as a share of all requests, that still pass
+    static final double MAX_ERROR_RATE = 0.0;
+
+    // a request not answered by then counts as failed
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Pattern ID_PATTERN = Pattern.compile("Game\\?id=([0-9a-f-]{36})");
+    private static final String PAGE_START = "<!DOCTYPE html>";
+    private static final String[] ACTIONS = {"up", "down", "left", "right"};
+    private static final char[] MOVES = {'U', 'D', 'L', 'R'};
+
+    private final URI uri;
+    private final HttpClient client;
+    private final ExecutorService clients;
+    private final int moves;
+    private final int batch;
+    private final int size;
+    private final long seed;
+
+    LoadTest(URI uri, int clients, int moves, int batch, int size, long seed) {
+        if (size < Game.MIN_BOARD_SIZE || size > Game.MAX_BOARD_SIZE) throw new IllegalArgumentException("The given board size is invalid.");
+        if (batch < 1 || batch > AbstractGameServlet.MAX_BATCH_MOVES) throw new IllegalArgumentException("The given batch size is invalid.");
+        this.uri = uri;
+        this.moves = moves;
+        this.batch = batch;
+        this.size = size;
+        this.seed = seed;
+        this.clients = Executors.newFixedThreadPool(clients);
+        // one client shares its pool of keep-alive connections among all players
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 2000, moves = 200, batch = 1, size = Game.DEFAULT_BOARD_SIZE;
+        int clients = 2 * Runtime.getRuntime().availableProcessors();
+        int containerThreads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        String store = "heap";
+        Path result = Paths.get("loadtest-result.json"), baseline = null;
+        double tolerance = 0.2;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = i + 1 < args.length ? args[i + 1] : "";
+                switch (args[i]) {
+                    case "--players":
+                        players = Integer.parseInt(value);
+                        break;
+                    case "--moves":
+                        moves = Integer.parseInt(value);
+                        break;
+                    case "--batch":
+                        batch = Integer.parseInt(value);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "--clients":
+                        clients = Integer.parseInt(value);
+                        break;
+                    case "--container-threads":
+                        containerThreads = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--store":
+                        store = value;
+                        break;
+                    case "--result":
+                        result = Paths.get(value);
+                        break;
+                    case "--baseline":
+                        baseline = Paths.get(value);
+                        break;
+                    case "--tolerance":
+                        tolerance = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option '" + args[i] + "'");
+                }
+            }
+            if (players <= 0 || moves < 0 || clients <= 0 || containerThreads <= 0 || tolerance < 0) {
+                throw new IllegalArgumentException("players, clients and container threads must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: LoadTest [--players n] [--moves n] [--batch n] [--size n] [--clients n] [--container-threads n]"
+                    + " [--seed n] [--store heap|offheap] [--result file] [--baseline file] [--tolerance x]");
+            System.exit(2);
+            return;
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(AbstractGameServlet.STORE_PARAM, store);
+        // every player keeps its game to the end, so the heap growth covers all of them
+        parameters.put(AbstractGameServlet.MAX_GAMES_PARAM, Integer.toString(players + players / 10 + 1));
+        Results results;
+        try (EmbeddedServletContainer container = new EmbeddedServletContainer(new GameServlet(), PATH, parameters, containerThreads)) {
+            LoadTest test = new LoadTest(container.uri(), clients, moves, batch, size, seed);
+            try {
+                // the warm-up round plays players of its own, so the measured round sends the same requests every time
+                test.run(players, players / 10, null);
+                long heapBefore = usedHeap();
+                results = test.run(0, players, System.err);
+                // less the latencies the run keeps, 8 bytes per request
+                results.heapGrowth = usedHeap() - heapBefore - 8 * results.requests;
+                results.liveGames = ((GameServlet) container.getServlet()).games.size();
+            } finally {
+                test.close();
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%d players, %d moves per player in batches of %d, size %d, seed %d, %s store, %d clients, %d container threads%n",
+                players, moves, batch, size, seed, store, clients, containerThreads);
+        results.print(System.out);
+        Files.write(result, results.toJson().getBytes(StandardCharsets.UTF_8));
+
+        List<String> failures = results.check(baseline == null ? null : Results.fromJson(Files.readString(baseline)), tolerance);
+        for (String failure : failures) System.err.println("FAILED: " + failure);
+        if (!failures.isEmpty()) System.exit(1);
+    }
+
+    // plays the players from to from + count - 1 and returns what their requests measured; reports the progress every
+    // second, unless the stream is null
+    Results run(int from, int count, PrintStream progress) throws InterruptedException, ExecutionException {
+        List<Future<Recorder>> players = new ArrayList<>(count);
+        long start = System.nanoTime();
+        for (int n = from; n < from + count; n++) {
+            int player = n;
+            players.add(this.clients.submit(() -> play(player)));
+        }
+
+        Results results = new Results();
+        long lastReport = start;
+        for (int i = 0; i < players.size(); i++) {
+            results.add(players.get(i).get());
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport > 1_000_000_000L) {
+                progress.printf(Locale.ROOT, "%,d of %,d players, %,d requests%n", i + 1, count, results.requests);
+                lastReport = now;
+            }
+        }
+        results.nanos = System.nanoTime() - start;
+        return results;
+    }
+
+    void close() {
+        this.clients.shutdownNow();
+    }
+
+    // plays the game of player n, every request on the calling thread
+    private Recorder play(int player) {
+        Recorder recorder = new Recorder(2 + this.moves / this.batch);
+        String page = recorder.get(this.uri + "?action=new&size=" + this.size, this.client);
+        Matcher matcher = page == null ? null : ID_PATTERN.matcher(page);
+        if (matcher == null || !matcher.find()) {
+            recorder.players++;
+            return recorder;
+        }
+        String game = this.uri + "?id=" + matcher.group(1);
+
+        // the moves of the player, drawn like the games of SelfPlay are seeded
+        long state = SplitMix64.mix(this.seed + (player + 1L) * SplitMix64.GAMMA);
+        StringBuilder moves = new StringBuilder(this.batch);
+        for (int made = 0; made < this.moves; made += this.batch) {
+            String url;
+            if (this.batch == 1) {
+                state += SplitMix64.GAMMA;
+                url = game + "&action=" + ACTIONS[SplitMix64.bounded(SplitMix64.mix(state), ACTIONS.length)];
+            } else {
+                moves.setLength(0);
+                for (int i = made; i < Math.min(this.moves, made + this.batch); i++) {
+                    state += SplitMix64.GAMMA;
+                    moves.append(MOVES[SplitMix64.bounded(SplitMix64.mix(state), MOVES.length)]);
+                }
+                url = game + "&moves=" + moves;
+            }
+            page = recorder.get(url, this.client);
+            if (page != null && (page.contains("YOU WIN") || page.contains("YOU LOSE"))) break;
+        }
+        recorder.players++;
+        return recorder;
+    }
+
+    // heap in use after a full collection, as near as System.gc gets to it
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // the requests of one player
+    private static final class Recorder {
+
+        long[] latencies;
+        int requests;
+        int errors;
+        int players;
+
+        Recorder(int expectedRequests) {
+            this.latencies = new long[expectedRequests];
+        }
+
+        // sends a GET request and returns the page it was answered with, an empty string for 204, or null, when the
+        // request failed; a page that is no game page, like the text of an exception, counts as failed, too
+        String get(String url, HttpClient client) {
+            long start = System.nanoTime();
+            String body;
+            try {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).timeout(REQUEST_TIMEOUT).GET().build(),
+                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                int status = response.statusCode();
+                body = status == 204 ? "" : status == 200 && response.body().startsWith(PAGE_START) ? response.body() : null;
+            } catch (IOException e) {
+                body = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                body = null;
+            }
+            if (this.requests == this.latencies.length) this.latencies = Arrays.copyOf(this.latencies, 2 * this.requests);
+            this.latencies[this.requests++] = System.nanoTime() - start;
+            if (body == null) this.errors++;
+            return body;
+        }
+    }
+
+    // what a run measured; latencies are kept one by one, so the percentiles are exact
+    static final class Results {
+
+        // the latencies of every player, sorted into one array when a percentile is first asked for
+        private final List<long[]> latencies = new ArrayList<>();
+        private long[] sorted;
+        long requests;
+        long errors;
+        long players;
+        long nanos;
+        long heapGrowth;
+        long liveGames;
+
+        // the figures of a baseline, which are all a comparison needs
+        double throughput = Double.NaN;
+        double p99Micros = Double.NaN;
+
+        void add(Recorder recorder) {
+            this.latencies.add(Arrays.copyOf(recorder.latencies, recorder.requests));
+            this.sorted = null;
+            this.requests += recorder.requests;
+            this.errors += recorder.errors;
+            this.players += recorder.players;
+        }
+
+        double throughput() {
+            return Double.isNaN(this.throughput) ? this.requests / (this.nanos / 1e9) : this.throughput;
+        }
+
+        double errorRate() {
+            return this.requests == 0 ? 0 : (double) this.errors / this.requests;
+        }
+
+        // latency of the given quantile in microseconds, by the nearest-rank method
+        double percentileMicros(double quantile) {
+            if (quantile == 0.99 && !Double.isNaN(this.p99Micros)) return this.p99Micros;
+            if (this.sorted == null) {
+                this.sorted = new long[(int) this.requests];
+                int length = 0;
+                for (long[] latencies : this.latencies) {
+                    System.arraycopy(latencies, 0, this.sorted, length, latencies.length);
+                    length += latencies.length;
+                }
+                Arrays.sort(this.sorted);
+            }
+            if (this.sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(quantile * this.sorted.length);
+            return this.sorted[Math.max(rank, 1) - 1] / 1e3;
+        }
+
+        void print(PrintStream out) {
+            out.printf(Locale.ROOT, "%,d requests in %.1f s, %,.0f requests/s, %,d failed (%.3f%%)%n",
+                    this.requests, this.nanos / 1e9, throughput(), this.errors, 100 * errorRate());
+            out.printf(Locale.ROOT, "latency: p50 %,.0f us, p99 %,.0f us, p999 %,.0f us, max %,.0f us%n",
+                    percentileMicros(0.5), percentileMicros(0.99), percentileMicros(0.999), percentileMicros(1));
+            out.printf(Locale.ROOT, "heap: %+,d bytes for %,d live games (%,.0f bytes per game)%n",
+                    this.heapGrowth, this.liveGames, this.liveGames == 0 ? 0.0 : (double) this.heapGrowth / this.liveGames);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"players\":%d,\"requests\":%d,\"errors\":%d,\"errorRate\":%.6f,\"seconds\":%.3f,"
+                            + "\"throughput\":%.1f,\"p50Micros\":%.1f,\"p99Micros\":%.1f,\"p999Micros\":%.1f,\"maxMicros\":%.1f,"
+                            + "\"heapGrowthBytes\":%d,\"liveGames\":%d}%n",
+                    this.players, this.requests, this.errors, errorRate(), this.nanos / 1e9, throughput(),
+                    percentileMicros(0.5), percentileMicros(0.99), percentileMicros(0.999), percentileMicros(1),
+                    this.heapGrowth, this.liveGames);
+        }
+
+        // reads what a comparison needs from the JSON toJson writes
+        static Results fromJson(String json) {
+            Results results = new Results();
+            results.throughput = number(json, "throughput");
+            results.p99Micros = number(json, "p99Micros");
+            return results;
+        }
+
+        // returns why the run fails: too many failed requests or, compared to the baseline, unless it is null, a
+        // throughput or p99 latency worse by more than the tolerance
+        List<String> check(Results baseline, double tolerance) {
+            List<String> failures = new ArrayList<>();
+            if (errorRate() > MAX_ERROR_RATE) failures.add(String.format(Locale.ROOT, "%,d of %,d requests failed", this.errors, this.requests));
+            if (baseline == null) return failures;
+            if (throughput() < baseline.throughput() * (1 - tolerance)) {
+                failures.add(String.format(Locale.ROOT, "throughput %,.0f requests/s, baseline %,.0f requests/s", throughput(), baseline.throughput()));
+            }
+            if (percentileMicros(0.99) > baseline.percentileMicros(0.99) * (1 + tolerance)) {
+                failures.add(String.format(Locale.ROOT, "p99 latency %,.0f us, baseline %,.0f us", percentileMicros(0.99), baseline.percentileMicros(0.99)));
+            }
+            return failures;
+        }
+
+        private static double number(String json, String name) {
+            Matcher matcher = Pattern.compile("\"" + name + "\"\\s*:\\s*([-+0-9.eE]+)").matcher(json);
+            if (!matcher.find()) throw new IllegalArgumentException("The baseline has no " + name + ".");
+            return Double.parseDouble(matcher.group(1));
+        }
+    }
+}
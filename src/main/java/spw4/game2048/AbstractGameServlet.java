@@ -0,0 +1,355 @@
+package spw4.game2048;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Common part of the servlets that let clients play games. All of them share one game store and journal per web
+// application, created from the init parameters by the first one that is initialised.
+abstract class AbstractGameServlet extends HttpServlet {
+    // init parameters, either of the servlet or of the whole web application (see web.xml)
+    static final String MAX_GAMES_PARAM = "game2048.maxGames";
+    static final String IDLE_TIMEOUT_PARAM = "game2048.idleTimeoutMinutes";
+    static final String REMOVE_FINISHED_PARAM = "game2048.removeFinishedGames";
+    static final String STORE_PARAM = "game2048.store";
+    static final String JOURNAL_DIRECTORY_PARAM = "game2048.journalDirectory";
+    static final String JOURNAL_SEGMENT_PARAM = "game2048.journalSegmentMegabytes";
+    static final String JOURNAL_SYNC_PARAM = "game2048.journalSyncMillis";
+    static final String SNAPSHOT_INTERVAL_PARAM = "game2048.snapshotMinutes";
+    static final String HINT_BUDGET_PARAM = "game2048.hintMillis";
+    static final String HISTORY_DEPTH_PARAM = "game2048.historyDepth";
+    static final String TOKEN_SECRET_PARAM = "game2048.tokenSecret";
+    static final String LEADERBOARD_SIZE_PARAM = "game2048.leaderboardSize";
+    static final String RECORD_DIRECTORY_PARAM = "game2048.recordDirectory";
+    static final String RECORD_FILE_PARAM = "game2048.recordFileMegabytes";
+    static final String PAGE_CACHE_PARAM = "game2048.pageCacheSize";
+
+    // moves a player can take back, see Game.enableHistory; kept small, as every game of the heap store pays for it
+    static final int DEFAULT_HISTORY_DEPTH = 4;
+
+    // longest move sequence applied by one request, so no request keeps a game locked for long
+    static final int MAX_BATCH_MOVES = 4096;
+
+    static final String GAMES_ATTRIBUTE = "spw4.game2048.games";
+    static final String JOURNAL_ATTRIBUTE = "spw4.game2048.journal";
+    static final String WATCHERS_ATTRIBUTE = "spw4.game2048.watchers";
+    static final String HINTS_ATTRIBUTE = "spw4.game2048.hints";
+    static final String METRICS_ATTRIBUTE = "spw4.game2048.metrics";
+    static final String LEADERBOARD_ATTRIBUTE = "spw4.game2048.leaderboard";
+    static final String RECORDS_ATTRIBUTE = "spw4.game2048.records";
+
+    GameStore games;
+    // null, when games are only kept in memory
+    GameJournal journal;
+    GameWatchers watchers;
+    HintEngine hints;
+    GameMetrics metrics;
+    Leaderboard leaderboard;
+    // null, when finished games are not exported
+    GameRecordWriter records;
+    int historyDepth;
+
+    // games copied to be sent after their lock was released, one per board size and thread
+    private final ThreadLocal<Game[]> copies = ThreadLocal.withInitial(() -> new Game[Board.MAX_SIZE + 1]);
+    // moves applied by the request of a thread, see move and moves
+    final ThreadLocal<MoveTrace> traces = ThreadLocal.withInitial(() -> new MoveTrace(MAX_BATCH_MOVES));
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        historyDepth = readHistoryDepth();
+        checkRecordStore();
+        ServletContext context = getServletContext();
+        synchronized (context) {
+            // hit, miss and eviction counters are read from there, too
+            games = (GameStore) context.getAttribute(GAMES_ATTRIBUTE);
+            journal = (GameJournal) context.getAttribute(JOURNAL_ATTRIBUTE);
+            watchers = (GameWatchers) context.getAttribute(WATCHERS_ATTRIBUTE);
+            hints = (HintEngine) context.getAttribute(HINTS_ATTRIBUTE);
+            metrics = (GameMetrics) context.getAttribute(METRICS_ATTRIBUTE);
+            leaderboard = (Leaderboard) context.getAttribute(LEADERBOARD_ATTRIBUTE);
+            records = (GameRecordWriter) context.getAttribute(RECORDS_ATTRIBUTE);
+            if (games != null) return;
+
+            games = createStore();
+            hints = createHintEngine();
+            journal = openJournal(games);
+            watchers = new GameWatchers();
+            metrics = new GameMetrics();
+            leaderboard = createLeaderboard();
+            records = openRecords();
+            context.setAttribute(GAMES_ATTRIBUTE, games);
+            if (journal != null) context.setAttribute(JOURNAL_ATTRIBUTE, journal);
+            context.setAttribute(WATCHERS_ATTRIBUTE, watchers);
+            context.setAttribute(HINTS_ATTRIBUTE, hints);
+            context.setAttribute(METRICS_ATTRIBUTE, metrics);
+            context.setAttribute(LEADERBOARD_ATTRIBUTE, leaderboard);
+            if (records != null) context.setAttribute(RECORDS_ATTRIBUTE, records);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // journal, watchers, hints and records may be closed more than once, by every servlet sharing them
+        if (journal != null) journal.close();
+        if (records != null) records.close();
+        if (watchers != null) watchers.close();
+        if (hints != null) hints.close();
+        super.destroy();
+    }
+
+    // returns a new, initialised game of the given size (null for the default one)
+    static Game newGame(String sizeString) {
+        Game newGame = sizeString == null ? new Game() : new Game(Integer.parseInt(sizeString));
+        newGame.initialize();
+        return newGame;
+    }
+
+    UUID add(Game newGame) {
+        newGame.enableHistory(historyDepth);
+        // only a game followed from its first move can be exported when it is finished
+        if (records != null) newGame.enableMoveLog();
+        UUID id = games.add(newGame);
+        if (journal != null) journal.created(id, newGame);
+        metrics.created();
+        return id;
+    }
+
+    // applies the move named by the action, if the game is not over yet, and returns a copy of the game right after
+    // or null, when there is no such game; moves of one game are applied one after the other. A move that moves no
+    // tile is neither journaled nor sent to watchers; the move is recorded into the trace, unless it is null, only if
+    // it moved a tile
+    Game move(UUID id, String action, MoveTrace trace) {
+        Direction direction = toDirection(action);
+        if (trace != null) trace.clear();
+        return games.update(id, game -> {
+            if (direction != null && !game.isOver() && game.move(direction).isChanged()) {
+                if (journal != null) journal.moved(id, game, direction);
+                if (trace != null) trace.add(direction, game);
+                watchers.changed(id, game);
+                metrics.moved(game, 1, false);
+                leaderboard.offer(game);
+                if (records != null && game.isOver()) records.finished(game);
+            }
+            return copy(game);
+        });
+    }
+
+    // applies a sequence of moves like "UULDRR" (up, up, left, down, right, right) in order under a single lookup,
+    // stops as soon as the game is over and returns a copy of the game right after or null, when there is no such game;
+    // the moves that moved a tile are recorded into the trace, unless it is null, the others are skipped
+    Game moves(UUID id, String moves, MoveTrace trace) {
+        checkMoves(moves);
+        if (trace != null) trace.clear();
+        return games.update(id, game -> {
+            int moveCount = game.getMoveCount();
+            boolean wasOver = game.isOver();
+            for (int i = 0; i < moves.length() && !game.isOver(); i++) {
+                Direction direction = toDirection(moves.charAt(i));
+                if (!game.move(direction).isChanged()) continue;
+                if (journal != null) journal.moved(id, game, direction);
+                if (trace != null) trace.add(direction, game);
+            }
+            // watchers get one change for the whole batch
+            if (game.getMoveCount() != moveCount) {
+                watchers.changed(id, game);
+                metrics.moved(game, game.getMoveCount() - moveCount, wasOver);
+                leaderboard.offer(game);
+                if (records != null && game.isOver()) records.finished(game);
+            }
+            return copy(game);
+        });
+    }
+
+    // applies the move named by the action or the sequence of moves, like move and moves, to a game that is kept in no
+    // store but travels in its token (see GameTokens); nothing is journaled and nobody can watch the game. Token games
+    // stay off the leaderboard: their players can read the seed, and so every tile to come, and branch off any older
+    // link, until a game scores as high as they like
+    void play(Game game, String action, String moves, MoveTrace trace) {
+        trace.clear();
+        if (moves != null) checkMoves(moves);
+        boolean wasOver = game.isOver();
+        int moveCount = game.getMoveCount();
+        int count = moves == null ? 1 : moves.length();
+        for (int i = 0; i < count && !game.isOver(); i++) {
+            Direction direction = moves == null ? toDirection(action) : toDirection(moves.charAt(i));
+            if (direction != null && game.move(direction).isChanged()) trace.add(direction, game);
+        }
+        if (game.getMoveCount() != moveCount) metrics.moved(game, game.getMoveCount() - moveCount, wasOver);
+    }
+
+    // takes back the last move of the game, or makes the last undo again, and returns a copy of the game right after
+    // or null, when there is no such game; nothing happens, when there is nothing to take back or to make again
+    Game undo(UUID id, boolean redo) {
+        return games.update(id, game -> {
+            boolean wasOver = game.isOver();
+            if (redo ? game.redo() : game.undo()) {
+                if (journal != null) journal.undone(id, game, redo);
+                watchers.changed(id, game);
+                metrics.moved(game, 0, wasOver);
+            }
+            return copy(game);
+        });
+    }
+
+    // copies the game into a scratch game of the calling thread, so it can be sent after its lock was released;
+    // the copy stays valid until the thread copies the next game of the same size
+    Game copy(Game game) {
+        Game[] copies = this.copies.get();
+        int size = game.getBoardSize();
+        if (copies[size] == null) copies[size] = new Game(size, false);
+        copies[size].copyFrom(game);
+        return copies[size];
+    }
+
+    private static void checkMoves(String moves) {
+        if (moves.length() > MAX_BATCH_MOVES) throw new IllegalArgumentException("more than " + MAX_BATCH_MOVES + " moves");
+        for (int i = 0; i < moves.length(); i++) {
+            if (toDirection(moves.charAt(i)) == null) throw new IllegalArgumentException("invalid move '" + moves.charAt(i) + "'");
+        }
+    }
+
+    // returns the direction named by the action or null, when it names none
+    static Direction toDirection(String action) {
+        if (action == null) return null;
+        switch (action) {
+            case "up":
+                return Direction.up;
+            case "down":
+                return Direction.down;
+            case "left":
+                return Direction.left;
+            case "right":
+                return Direction.right;
+            default:
+                return null;
+        }
+    }
+
+    // returns the direction abbreviated by the letter (U, D, L or R, in either case) or null, when it stands for none
+    static Direction toDirection(char move) {
+        switch (move) {
+            case 'U': case 'u':
+                return Direction.up;
+            case 'D': case 'd':
+                return Direction.down;
+            case 'L': case 'l':
+                return Direction.left;
+            case 'R': case 'r':
+                return Direction.right;
+            default:
+                return null;
+        }
+    }
+
+    // the operation a request for an existing game makes, for its latency histogram (see GameMetrics)
+    static GameMetrics.Operation operation(String action, String moves) {
+        if (moves != null) return GameMetrics.Operation.MOVES;
+        Direction direction = toDirection(action);
+        if (direction != null) return GameMetrics.Operation.of(direction);
+        switch (action == null ? "" : action) {
+            case "undo":
+                return GameMetrics.Operation.UNDO;
+            case "redo":
+                return GameMetrics.Operation.REDO;
+            case "hint":
+                return GameMetrics.Operation.HINT;
+            default:
+                return GameMetrics.Operation.VIEW;
+        }
+    }
+
+    String getParameter(String name, String defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null) value = getServletContext().getInitParameter(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private GameStore createStore() throws ServletException {
+        try {
+            int maxGames = Integer.parseInt(getParameter(MAX_GAMES_PARAM, Integer.toString(GameRegistry.DEFAULT_MAX_GAMES)));
+            long idleTimeoutMinutes = Long.parseLong(getParameter(IDLE_TIMEOUT_PARAM, Long.toString(GameRegistry.DEFAULT_IDLE_TIMEOUT_MINUTES)));
+            boolean removeFinishedGames = Boolean.parseBoolean(getParameter(REMOVE_FINISHED_PARAM, "false"));
+            long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+            String store = getParameter(STORE_PARAM, "heap");
+            switch (store) {
+                case "heap":
+                    return new GameRegistry(maxGames, idleTimeoutMillis, removeFinishedGames);
+                case "offheap":
+                    return new OffHeapGameStore(maxGames, idleTimeoutMillis, removeFinishedGames);
+                default:
+                    throw new IllegalArgumentException("unknown store '" + store + "'");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid game store configuration: " + e.getMessage(), e);
+        }
+    }
+
+    private int readHistoryDepth() throws ServletException {
+        try {
+            // the offheap store keeps the state of a game only, so there is no undo
+            boolean offHeap = "offheap".equals(getParameter(STORE_PARAM, "heap"));
+            int depth = Integer.parseInt(getParameter(HISTORY_DEPTH_PARAM, Integer.toString(offHeap ? 0 : DEFAULT_HISTORY_DEPTH)));
+            if (depth < 0) throw new IllegalArgumentException("negative depth");
+            if (depth > 0 && offHeap) throw new IllegalArgumentException("the offheap store keeps no history, set " + HISTORY_DEPTH_PARAM + " to 0");
+            return depth;
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid history configuration: " + e.getMessage(), e);
+        }
+    }
+
+    // the offheap store keeps the state of a game only, without the move log a record is made of, so it would export
+    // nothing at all
+    private void checkRecordStore() throws ServletException {
+        if (!getParameter(RECORD_DIRECTORY_PARAM, "").isEmpty() && "offheap".equals(getParameter(STORE_PARAM, "heap"))) {
+            throw new ServletException("Invalid game record configuration: the offheap store keeps no move log, unset " + RECORD_DIRECTORY_PARAM);
+        }
+    }
+
+    private Leaderboard createLeaderboard() throws ServletException {
+        try {
+            return new Leaderboard(Integer.parseInt(getParameter(LEADERBOARD_SIZE_PARAM, Integer.toString(Leaderboard.DEFAULT_SIZE))));
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid leaderboard configuration: " + e.getMessage(), e);
+        }
+    }
+
+    private GameRecordWriter openRecords() throws ServletException {
+        String recordDirectory = getParameter(RECORD_DIRECTORY_PARAM, "");
+        if (recordDirectory.isEmpty()) return null;
+        try {
+            long fileMegabytes = Long.parseLong(getParameter(RECORD_FILE_PARAM, "256"));
+            return GameRecordWriter.open(Paths.get(recordDirectory), fileMegabytes << 20, GameRecordWriter.DEFAULT_FLUSH_MILLIS,
+                    getServletContext()::log);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("Could not open the game records: " + e.getMessage(), e);
+        }
+    }
+
+    private HintEngine createHintEngine() throws ServletException {
+        try {
+            long budgetMillis = Long.parseLong(getParameter(HINT_BUDGET_PARAM, Long.toString(HintEngine.DEFAULT_BUDGET_MILLIS)));
+            return new HintEngine(budgetMillis, Runtime.getRuntime().availableProcessors());
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid hint configuration: " + e.getMessage(), e);
+        }
+    }
+
+    private GameJournal openJournal(GameStore games) throws ServletException {
+        String journalDirectory = getParameter(JOURNAL_DIRECTORY_PARAM, "");
+        if (journalDirectory.isEmpty()) return null;
+        try {
+            int segmentMegabytes = Integer.parseInt(getParameter(JOURNAL_SEGMENT_PARAM, "64"));
+            long syncMillis = Long.parseLong(getParameter(JOURNAL_SYNC_PARAM, "10"));
+            long snapshotMinutes = Long.parseLong(getParameter(SNAPSHOT_INTERVAL_PARAM, "5"));
+            return GameJournal.open(Paths.get(journalDirectory), games, segmentMegabytes << 20,
+                    syncMillis, TimeUnit.MINUTES.toMillis(snapshotMinutes), historyDepth);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("Could not open the game journal: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package spw4.game2048;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Build step of the war (see pom.xml, phase prepare-package): writes a gzip variant of every static asset that
+// compresses well and a manifest with the content hash of every asset, which StaticAssets reads at run time. Both go
+// into a directory of their own, which the war plugin adds to the web application next to the assets.
+//
+// The output only depends on the content of the assets, so two builds of the same sources produce the same files.
+//
+//   java -cp target/classes spw4.game2048.AssetCompressor src/main/webapp target/generated-webapp
+public final class AssetCompressor {
+
+    // directories of the web application holding static assets
+    static final String[] DIRECTORIES = {"css", "js", "icons"};
+    static final String MANIFEST = "WEB-INF/assets.properties";
+    static final String GZIP_SUFFIX = ".gz";
+    // hex digits of the SHA-256 of an asset that are put into its URL
+    static final int HASH_DIGITS = 16;
+
+    // a variant that saves less than this share of the bytes is not worth a second representation, like for fonts
+    private static final double MIN_SAVING = 0.1;
+
+    private AssetCompressor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: AssetCompressor <webapp directory> <output directory>");
+            System.exit(2);
+        }
+        int compressed = compress(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("compressed " + compressed + " static assets");
+    }
+
+    // writes the variants and the manifest of the assets below webapp into output and returns the number of variants
+    static int compress(Path webapp, Path output) throws IOException {
+        List<Path> assets = new ArrayList<>();
+        for (String directory : DIRECTORIES) {
+            Path root = webapp.resolve(directory);
+            if (!Files.isDirectory(root)) continue;
+            try (Stream<Path> files = Files.walk(root)) {
+                assets.addAll(files.filter(Files::isRegularFile)
+                        .filter(file -> !file.getFileName().toString().endsWith(GZIP_SUFFIX))
+                        .collect(Collectors.toList()));
+            }
+        }
+        assets.sort(null);
+
+        int compressed = 0;
+        StringBuilder manifest = new StringBuilder("# content hashes of the static assets, written by AssetCompressor\n");
+        for (Path asset : assets) {
+            String path = webapp.relativize(asset).toString().replace('\\', '/');
+            byte[] content = Files.readAllBytes(asset);
+            manifest.append(path).append('=').append(hash(content)).append('\n');
+
+            byte[] gzipped = gzip(content);
+            if (gzipped.length > content.length * (1 - MIN_SAVING)) continue;
+            Path variant = output.resolve(path + GZIP_SUFFIX);
+            Files.createDirectories(variant.getParent());
+            Files.write(variant, gzipped);
+            compressed++;
+        }
+
+        Path manifestFile = output.resolve(MANIFEST);
+        Files.createDirectories(manifestFile.getParent());
+        try (Writer out = Files.newBufferedWriter(manifestFile, StandardCharsets.ISO_8859_1)) {
+            out.write(manifest.toString());
+        }
+        return compressed;
+    }
+
+    static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder(HASH_DIGITS);
+            for (int i = 0; i < HASH_DIGITS / 2; i++) sb.append(String.format("%02x", digest[i] & 0xFF));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2);
+        // GZIPOutputStream leaves the modification time of the header 0, which keeps the variants reproducible
+        try (OutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,218 @@
+package spw4.game2048;
+
+// 4x4 board packed into a single long: every tile is stored as a 4-bit exponent (0 = empty, 1 = 2, 2 = 4, ...).
+// The tile at (row, column) lives in nibble (row * 4 + column), so each row is one 16-bit chunk with column 0 in the
+// lowest nibble. Moves are applied through tables that map every possible row to its moved result; the tables
+// are precomputed with the shared LineKernel.
+final class BitBoard {
+
+    static final int SIZE = 4;
+
+    private static final long ROW_MASK = 0xFFFFL;
+    private static final long COL_MASK = 0x000F_000F_000F_000FL;
+
+    // xor deltas between a row and its moved result (row ^ result), indexed by row
+    private static final char[] ROW_LEFT = new char[65536];
+    private static final char[] ROW_RIGHT = new char[65536];
+    // same deltas, but spread into a column (one nibble per 16 bits) so they can be applied to a transposed row
+    private static final long[] COL_UP = new long[65536];
+    private static final long[] COL_DOWN = new long[65536];
+    // score gained when sliding the row to the left / to the right
+    private static final int[] SCORE_LEFT = new int[65536];
+    private static final int[] SCORE_RIGHT = new int[65536];
+
+    static {
+        for (int row = 0; row < 65536; row++) {
+            long slid = LineKernel.slide(row, SIZE);
+            int moved = LineKernel.movedLine(slid);
+            int score = LineKernel.score(slid);
+
+            int reversedRow = reverseRow(row);
+            int reversedMoved = reverseRow(moved);
+
+            ROW_LEFT[row] = (char) (row ^ moved);
+            ROW_RIGHT[reversedRow] = (char) (reversedRow ^ reversedMoved);
+            COL_UP[row] = unpackColumn(row ^ moved);
+            COL_DOWN[reversedRow] = unpackColumn(reversedRow ^ reversedMoved);
+            SCORE_LEFT[row] = score;
+            SCORE_RIGHT[reversedRow] = score;
+        }
+    }
+
+    private BitBoard() {
+    }
+
+    static long move(long board, Direction direction) {
+        switch (direction) {
+            case up:
+                return moveUp(board);
+            case down:
+                return moveDown(board);
+            case left:
+                return moveLeft(board);
+            case right:
+                return moveRight(board);
+        }
+        throw new IllegalArgumentException("The given direction is invalid.");
+    }
+
+    static int score(long board, Direction direction) {
+        switch (direction) {
+            case up:
+                return scoreRows(transpose(board), SCORE_LEFT);
+            case down:
+                return scoreRows(transpose(board), SCORE_RIGHT);
+            case left:
+                return scoreRows(board, SCORE_LEFT);
+            case right:
+                return scoreRows(board, SCORE_RIGHT);
+        }
+        throw new IllegalArgumentException("The given direction is invalid.");
+    }
+
+    static long moveLeft(long board) {
+        return board
+                ^ ((long) ROW_LEFT[(int) (board & ROW_MASK)])
+                ^ ((long) ROW_LEFT[(int) ((board >>> 16) & ROW_MASK)] << 16)
+                ^ ((long) ROW_LEFT[(int) ((board >>> 32) & ROW_MASK)] << 32)
+                ^ ((long) ROW_LEFT[(int) (board >>> 48)] << 48);
+    }
+
+    static long moveRight(long board) {
+        return board
+                ^ ((long) ROW_RIGHT[(int) (board & ROW_MASK)])
+                ^ ((long) ROW_RIGHT[(int) ((board >>> 16) & ROW_MASK)] << 16)
+                ^ ((long) ROW_RIGHT[(int) ((board >>> 32) & ROW_MASK)] << 32)
+                ^ ((long) ROW_RIGHT[(int) (board >>> 48)] << 48);
+    }
+
+    static long moveUp(long board) {
+        long t = transpose(board);
+        return board
+                ^ COL_UP[(int) (t & ROW_MASK)]
+                ^ (COL_UP[(int) ((t >>> 16) & ROW_MASK)] << 4)
+                ^ (COL_UP[(int) ((t >>> 32) & ROW_MASK)] << 8)
+                ^ (COL_UP[(int) (t >>> 48)] << 12);
+    }
+
+    static long moveDown(long board) {
+        long t = transpose(board);
+        return board
+                ^ COL_DOWN[(int) (t & ROW_MASK)]
+                ^ (COL_DOWN[(int) ((t >>> 16) & ROW_MASK)] << 4)
+                ^ (COL_DOWN[(int) ((t >>> 32) & ROW_MASK)] << 8)
+                ^ (COL_DOWN[(int) (t >>> 48)] << 12);
+    }
+
+    // bit (1 << direction.ordinal()) is set for every direction that changes the board: a direction changes it, when
+    // the move delta of at least one row (of the transposed board for up and down) is not 0
+    static int legalMoves(long board) {
+        long t = transpose(board);
+        int legal = 0;
+        if (changesRows(t, ROW_LEFT)) legal |= 1 << Direction.up.ordinal();
+        if (changesRows(t, ROW_RIGHT)) legal |= 1 << Direction.down.ordinal();
+        if (changesRows(board, ROW_LEFT)) legal |= 1 << Direction.left.ordinal();
+        if (changesRows(board, ROW_RIGHT)) legal |= 1 << Direction.right.ordinal();
+        return legal;
+    }
+
+    // returns true, when at least one direction changes the board
+    static boolean canMove(long board) {
+        return countEmpty(board) > 0 || moveLeft(board) != board || moveUp(board) != board;
+    }
+
+    static int countEmpty(long board) {
+        // fold every nibble into its lowest bit, then count the nibbles where nothing was set
+        board |= (board >>> 2) & 0x3333_3333_3333_3333L;
+        board |= (board >>> 1);
+        return Long.bitCount(~board & 0x1111_1111_1111_1111L);
+    }
+
+    static int maxExponent(long board) {
+        int max = 0;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            max = Math.max(max, (int) (board >>> (4 * i)) & 0xF);
+        }
+        return max;
+    }
+
+    // returns true, when a tile is 2048 or larger (exponent 11 or more: 1011, 11xx), without looking at every tile
+    static boolean hasWinningTile(long board) {
+        long bit3 = board & 0x8888_8888_8888_8888L;
+        long bit2 = (board << 1) & 0x8888_8888_8888_8888L;
+        long bit1 = (board << 2) & 0x8888_8888_8888_8888L;
+        long bit0 = (board << 3) & 0x8888_8888_8888_8888L;
+        return (bit3 & (bit2 | (bit1 & bit0))) != 0;
+    }
+
+    // returns the board with the n-th (0-based, row-major) empty tile set to the given exponent
+    static long fillEmpty(long board, int n, int exponent) {
+        for (int shift = 0; shift < 64; shift += 4) {
+            if (((board >>> shift) & 0xF) == 0 && n-- == 0) {
+                return board | ((long) exponent << shift);
+            }
+        }
+        return board;
+    }
+
+    static long transpose(long board) {
+        long a1 = board & 0xF0F0_0F0F_F0F0_0F0FL;
+        long a2 = board & 0x0000_F0F0_0000_F0F0L;
+        long a3 = board & 0x0F0F_0000_0F0F_0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00_FF00_00FF_00FFL;
+        long b2 = a & 0x00FF_00FF_0000_0000L;
+        long b3 = a & 0x0000_0000_FF00_FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    // reverses the order of the tiles in every row
+    static long mirror(long board) {
+        return ((board & 0x000F_000F_000F_000FL) << 12)
+                | ((board & 0x00F0_00F0_00F0_00F0L) << 4)
+                | ((board >>> 4) & 0x00F0_00F0_00F0_00F0L)
+                | ((board >>> 12) & 0x000F_000F_000F_000FL);
+    }
+
+    // reverses the order of the rows
+    static long flip(long board) {
+        return (board << 48)
+                | ((board << 16) & 0x0000_FFFF_0000_0000L)
+                | ((board >>> 16) & 0x0000_0000_FFFF_0000L)
+                | (board >>> 48);
+    }
+
+    // the same board for all 8 rotations and reflections of it: the smallest of their packed forms
+    static long canonical(long board) {
+        long flipped = flip(board);
+        long transposed = transpose(board);
+        long transposedFlipped = flip(transposed);
+        long min = Math.min(board, mirror(board));
+        min = Math.min(min, Math.min(flipped, mirror(flipped)));
+        min = Math.min(min, Math.min(transposed, mirror(transposed)));
+        return Math.min(min, Math.min(transposedFlipped, mirror(transposedFlipped)));
+    }
+
+    private static boolean changesRows(long board, char[] deltas) {
+        return (deltas[(int) (board & ROW_MASK)]
+                | deltas[(int) ((board >>> 16) & ROW_MASK)]
+                | deltas[(int) ((board >>> 32) & ROW_MASK)]
+                | deltas[(int) (board >>> 48)]) != 0;
+    }
+
+    private static int scoreRows(long board, int[] table) {
+        return table[(int) (board & ROW_MASK)]
+                + table[(int) ((board >>> 16) & ROW_MASK)]
+                + table[(int) ((board >>> 32) & ROW_MASK)]
+                + table[(int) (board >>> 48)];
+    }
+
+    private static int reverseRow(int row) {
+        return ((row >>> 12) & 0x000F) | ((row >>> 4) & 0x00F0) | ((row << 4) & 0x0F00) | ((row << 12) & 0xF000);
+    }
+
+    private static long unpackColumn(int row) {
+        long r = row;
+        return (r | (r << 12) | (r << 24) | (r << 36)) & COL_MASK;
+    }
+}
@@ -0,0 +1,179 @@
+package spw4.game2048;
+
+// Square board of 3x3 up to 8x8 tiles. Tiles are stored as 4-bit exponents in row-major order, 16 tiles per long,
+// so 3x3 and 4x4 boards fit into a single long and an 8x8 board into four. 4x4 boards are moved through the
+// BitBoard tables, every other size through one direction-parameterised pass over the shared LineKernel.
+final class Board {
+
+    static final int MIN_SIZE = 3;
+    static final int MAX_SIZE = LineKernel.MAX_LENGTH;
+
+    private static final long LOW_BITS = 0x1111_1111_1111_1111L;
+
+    private final int size;
+    private final long[] words;
+
+    Board(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) throw new IllegalArgumentException("The given board size is invalid.");
+        this.size = size;
+        this.words = new long[(size * size + 15) / 16];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int get(int row, int column) {
+        return getCell(row * this.size + column);
+    }
+
+    void set(int row, int column, int exponent) {
+        setCell(row * this.size + column, exponent);
+    }
+
+    // number of longs the tiles are packed into, see getWord
+    int wordCount() {
+        return this.words.length;
+    }
+
+    long getWord(int index) {
+        return this.words[index];
+    }
+
+    void setWord(int index, long word) {
+        this.words[index] = word;
+    }
+
+    void copyFrom(Board other) {
+        if (other.size != this.size) throw new IllegalArgumentException("The given board has a different size.");
+        System.arraycopy(other.words, 0, this.words, 0, this.words.length);
+    }
+
+    void clear() {
+        for (int w = 0; w < this.words.length; w++) this.words[w] = 0;
+    }
+
+    // moves all tiles into the given direction and returns the score gained by merging or -1, when no tile moved
+    int move(Direction direction) {
+        if (this.size == BitBoard.SIZE) {
+            long board = this.words[0];
+            long moved = BitBoard.move(board, direction);
+            if (moved == board) return -1;
+            this.words[0] = moved;
+            return BitBoard.score(board, direction);
+        }
+        return slide(direction, true);
+    }
+
+    // bit (1 << direction.ordinal()) is set for every direction that moves at least one tile; changes nothing
+    int legalMoves() {
+        if (this.size == BitBoard.SIZE) return BitBoard.legalMoves(this.words[0]);
+        int legal = 0;
+        for (Direction direction : Direction.values()) {
+            if (slide(direction, false) >= 0) legal |= 1 << direction.ordinal();
+        }
+        return legal;
+    }
+
+    // slides every line into the given direction and returns the score gained or -1, when no tile moved;
+    // unless apply is set, the tiles are left where they are and the first line that would change ends the walk
+    private int slide(Direction direction, boolean apply) {
+        // every line is walked from the tile the others slide towards: first + line * lineStep + i * step
+        int first, step, lineStep;
+        switch (direction) {
+            case up:
+                first = 0; step = this.size; lineStep = 1;
+                break;
+            case down:
+                first = (this.size - 1) * this.size; step = -this.size; lineStep = 1;
+                break;
+            case left:
+                first = 0; step = 1; lineStep = this.size;
+                break;
+            case right:
+                first = this.size - 1; step = -1; lineStep = this.size;
+                break;
+            default:
+                throw new IllegalArgumentException("The given direction is invalid.");
+        }
+
+        int score = 0;
+        boolean changed = false;
+        for (int line = 0; line < this.size; line++) {
+            int start = first + line * lineStep;
+            int tiles = 0;
+            for (int i = 0; i < this.size; i++) tiles |= getCell(start + i * step) << (4 * i);
+
+            long slid = LineKernel.slide(tiles, this.size);
+            int moved = LineKernel.movedLine(slid);
+            if (moved != tiles) {
+                if (!apply) return 0;
+                changed = true;
+                for (int i = 0; i < this.size; i++) setCell(start + i * step, (moved >>> (4 * i)) & 0xF);
+            }
+            score += LineKernel.score(slid);
+        }
+        return changed ? score : -1;
+    }
+
+    // returns true, when at least one direction changes the board
+    boolean canMove() {
+        if (this.size == BitBoard.SIZE) return BitBoard.canMove(this.words[0]);
+        if (countEmpty() > 0) return true;
+
+        // a full board can only move if two equal tiles are next to each other
+        for (int r = 0; r < this.size; r++) {
+            for (int c = 0; c < this.size; c++) {
+                int exponent = get(r, c);
+                if (exponent == LineKernel.MAX_EXPONENT) continue;
+                if (c + 1 < this.size && exponent == get(r, c + 1)) return true;
+                if (r + 1 < this.size && exponent == get(r + 1, c)) return true;
+            }
+        }
+        return false;
+    }
+
+    int countEmpty() {
+        int cells = this.size * this.size;
+        int empty = 0;
+        for (int w = 0; w < this.words.length; w++) {
+            int used = Math.min(16, cells - 16 * w);
+            long mask = used == 16 ? LOW_BITS : LOW_BITS & ((1L << (4 * used)) - 1);
+            // fold every nibble into its lowest bit, then count the nibbles where nothing was set
+            long folded = this.words[w];
+            folded |= (folded >>> 2) & 0x3333_3333_3333_3333L;
+            folded |= (folded >>> 1);
+            empty += Long.bitCount(~folded & mask);
+        }
+        return empty;
+    }
+
+    int maxExponent() {
+        int max = 0;
+        for (int i = 0; i < this.size * this.size; i++) max = Math.max(max, getCell(i));
+        return max;
+    }
+
+    // sets the n-th (0-based, row-major) empty tile to the given exponent and returns its cell index or -1,
+    // when there are not that many empty tiles
+    int fillEmpty(int n, int exponent) {
+        for (int i = 0; i < this.size * this.size; i++) {
+            if (getCell(i) == 0 && n-- == 0) {
+                setCell(i, exponent);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // cells are numbered row-major, the cell index of (row, column) is row * size + column
+    int getCell(int index) {
+        return (int) (this.words[index >>> 4] >>> ((index & 15) * 4)) & 0xF;
+    }
+
+    void setCell(int index, int exponent) {
+        int shift = (index & 15) * 4;
+        int w = index >>> 4;
+        this.words[w] = (this.words[w] & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+}
@@ -1,63 +1,105 @@
 package spw4.game2048;
 
-import java.util.*;
+import java.util.Arrays;
 
 public class Game {
 
-    public static int BOARD_SIZE = 4;
+    public static final int DEFAULT_BOARD_SIZE = 4;
+    public static final int MIN_BOARD_SIZE = Board.MIN_SIZE;
+    public static final int MAX_BOARD_SIZE = Board.MAX_SIZE;
+    // largest tile a board can hold, see LineKernel.MAX_EXPONENT
+    public static final int MAX_TILE = 1 << LineKernel.MAX_EXPONENT;
 
-    private int[][] tiles;
+    private static final int WINNING_EXPONENT = 11; // 2048
+
+    private final Board board;
     private int score;
+    private int moveCount;
     private boolean automaticSpawningEnabled;
+    // tiles are spawned from a SplitMix64 sequence that restarts at the seed on every initialize
+    private final long seed;
+    private long randomState;
+    // tile spawned by the last move: its cell index (see Board) or -1 and its exponent
+    private int lastSpawnCell = -1;
+    private int lastSpawnExponent;
+    // status kept up to date by every change of the board, so the queries below never scan it
+    private int emptyTiles;
+    private int maxExponent;
+    private boolean moveAvailable;
+    // counts every change by a move, undo, redo or setTileAt, so unlike the move count it never goes back; the version
+    // of the game that journal records and cached pages are checked against
+    private int revision;
+    // null, unless enabled
+    private GameHistory history;
+    // every move since initialize, the first moveCount entries are valid: direction ordinal | spawned tile << 2, the
+    // tile as cell index << 2 | exponent or 0 for none; null, unless enabled
+    private short[] moveLog;
 
     public Game() {
         this(true);
     }
 
     public Game(boolean automaticSpawningEnabled) {
-        this.tiles = new int[BOARD_SIZE][BOARD_SIZE];
+        this(DEFAULT_BOARD_SIZE, automaticSpawningEnabled);
+    }
+
+    public Game(int boardSize) {
+        this(boardSize, true);
+    }
+
+    public Game(int boardSize, boolean automaticSpawningEnabled) throws IllegalArgumentException {
+        this(boardSize, automaticSpawningEnabled, SplitMix64.newSeed());
+    }
+
+    // the same seed and the same moves always lead to the same board
+    public Game(int boardSize, boolean automaticSpawningEnabled, long seed) throws IllegalArgumentException {
+        this.board = new Board(boardSize);
         this.automaticSpawningEnabled = automaticSpawningEnabled;
+        this.seed = seed;
+        this.randomState = seed;
+        refreshStatus();
+    }
+
+    public int getBoardSize() {
+        return this.board.size();
     }
 
     public int getScore() {
         return this.score;
     }
 
+    public int getMoveCount() {
+        return this.moveCount;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
     public boolean isOver() {
         if (isWon())
             return true;
 
-        // check if empty tile is available.
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                if (this.getTileAt(r, c) == 0)  return false;
-            }
-        }
-
-        // check if two equal tiles are next to each other.
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                int tileNumber = this.getTileAt(r, c);
-                // check if up neighbour is equal
-                if (1 < r && tileNumber == this.getTileAt(r - 1, c)) return false;
-                // check if down neighbour is equal
-                if (r < Game.BOARD_SIZE - 2 && tileNumber == this.getTileAt(r + 1, c)) return false;
-                // check if left neighbour is equal
-                if (1 < c && tileNumber == this.getTileAt(r, c - 1)) return false;
-                // check if right neighbour is equal
-                if (c < Game.BOARD_SIZE - 2 && tileNumber == this.getTileAt(r, c + 1)) return false;
-            }
-        }
-        return true;
+        // the game goes on as long as any direction changes the board
+        return !this.moveAvailable;
     }
 
     public boolean isWon() {
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                if (this.getTileAt(r, c) == 2048) return true;
-            }
-        }
-        return false;
+        return this.maxExponent >= WINNING_EXPONENT;
+    }
+
+    public int getEmptyTileCount() {
+        return this.emptyTiles;
+    }
+
+    // largest tile on the board or 0, when the board is empty
+    public int getMaxTile() {
+        return this.maxExponent == 0 ? 0 : 1 << this.maxExponent;
+    }
+
+    // returns true, when at least one direction changes the board
+    public boolean isMoveAvailable() {
+        return this.moveAvailable;
     }
 
     @Override
@@ -65,48 +107,183 @@ public class Game {
         StringBuilder sb = new StringBuilder();
         sb.append("Score: ").append(this.getScore()).append("\n");
 
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE - 1; c++) {
+        int size = this.getBoardSize();
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size - 1; c++) {
                 sb.append(this.getTileString(r, c)).append("\t\t");
             }
-            sb.append(this.getTileString(r, Game.BOARD_SIZE - 1)).append("\n");
+            sb.append(this.getTileString(r, size - 1)).append("\n");
         }
         return sb.toString();
     }
 
     public void initialize() {
-        this.tiles = new int[BOARD_SIZE][BOARD_SIZE];
+        this.board.clear();
+        this.randomState = this.seed;
+        refreshStatus();
         automaticSpawning(); automaticSpawning(); // spawn two tiles
+        if (this.history != null) this.history.reset(this);
     }
 
-    public void move(Direction direction) {
-        switch (direction) {
-            case up:
-                moveUp();
-                break;
-            case down:
-                moveDown();
-                break;
-            case right:
-                moveRight();
-                break;
-            case left:
-                moveLeft();
-                break;
-        }
-        automaticSpawning();
+    // keeps the states of the last depth moves, so they can be taken back; 0 keeps none. The history starts at the
+    // current state and takes the same memory, however long the game runs.
+    public void enableHistory(int depth) throws IllegalArgumentException {
+        if (depth < 0) throw new IllegalArgumentException("The given history depth is invalid.");
+        this.history = depth == 0 ? null : new GameHistory(depth, this.board.wordCount());
+        if (this.history != null) this.history.reset(this);
     }
 
-    public void setTileAt(int row, int column, int num) throws IllegalArgumentException {
-        if (row < 0 || column < 0 || row >= BOARD_SIZE || column >= BOARD_SIZE) throw new IllegalArgumentException("The given tile position is invalid.");
-        if (!(num == 0 || isPowerOfTwo(num))) throw new IllegalArgumentException("The given tile number is invalid.");
+    // takes back the last move, or the last redo; returns false, when there is nothing left to take back
+    public boolean undo() {
+        if (this.history == null || !this.history.undo()) return false;
+        loadHistory();
+        return true;
+    }
+
+    // makes the last undo again; returns false, when there is none or a move has been made since
+    public boolean redo() {
+        if (this.history == null || !this.history.redo()) return false;
+        loadHistory();
+        return true;
+    }
+
+    public boolean canUndo() {
+        return this.history != null && this.history.undoable() > 0;
+    }
+
+    public boolean canRedo() {
+        return this.history != null && this.history.redoable() > 0;
+    }
+
+    // moves all tiles into the given direction and spawns a tile afterwards; when no tile moves, nothing happens at all
+    public MoveResult move(Direction direction) {
+        int gained = moveBoard(direction);
+        if (gained < 0) return MoveResult.UNCHANGED;
+        boolean spawned = automaticSpawning();
+        changed(direction);
+        if (!spawned) return new MoveResult(true, gained, -1, -1, 0);
+
+        int size = getBoardSize();
+        return new MoveResult(true, gained, this.lastSpawnCell / size, this.lastSpawnCell % size, 1 << this.lastSpawnExponent);
+    }
+
+    // bit (1 << direction.ordinal()) is set for every direction that moves at least one tile; the game stays as it is
+    public int legalMoves() {
+        return this.board.legalMoves();
+    }
+
+    public boolean isLegalMove(Direction direction) {
+        return (legalMoves() & (1 << direction.ordinal())) != 0;
+    }
+
+    // applies a move of a recorded game: the tile spawned back then is placed instead of a random one
+    void replayMove(Direction direction, int spawnCell, int spawnExponent) {
+        moveBoard(direction);
+        if (spawnCell >= 0) replaySpawn(spawnCell, spawnExponent);
+        changed(direction);
+    }
+
+    // places a recorded spawned tile and advances the random sequence past it, as if it had just been spawned
+    void replaySpawn(int cell, int exponent) {
+        this.board.setCell(cell, exponent);
+        this.randomState += SplitMix64.GAMMA;
+        this.lastSpawnCell = cell;
+        this.lastSpawnExponent = exponent;
+        spawned(exponent);
+    }
+
+    // keeps every move from now on, with the tile it spawned, so the whole game can be played again from its seed (see
+    // GameRecords); to be called right after initialize. Unlike the history, the log grows by two bytes per move. Undo
+    // and redo move back and forth in it, restore and setTileAt end it, as the game then no longer follows from its seed.
+    void enableMoveLog() {
+        this.moveLog = new short[64];
+    }
+
+    // drops the log once the game has been exported, so a game undone and ended again is not exported twice
+    void endMoveLog() {
+        this.moveLog = null;
+    }
+
+    // null, unless enabled and still valid; the first getMoveCount() entries are the moves so far
+    short[] getMoveLog() {
+        return this.moveLog;
+    }
+
+    int getLastSpawnCell() {
+        return this.lastSpawnCell;
+    }
+
+    int getLastSpawnExponent() {
+        return this.lastSpawnExponent;
+    }
 
-        this.tiles[row][column] = num;
+    Board getBoard() {
+        return this.board;
+    }
+
+    boolean isAutomaticSpawningEnabled() {
+        return this.automaticSpawningEnabled;
+    }
+
+    long getRandomState() {
+        return this.randomState;
+    }
+
+    int getRevision() {
+        return this.revision;
+    }
+
+    // null, unless enabled
+    GameHistory getHistory() {
+        return this.history;
+    }
+
+    // restores score, move count and random state of a game that was stored outside of this object
+    void restore(int score, int moveCount, long randomState) {
+        restore(score, moveCount, randomState, moveCount);
+    }
+
+    // the same for a game that may have been changed by undo and redo, too; the history starts over
+    void restore(int score, int moveCount, long randomState, int revision) {
+        this.score = score;
+        this.moveCount = moveCount;
+        this.randomState = randomState;
+        this.revision = revision;
+        this.moveLog = null;
+        // the board has been written directly
+        refreshStatus();
+        if (this.history != null) this.history.reset(this);
+    }
+
+    // overwrites board, score and random state with the ones of the given game of the same size, without allocating
+    void copyFrom(Game other) {
+        this.board.copyFrom(other.board);
+        this.score = other.score;
+        this.moveCount = other.moveCount;
+        this.randomState = other.randomState;
+        this.revision = other.revision;
+        this.emptyTiles = other.emptyTiles;
+        this.maxExponent = other.maxExponent;
+        this.moveAvailable = other.moveAvailable;
+    }
+
+    public void setTileAt(int row, int column, int num) throws IllegalArgumentException {
+        if (row < 0 || column < 0 || row >= this.getBoardSize() || column >= this.getBoardSize()) throw new IllegalArgumentException("The given tile position is invalid.");
+        if (!(num == 0 || isPowerOfTwo(num)) || num > MAX_TILE) throw new IllegalArgumentException("The given tile number is invalid.");
+
+        this.board.set(row, column, Integer.numberOfTrailingZeros(num));
+        this.moveLog = null;
+        // pages rendered before must not be taken for this board (see GamePageCache)
+        this.revision++;
+        refreshStatus();
+        // the states before would bring back the old tile
+        if (this.history != null) this.history.reset(this);
     }
 
     public int getTileAt(int row, int column) throws IllegalArgumentException {
-        if (row < 0 || column < 0 || row >= BOARD_SIZE || column >= BOARD_SIZE) throw new IllegalArgumentException("The given tile position is invalid.");
-        return this.tiles[row][column];
+        if (row < 0 || column < 0 || row >= this.getBoardSize() || column >= this.getBoardSize()) throw new IllegalArgumentException("The given tile position is invalid.");
+        int exponent = this.board.get(row, column);
+        return exponent == 0 ? 0 : 1 << exponent;
     }
 
     private String getTileString(int row, int col) {
@@ -117,166 +294,84 @@ public class Game {
     // returns true, when a new tile could be spawned
     private boolean automaticSpawning() {
         if (automaticSpawningEnabled) {
-            Random rand = new Random();
-
-            // count empty tiles
-            int emptyTiles = 0;
-            for (int r = 0; r < Game.BOARD_SIZE; r++) {
-                for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                    if (this.getTileAt(r, c) == 0) emptyTiles++;
-                }
-            }
+            int emptyTiles = this.emptyTiles;
             if (emptyTiles == 0) return false;
 
+            // one draw per spawned tile: the upper half picks the position, the lower half the tile number
+            this.randomState += SplitMix64.GAMMA;
+            long random = SplitMix64.mix(this.randomState);
+
             // generate random number between 0 to (emptyTiles - 1)
-            int randPosition = rand.nextInt(emptyTiles);
+            int randPosition = SplitMix64.bounded(random, emptyTiles);
 
             // calculate probability for tile number (2: 90%, 4: 10%)
-            int tileNumProbability = rand.nextInt(10);
-            int randTileNum = tileNumProbability == 0 ? 4 : 2;
-
-            for (int r = 0; r < Game.BOARD_SIZE; r++) {
-                for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                    if (this.getTileAt(r, c) == 0) randPosition--;
-                    if (randPosition == -1) {
-                        this.setTileAt(r, c, randTileNum);
-                        return true;
-                    }
-                }
-            }
+            int tileNumProbability = SplitMix64.bounded(random << 32, 10);
+            int randTileExponent = tileNumProbability == 0 ? 2 : 1;
+
+            this.lastSpawnCell = this.board.fillEmpty(randPosition, randTileExponent);
+            this.lastSpawnExponent = randTileExponent;
+            spawned(randTileExponent);
+            return true;
         }
         return false;
     }
 
-    private boolean isPowerOfTwo(int n) {
-        return n != 0 && ((n & (n - 1)) == 0);
-    }
-
-    private void moveUp() {
-        for (int c = 0; c < Game.BOARD_SIZE; c++) {
-            LinkedList<Integer> tiles = new LinkedList<>();
-            // fill with non-empty tiles
-            for (int r = 0; r < Game.BOARD_SIZE; r++) {
-                int currTile = this.getTileAt(r, c);
-                if (currTile != 0) tiles.addLast(currTile);
-            }
-
-            if (tiles.isEmpty()) continue;
-
-            int[] newLine = new int[Game.BOARD_SIZE];
-            int currIdx = 0;
-
-            newLine[currIdx] = tiles.removeFirst();
-            while (!tiles.isEmpty()) {
-                int nextTile = tiles.removeFirst();
-                if (newLine[currIdx] == nextTile) {
-                    newLine[currIdx] *= 2;
-                    this.score += newLine[currIdx];
-                    currIdx++;
-                } else {
-                    if (newLine[currIdx] != 0) currIdx++;
-                    newLine[currIdx] = nextTile;
-                }
-            }
-            for (int r = 0; r < Game.BOARD_SIZE; r++) {
-                this.setTileAt(r, c, newLine[r]);
-            }
+    // returns the score gained or -1, when no tile moved and so nothing changed
+    private int moveBoard(Direction direction) {
+        int gained = this.board.move(direction);
+        if (gained < 0) return -1;
+        this.score += gained;
+        this.moveCount++;
+        this.lastSpawnCell = -1;
+
+        // counting empty tiles is a few bit operations per 16 tiles; the largest tile grows by at most one step per
+        // move and only when at least that much was scored, so the board is hardly ever searched for it
+        this.emptyTiles = this.board.countEmpty();
+        if (this.maxExponent < LineKernel.MAX_EXPONENT && gained >= 1 << (this.maxExponent + 1)) {
+            this.maxExponent = this.board.maxExponent();
         }
+        this.moveAvailable = this.emptyTiles > 0 || this.board.canMove();
+        return gained;
     }
 
-    private void moveDown() {
-        for (int c = 0; c < Game.BOARD_SIZE; c++) {
-            LinkedList<Integer> tiles = new LinkedList<>();
-            // fill with non-empty tiles
-            for (int r = Game.BOARD_SIZE - 1; r >= 0; r--) {
-                int currTile = this.getTileAt(r, c);
-                if (currTile != 0) tiles.addFirst(currTile);
-            }
-
-            if (tiles.isEmpty()) continue;
-
-            int[] newLine = new int[Game.BOARD_SIZE];
-            int currIdx = Game.BOARD_SIZE - 1;
-
-            newLine[currIdx] = tiles.removeLast();
-            while (!tiles.isEmpty()) {
-                int nextTile = tiles.removeLast();
-                if (newLine[currIdx] == nextTile) {
-                    newLine[currIdx] *= 2;
-                    this.score += newLine[currIdx];
-                    currIdx--;
-                } else {
-                    if (newLine[currIdx] != 0) currIdx--;
-                    newLine[currIdx] = nextTile;
-                }
-            }
-            for (int r = 0; r < Game.BOARD_SIZE; r++) {
-                this.setTileAt(r, c, newLine[r]);
-            }
+    // called after every move that moved a tile, once its tile has been spawned
+    private void changed(Direction direction) {
+        this.revision++;
+        if (this.history != null) this.history.record(this);
+        if (this.moveLog != null) {
+            // entries past the move count may still be made again by redo, a new move overwrites them
+            if (this.moveCount > this.moveLog.length) this.moveLog = Arrays.copyOf(this.moveLog, 2 * this.moveLog.length);
+            int spawn = this.lastSpawnCell < 0 ? 0 : this.lastSpawnCell << 2 | this.lastSpawnExponent;
+            this.moveLog[this.moveCount - 1] = (short) (direction.ordinal() | spawn << 2);
         }
     }
 
-    private void moveRight() {
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            LinkedList<Integer> tiles = new LinkedList<>();
-            // fill with non-empty tiles
-            for (int c = Game.BOARD_SIZE - 1; c >= 0; c--) {
-                int currTile = this.getTileAt(r, c);
-                if (currTile != 0) tiles.addFirst(currTile);
-            }
+    // puts the game into the current state of its history
+    private void loadHistory() {
+        GameHistory history = this.history;
+        for (int w = 0; w < this.board.wordCount(); w++) this.board.setWord(w, history.getWord(w));
+        this.score = history.getScore();
+        this.moveCount = history.getMoveCount();
+        this.randomState = this.seed + history.getDraws() * SplitMix64.GAMMA;
+        this.lastSpawnCell = -1;
+        this.revision++;
+        refreshStatus();
+    }
 
-            if (tiles.isEmpty()) continue;
-
-            int[] newLine = new int[Game.BOARD_SIZE];
-            int currIdx = Game.BOARD_SIZE - 1;
-
-            newLine[currIdx] = tiles.removeLast();
-            while (!tiles.isEmpty()) {
-                int nextTile = tiles.removeLast();
-                if (newLine[currIdx] == nextTile) {
-                    newLine[currIdx] *= 2;
-                    this.score += newLine[currIdx];
-                    currIdx--;
-                } else {
-                    if (newLine[currIdx] != 0) currIdx--;
-                    newLine[currIdx] = nextTile;
-                }
-            }
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                this.setTileAt(r, c, newLine[c]);
-            }
-        }
+    private void spawned(int exponent) {
+        this.emptyTiles--;
+        this.maxExponent = Math.max(this.maxExponent, exponent);
+        // only a full board has to look for equal neighbours
+        this.moveAvailable = this.emptyTiles > 0 || this.board.canMove();
     }
 
-    private void moveLeft() {
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            LinkedList<Integer> tiles = new LinkedList<>();
-            // fill with non-empty tiles
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                int currTile = this.getTileAt(r, c);
-                if (currTile != 0) tiles.addLast(currTile);
-            }
+    private void refreshStatus() {
+        this.emptyTiles = this.board.countEmpty();
+        this.maxExponent = this.board.maxExponent();
+        this.moveAvailable = this.emptyTiles > 0 || this.board.canMove();
+    }
 
-            if (tiles.isEmpty()) continue;
-
-            int[] newLine = new int[Game.BOARD_SIZE];
-            int currIdx = 0;
-
-            newLine[currIdx] = tiles.removeFirst();
-            while (!tiles.isEmpty()) {
-                int nextTile = tiles.removeFirst();
-                if (newLine[currIdx] == nextTile) {
-                    newLine[currIdx] *= 2;
-                    this.score += newLine[currIdx];
-                    currIdx++;
-                } else {
-                    if (newLine[currIdx] != 0) currIdx++;
-                    newLine[currIdx] = nextTile;
-                }
-            }
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
-                this.setTileAt(r, c, newLine[c]);
-            }
-        }
+    private boolean isPowerOfTwo(int n) {
+        return n != 0 && ((n & (n - 1)) == 0);
     }
 }
@@ -0,0 +1,121 @@
+package spw4.game2048;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+
+// Machine-facing counterpart of GameServlet with the same actions and the same games, which answers with the state of
+// the game instead of a page: minimal JSON by default, the fixed-size binary form of GameStateEncoder when the client
+// accepts application/octet-stream. A batch of moves (moves=UULDRR) is answered with the state after the last one and,
+// with trace=true, the score and spawned tile of every move. Errors are answered with a status code and, for JSON, {"error":"..."}.
+@WebServlet("/api/game")
+public class GameApiServlet extends AbstractGameServlet {
+
+    static final String JSON_TYPE = "application/json";
+    static final String BINARY_TYPE = "application/octet-stream";
+
+    private final ThreadLocal<byte[][]> buffers = ThreadLocal.withInitial(() -> new byte[][] {new byte[GameStateEncoder.MAX_JSON_BYTES]});
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            serve(request, response);
+        } catch (IOException | RuntimeException e) {
+            metrics.error();
+            throw e;
+        } finally {
+            String action = request.getParameter("action");
+            if ("new".equals(action)) {
+                metrics.record(GameMetrics.Operation.NEW, start);
+            } else if (request.getParameter("id") != null) {
+                metrics.record(operation(action, request.getParameter("moves")), start);
+            }
+        }
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean binary = acceptsBinary(request.getHeader("Accept"));
+
+        UUID id;
+        Game game;
+        MoveTrace trace = null;
+        try {
+            String action = request.getParameter("action");
+            String idString = request.getParameter("id");
+            if ("new".equals(action)) {
+                game = newGame(request.getParameter("size"));
+                id = add(game);
+            } else if (idString != null) {
+                id = UUID.fromString(idString);
+                String moves = request.getParameter("moves");
+                if ("undo".equals(action) || "redo".equals(action)) {
+                    game = undo(id, "redo".equals(action));
+                } else if (moves == null) {
+                    game = move(id, action, null);
+                } else {
+                    if ("true".equals(request.getParameter("trace"))) trace = this.traces.get();
+                    game = moves(id, moves, trace);
+                }
+                if (game == null) {
+                    writeError(response, HttpServletResponse.SC_GONE, "game expired", binary);
+                    return;
+                }
+            } else {
+                writeError(response, HttpServletResponse.SC_BAD_REQUEST, "invalid request", binary);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            // an invalid id, board size or move sequence
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "invalid request", binary);
+            return;
+        }
+
+        byte[] buffer = buffer(GameStateEncoder.maxLength(trace));
+        int length = binary ? GameStateEncoder.encodeBinary(id, game, trace, buffer) : GameStateEncoder.encodeJson(id, game, trace, buffer);
+        response.setContentType(binary ? BINARY_TYPE : JSON_TYPE);
+        response.setContentLength(length);
+        response.getOutputStream().write(buffer, 0, length);
+    }
+
+    // returns true, when the Accept header names application/octet-stream with a quality above 0 and not below the one
+    // of application/json; q=0 refuses a type, see StaticAssetFilter.acceptsGzip
+    static boolean acceptsBinary(String accept) {
+        if (accept == null) return false;
+        float binary = 0, json = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) quality = StaticAssetFilter.quality(parameter.substring(2));
+            }
+            if (type.equals(BINARY_TYPE)) binary = quality;
+            else if (type.equals(JSON_TYPE)) json = quality;
+        }
+        return binary > 0 && binary >= json;
+    }
+
+    // returns the buffer of the calling thread, grown to at least the given length
+    private byte[] buffer(int length) {
+        byte[][] buffer = this.buffers.get();
+        if (buffer[0].length < length) buffer[0] = new byte[length];
+        return buffer[0];
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message, boolean binary) throws IOException {
+        response.setStatus(status);
+        if (binary) return;
+
+        byte[] body = ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        response.setContentType(JSON_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,146 @@
+package spw4.game2048;
+
+// Many 4x4 games stepped at once, for bulk simulation. Instead of one Game object per game, boards, scores, move
+// counts, random states and status are kept in parallel arrays, so a step over all games is one loop over primitive
+// arrays without a single object dereference. Every game follows exactly the rules of Game: the same move, score and
+// spawned tile from the same random state, so a game loaded from a Game (or initialised from the same seed) stays
+// identical to it move by move.
+//
+// Games that are over (won or without a legal move) are left as they are, as the servlets do.
+final class GameBatch {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final long[] boards;
+    private final int[] scores;
+    private final int[] moveCounts;
+    private final long[] randomStates;
+    private final boolean[] over;
+    private int overCount;
+
+    GameBatch(int capacity) {
+        this.boards = new long[capacity];
+        this.scores = new int[capacity];
+        this.moveCounts = new int[capacity];
+        this.randomStates = new long[capacity];
+        this.over = new boolean[capacity];
+    }
+
+    int size() {
+        return this.boards.length;
+    }
+
+    // starts game i over from the given seed, with the two tiles Game.initialize would spawn
+    void initialize(int i, long seed) {
+        long board = 0, randomState = seed;
+        for (int tile = 0; tile < 2; tile++) {
+            randomState += SplitMix64.GAMMA;
+            board = spawn(board, BitBoard.countEmpty(board), SplitMix64.mix(randomState));
+        }
+        set(i, board, 0, 0, randomState);
+    }
+
+    // copies a 4x4 game into slot i
+    void load(int i, Game game) {
+        if (game.getBoardSize() != BitBoard.SIZE) throw new IllegalArgumentException("The given game is not 4x4.");
+        set(i, game.getBoard().getWord(0), game.getScore(), game.getMoveCount(), game.getRandomState());
+    }
+
+    // copies game i into a 4x4 game
+    void store(int i, Game game) {
+        if (game.getBoardSize() != BitBoard.SIZE) throw new IllegalArgumentException("The given game is not 4x4.");
+        game.getBoard().setWord(0, this.boards[i]);
+        game.restore(this.scores[i], this.moveCounts[i], this.randomStates[i]);
+    }
+
+    // applies one move to every game that is not over yet: directions[i] is the ordinal of the Direction of game i
+    void move(byte[] directions) {
+        long[] boards = this.boards;
+        int[] scores = this.scores;
+        int[] moveCounts = this.moveCounts;
+        long[] randomStates = this.randomStates;
+        boolean[] over = this.over;
+        int newlyOver = 0;
+
+        // one pass does move, spawn and status of a game, so its board is loaded and stored once per step
+        for (int i = 0; i < boards.length; i++) {
+            if (over[i]) continue;
+            long board = boards[i];
+            int direction = directions[i];
+            long moved;
+            switch (direction) {
+                case 0:
+                    moved = BitBoard.moveUp(board);
+                    break;
+                case 1:
+                    moved = BitBoard.moveDown(board);
+                    break;
+                case 2:
+                    moved = BitBoard.moveLeft(board);
+                    break;
+                case 3:
+                    moved = BitBoard.moveRight(board);
+                    break;
+                default:
+                    throw new IllegalArgumentException("The given direction is invalid.");
+            }
+            // like Game.move, a move that moves no tile changes nothing
+            if (moved == board) continue;
+            int gained = BitBoard.score(board, DIRECTIONS[direction]);
+
+            int empty = BitBoard.countEmpty(moved);
+            if (empty > 0) {
+                long randomState = randomStates[i] + SplitMix64.GAMMA;
+                randomStates[i] = randomState;
+                moved = spawn(moved, empty, SplitMix64.mix(randomState));
+            }
+
+            boards[i] = moved;
+            scores[i] += gained;
+            moveCounts[i]++;
+            if (BitBoard.hasWinningTile(moved) || !BitBoard.canMove(moved)) {
+                over[i] = true;
+                newlyOver++;
+            }
+        }
+        this.overCount += newlyOver;
+    }
+
+    long getBoard(int i) {
+        return this.boards[i];
+    }
+
+    int getScore(int i) {
+        return this.scores[i];
+    }
+
+    int getMoveCount(int i) {
+        return this.moveCounts[i];
+    }
+
+    boolean isOver(int i) {
+        return this.over[i];
+    }
+
+    // number of games that are over
+    int getOverCount() {
+        return this.overCount;
+    }
+
+    private void set(int i, long board, int score, int moveCount, long randomState) {
+        if (this.over[i]) this.overCount--;
+        this.boards[i] = board;
+        this.scores[i] = score;
+        this.moveCounts[i] = moveCount;
+        this.randomStates[i] = randomState;
+        this.over[i] = BitBoard.hasWinningTile(board) || !BitBoard.canMove(board);
+        if (this.over[i]) this.overCount++;
+    }
+
+    // the tile Game.automaticSpawning picks for the drawn number: position from the upper half, number from the lower
+    private static long spawn(long board, int empty, long random) {
+        int position = SplitMix64.bounded(random, empty);
+        int exponent = SplitMix64.bounded(random << 32, 10) == 0 ? 2 : 1;
+        return BitBoard.fillEmpty(board, position, exponent);
+    }
+}
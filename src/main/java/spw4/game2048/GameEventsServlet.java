@@ -0,0 +1,46 @@
+package spw4.game2048;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Live updates of a game as Server-Sent Events (?id=...): first an event "state" with the full state in the JSON form of
+// GameApiServlet, then an event "delta" with score, status and the changed tiles after every move, however the move
+// was made. The request is put into asynchronous mode and handed to GameWatchers, so no request thread waits with it.
+@WebServlet(urlPatterns = "/api/game/events", asyncSupported = true)
+public class GameEventsServlet extends AbstractGameServlet {
+
+    // EventSource clients reconnect on their own after the stream ended
+    static final long WATCH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        UUID id;
+        try {
+            id = UUID.fromString(request.getParameter("id"));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "invalid request");
+            return;
+        }
+
+        response.setContentType("text/event-stream;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        AsyncContext context = request.startAsync();
+        context.setTimeout(WATCH_TIMEOUT_MILLIS);
+
+        // joining while the game is locked puts the full state right before the first change it misses
+        Boolean watched = games.update(id, game -> {
+            watchers.watch(id, game, context);
+            return Boolean.TRUE;
+        });
+        if (watched == null) {
+            response.setStatus(HttpServletResponse.SC_GONE);
+            context.complete();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package spw4.game2048;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Bounded undo/redo history of a game: a ring of its last states, each packed into the words of its board, score,
+// move count and the number of tiles spawned so far (the random state follows from that and the seed, see
+// SplitMix64.draws). The ring is a single int array allocated once, so the history of a game takes the same memory
+// however long the game runs: 20 bytes per state of a 4x4 game, 44 of an 8x8 one, plus one array header. Making a move
+// after an undo drops the states that could have been redone.
+final class GameHistory {
+
+    // ints per state: the board words, high half first, then score, move count and draws
+    private static final int SCORE = 0, MOVE_COUNT = 1, DRAWS = 2, FIELDS = 3;
+
+    private final int capacity;
+    private final int wordCount;
+    private final int stride;
+    private final int[] states;
+    // ring index of the state the game is in
+    private int current;
+    private int undoable;
+    private int redoable;
+
+    // keeps the states needed to take back up to depth moves
+    GameHistory(int depth, int wordCount) {
+        if (depth <= 0) throw new IllegalArgumentException("The given history depth is invalid.");
+        this.capacity = depth + 1;
+        this.wordCount = wordCount;
+        this.stride = 2 * wordCount + FIELDS;
+        this.states = new int[this.capacity * this.stride];
+    }
+
+    int depth() {
+        return this.capacity - 1;
+    }
+
+    int undoable() {
+        return this.undoable;
+    }
+
+    int redoable() {
+        return this.redoable;
+    }
+
+    // forgets everything but the state the game is in now
+    void reset(Game game) {
+        this.current = 0;
+        this.undoable = 0;
+        this.redoable = 0;
+        store(0, game);
+    }
+
+    // adds the state the game has just been changed to
+    void record(Game game) {
+        this.current = next(this.current);
+        store(this.current, game);
+        this.undoable = Math.min(this.undoable + 1, this.capacity - 1);
+        this.redoable = 0;
+    }
+
+    // steps back to the state before the current one; returns false, when there is none
+    boolean undo() {
+        if (this.undoable == 0) return false;
+        this.current = this.current == 0 ? this.capacity - 1 : this.current - 1;
+        this.undoable--;
+        this.redoable++;
+        return true;
+    }
+
+    // steps forward to the state an undo left; returns false, when there is none
+    boolean redo() {
+        if (this.redoable == 0) return false;
+        this.current = next(this.current);
+        this.undoable++;
+        this.redoable--;
+        return true;
+    }
+
+    // the current state, see undo and redo
+    long getWord(int w) {
+        return word(this.current, w);
+    }
+
+    int getScore() {
+        return field(this.current, SCORE);
+    }
+
+    int getMoveCount() {
+        return field(this.current, MOVE_COUNT);
+    }
+
+    int getDraws() {
+        return field(this.current, DRAWS);
+    }
+
+    // writes all states from the oldest one on, preceded by their number and the position of the current one
+    void write(DataOutput out) throws IOException {
+        int count = this.undoable + 1 + this.redoable;
+        out.writeShort(count);
+        out.writeShort(this.undoable);
+        int index = (this.current - this.undoable + this.capacity) % this.capacity;
+        for (int i = 0; i < count; i++, index = next(index)) {
+            for (int w = 0; w < this.wordCount; w++) out.writeLong(word(index, w));
+            out.writeInt(field(index, SCORE));
+            out.writeInt(field(index, MOVE_COUNT));
+            out.writeInt(field(index, DRAWS));
+        }
+    }
+
+    // reads the states written by write; when they do not fit, the oldest ones and then the newest ones are dropped
+    void read(DataInput in) throws IOException {
+        int count = in.readUnsignedShort(), undoable = in.readUnsignedShort();
+        if (undoable >= count) throw new IOException("Broken history.");
+        int first = Math.max(0, undoable - (this.capacity - 1));
+        int last = Math.min(count, first + this.capacity);
+        this.undoable = undoable - first;
+        this.redoable = last - undoable - 1;
+        for (int i = 0; i < count; i++) {
+            long[] words = new long[this.wordCount];
+            for (int w = 0; w < this.wordCount; w++) words[w] = in.readLong();
+            int score = in.readInt(), moveCount = in.readInt(), draws = in.readInt();
+            if (i < first || i >= last) continue;
+            store(i - first, words, score, moveCount, draws);
+        }
+        this.current = this.undoable;
+    }
+
+    private void store(int index, Game game) {
+        Board board = game.getBoard();
+        int offset = index * this.stride;
+        for (int w = 0; w < this.wordCount; w++) {
+            long word = board.getWord(w);
+            this.states[offset + 2 * w] = (int) (word >>> 32);
+            this.states[offset + 2 * w + 1] = (int) word;
+        }
+        offset += 2 * this.wordCount;
+        this.states[offset + SCORE] = game.getScore();
+        this.states[offset + MOVE_COUNT] = game.getMoveCount();
+        this.states[offset + DRAWS] = (int) SplitMix64.draws(game.getSeed(), game.getRandomState());
+    }
+
+    private void store(int index, long[] words, int score, int moveCount, int draws) {
+        int offset = index * this.stride;
+        for (int w = 0; w < this.wordCount; w++) {
+            this.states[offset + 2 * w] = (int) (words[w] >>> 32);
+            this.states[offset + 2 * w + 1] = (int) words[w];
+        }
+        offset += 2 * this.wordCount;
+        this.states[offset + SCORE] = score;
+        this.states[offset + MOVE_COUNT] = moveCount;
+        this.states[offset + DRAWS] = draws;
+    }
+
+    private long word(int index, int w) {
+        int offset = index * this.stride + 2 * w;
+        return (long) this.states[offset] << 32 | (this.states[offset + 1] & 0xFFFF_FFFFL);
+    }
+
+    private int field(int index, int field) {
+        return this.states[index * this.stride + 2 * this.wordCount + field];
+    }
+
+    private int next(int index) {
+        return index + 1 == this.capacity ? 0 : index + 1;
+    }
+}
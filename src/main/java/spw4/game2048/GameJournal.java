@@ -0,0 +1,419 @@
+package spw4.game2048;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Crash-safe persistence of the games of a GameStore. Every new game and every move is appended as a small binary
+// record to a log of memory-mapped segment files. Appending only copies the record into the mapped segment; a
+// background thread forces the segment to disk every few milliseconds (group commit), so request threads never wait
+// for the disk. Periodic snapshots of all live games bound the log: on start-up the newest valid snapshot is loaded
+// and only the segments written since then are replayed.
+//
+// Snapshots are taken while games keep moving, so a snapshot may already contain moves that are logged after its
+// start. Records of a change therefore carry the revision of the game after it, and replaying skips every change a
+// game already has. Undo and redo are logged as records of their own and replayed through the history of the game,
+// which snapshots contain, too; so the history depth should not shrink between runs.
+final class GameJournal implements Closeable {
+
+    // record layout, all numbers in big-endian byte order
+    static final int RECORD_BYTES = 32;
+    private static final int ID_MSB = 0;          // long
+    private static final int ID_LSB = 8;          // long
+    private static final int TYPE = 16;           // byte
+    private static final int ARGUMENT = 17;       // byte, direction of a move or board size of a new game | SPAWNING
+    private static final int SPAWNS = 18;         // 2 bytes of spawned tiles: cell index << 2 | exponent, 0 = none
+    private static final int REVISION = 20;       // int, revision of the game after a move, undo or redo
+    private static final int SEED = 20;           // long, seed of a new game
+    private static final int CHECKSUM = 28;       // int, CRC32 of the bytes before
+
+    private static final byte NEW = 1;
+    private static final byte MOVE = 2;
+    private static final byte UNDO = 3;
+    private static final byte REDO = 4;
+    private static final byte SPAWNING = (byte) 0x80;
+
+    private static final int SNAPSHOT_MAGIC = 0x32303438; // "2048"
+    private static final int SNAPSHOT_VERSION = 3;
+    // without revision and history, still read
+    private static final int SNAPSHOT_VERSION_2 = 2;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final GameStore store;
+    // of the restored games
+    private final int historyDepth;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 checksum = new CRC32();
+    // guarded by appendLock
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    private int position;
+    private int forcedPosition;
+
+    private GameJournal(Path directory, int segmentBytes, GameStore store, int historyDepth) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        this.store = store;
+        this.historyDepth = historyDepth;
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "game-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // restores all journaled games into the store, with a history of the given depth (see Game.enableHistory), and
+    // starts journaling into a fresh segment
+    static GameJournal open(Path directory, GameStore store, int segmentBytes, long syncMillis, long snapshotMillis,
+                            int historyDepth) throws IOException {
+        if (segmentBytes < RECORD_BYTES) throw new IllegalArgumentException("The journal segments are too small.");
+        if (syncMillis <= 0 || snapshotMillis <= 0) throw new IllegalArgumentException("The journal intervals must be positive.");
+        if (historyDepth < 0) throw new IllegalArgumentException("The given history depth is invalid.");
+        Files.createDirectories(directory);
+
+        GameJournal journal = new GameJournal(directory, segmentBytes, store, historyDepth);
+        journal.recover();
+        journal.appendLock.lock();
+        try {
+            journal.rollSegment();
+        } finally {
+            journal.appendLock.unlock();
+        }
+
+        journal.scheduler.scheduleWithFixedDelay(journal::force, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        journal.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                journal.snapshot();
+            } catch (IOException | UncheckedIOException e) {
+                // the log keeps growing until the next snapshot succeeds, nothing is lost
+            }
+        }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    void created(UUID id, Game game) {
+        Board board = game.getBoard();
+        int[] spawns = new int[2];
+        int found = 0;
+        for (int cell = 0; cell < board.size() * board.size() && found < spawns.length; cell++) {
+            int exponent = board.getCell(cell);
+            if (exponent != 0) spawns[found++] = encodeSpawn(cell, exponent);
+        }
+        byte argument = (byte) game.getBoardSize();
+        if (game.isAutomaticSpawningEnabled()) argument |= SPAWNING;
+        append(id, NEW, argument, spawns[0], spawns[1], 0, game.getSeed());
+    }
+
+    // called right after the game has been moved, while it is still locked by its store
+    void moved(UUID id, Game game, Direction direction) {
+        int spawn = game.getLastSpawnCell() < 0 ? 0 : encodeSpawn(game.getLastSpawnCell(), game.getLastSpawnExponent());
+        append(id, MOVE, (byte) direction.ordinal(), spawn, 0, game.getRevision(), 0);
+    }
+
+    // called right after an undo or redo of the game changed it, while it is still locked by its store
+    void undone(UUID id, Game game, boolean redo) {
+        append(id, redo ? REDO : UNDO, (byte) 0, 0, 0, game.getRevision(), 0);
+    }
+
+    // writes all live games into a new snapshot and removes the log segments and snapshots it makes obsolete
+    void snapshot() throws IOException {
+        long startSegment;
+        this.appendLock.lock();
+        try {
+            if (this.segment == null) return;
+            rollSegment();
+            startSegment = this.segmentNumber;
+        } finally {
+            this.appendLock.unlock();
+        }
+
+        Path snapshot = this.directory.resolve(fileName(SNAPSHOT_PREFIX, startSegment, SNAPSHOT_SUFFIX));
+        Path temporary = this.directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(file, 1 << 16);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(startSegment);
+            this.store.forEach((id, game) -> {
+                try {
+                    writeGame(out, id, game);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeByte(0);
+            out.flush();
+            // the checksum covers everything before it
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (Path path : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (number(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < startSegment) Files.deleteIfExists(path);
+        }
+        for (Path path : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (number(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) < startSegment) Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+        this.appendLock.lock();
+        try {
+            if (this.segment != null) this.segment.force();
+            this.segment = null;
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    private void append(UUID id, byte type, byte argument, int firstSpawn, int secondSpawn, int revision, long seed) {
+        this.appendLock.lock();
+        try {
+            if (this.segment == null) throw new IllegalStateException("The journal is closed.");
+            if (this.position + RECORD_BYTES > this.segment.capacity()) rollSegment();
+
+            ByteBuffer r = this.record;
+            r.putLong(ID_MSB, id.getMostSignificantBits());
+            r.putLong(ID_LSB, id.getLeastSignificantBits());
+            r.put(TYPE, type);
+            r.put(ARGUMENT, argument);
+            r.put(SPAWNS, (byte) firstSpawn);
+            r.put(SPAWNS + 1, (byte) secondSpawn);
+            if (type == NEW) {
+                r.putLong(SEED, seed);
+            } else {
+                r.putLong(SEED, 0);
+                r.putInt(REVISION, revision);
+            }
+            this.checksum.reset();
+            this.checksum.update(r.array(), 0, CHECKSUM);
+            r.putInt(CHECKSUM, (int) this.checksum.getValue());
+
+            for (int i = 0; i < RECORD_BYTES; i += 8) this.segment.putLong(this.position + i, r.getLong(i));
+            this.position += RECORD_BYTES;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    // group commit: forces everything appended since the last run to disk
+    private void force() {
+        MappedByteBuffer segment;
+        int position;
+        this.appendLock.lock();
+        try {
+            segment = this.segment;
+            position = this.position;
+            if (segment == null || position == this.forcedPosition) return;
+        } finally {
+            this.appendLock.unlock();
+        }
+
+        segment.force();
+
+        this.appendLock.lock();
+        try {
+            if (segment == this.segment) this.forcedPosition = Math.max(this.forcedPosition, position);
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    // called with appendLock held
+    private void rollSegment() throws IOException {
+        if (this.segment != null) this.segment.force();
+
+        long number = this.segmentNumber + 1;
+        Path path = this.directory.resolve(fileName(SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+        }
+        this.segmentNumber = number;
+        this.position = 0;
+        this.forcedPosition = 0;
+    }
+
+    private void recover() throws IOException {
+        Map<UUID, Game> games = new HashMap<>();
+        // leftovers of a snapshot that was interrupted
+        for (Path path : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX + ".tmp")) Files.deleteIfExists(path);
+
+        // the newest snapshot that can be read completely; a broken one is ignored in favour of an older one
+        long startSegment = 0;
+        List<Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                startSegment = readSnapshot(snapshots.get(i), games, this.historyDepth);
+                break;
+            } catch (IOException e) {
+                games.clear();
+            }
+        }
+
+        long lastSegment = startSegment;
+        for (Path path : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            long number = number(path, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            lastSegment = Math.max(lastSegment, number);
+            if (number >= startSegment) replaySegment(path, games, this.historyDepth);
+        }
+
+        for (Map.Entry<UUID, Game> entry : games.entrySet()) this.store.put(entry.getKey(), entry.getValue());
+        this.segmentNumber = lastSegment;
+    }
+
+    private static long readSnapshot(Path path, Map<UUID, Game> games, int historyDepth) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a snapshot: " + path);
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_2) throw new IOException("Not a snapshot: " + path);
+            long startSegment = in.readLong();
+            while (in.readByte() != 0) {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                games.put(id, readGame(in, version, historyDepth));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readInt() != (int) expected) throw new IOException("Broken snapshot: " + path);
+            return startSegment;
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new IOException("Broken snapshot: " + path, e);
+        }
+    }
+
+    private static void writeGame(DataOutputStream out, UUID id, Game game) throws IOException {
+        out.writeByte(1);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        out.writeByte(game.getBoardSize());
+        out.writeBoolean(game.isAutomaticSpawningEnabled());
+        out.writeInt(game.getScore());
+        out.writeInt(game.getMoveCount());
+        out.writeLong(game.getSeed());
+        out.writeLong(game.getRandomState());
+        Board board = game.getBoard();
+        for (int w = 0; w < board.wordCount(); w++) out.writeLong(board.getWord(w));
+        out.writeInt(game.getRevision());
+        GameHistory history = game.getHistory();
+        out.writeBoolean(history != null);
+        if (history != null) history.write(out);
+    }
+
+    private static Game readGame(DataInputStream in, int version, int historyDepth) throws IOException {
+        int size = in.readByte();
+        boolean spawning = in.readBoolean();
+        int score = in.readInt();
+        int moveCount = in.readInt();
+        Game game = new Game(size, spawning, in.readLong());
+        long randomState = in.readLong();
+        Board board = game.getBoard();
+        for (int w = 0; w < board.wordCount(); w++) board.setWord(w, in.readLong());
+        game.enableHistory(historyDepth);
+        if (version == SNAPSHOT_VERSION_2) {
+            game.restore(score, moveCount, randomState);
+            return game;
+        }
+
+        game.restore(score, moveCount, randomState, in.readInt());
+        if (in.readBoolean()) {
+            // read in any case, so the games after it can be read
+            GameHistory history = game.getHistory() != null ? game.getHistory() : new GameHistory(1, board.wordCount());
+            history.read(in);
+        }
+        return game;
+    }
+
+    private static void replaySegment(Path path, Map<UUID, Game> games, int historyDepth) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        segment.order(ByteOrder.BIG_ENDIAN);
+
+        ByteBuffer r = ByteBuffer.allocate(RECORD_BYTES);
+        CRC32 checksum = new CRC32();
+        Direction[] directions = Direction.values();
+        for (int position = 0; position + RECORD_BYTES <= segment.capacity(); position += RECORD_BYTES) {
+            for (int i = 0; i < RECORD_BYTES; i += 8) r.putLong(i, segment.getLong(position + i));
+            // the rest of the segment was never written, or the last record was torn by a crash
+            if (r.get(TYPE) == 0) break;
+            checksum.reset();
+            checksum.update(r.array(), 0, CHECKSUM);
+            if (r.getInt(CHECKSUM) != (int) checksum.getValue()) break;
+
+            UUID id = new UUID(r.getLong(ID_MSB), r.getLong(ID_LSB));
+            Game game = games.get(id);
+            if (r.get(TYPE) == NEW) {
+                if (game != null) continue;
+                byte argument = r.get(ARGUMENT);
+                game = new Game(argument & ~SPAWNING, (argument & SPAWNING) != 0, r.getLong(SEED));
+                for (int i = 0; i < 2; i++) {
+                    int spawn = r.get(SPAWNS + i) & 0xFF;
+                    if (spawn != 0) game.replaySpawn(spawn >>> 2, spawn & 3);
+                }
+                game.enableHistory(historyDepth);
+                games.put(id, game);
+            } else {
+                // unknown games were evicted before the snapshot, known ones may have the change already
+                if (game == null || r.getInt(REVISION) <= game.getRevision()) continue;
+                if (r.get(TYPE) == MOVE) {
+                    int spawn = r.get(SPAWNS) & 0xFF;
+                    game.replayMove(directions[r.get(ARGUMENT)], spawn == 0 ? -1 : spawn >>> 2, spawn & 3);
+                } else if (r.get(TYPE) == UNDO) {
+                    game.undo();
+                } else if (r.get(TYPE) == REDO) {
+                    game.redo();
+                }
+            }
+        }
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, prefix + "*" + suffix)) {
+            for (Path path : stream) paths.add(path);
+        }
+        paths.sort(Comparator.comparingLong(path -> number(path, prefix, suffix)));
+        return paths;
+    }
+
+    private static long number(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static String fileName(String prefix, long number, String suffix) {
+        return String.format("%s%016d%s", prefix, number, suffix);
+    }
+
+    private static int encodeSpawn(int cell, int exponent) {
+        return (cell << 2) | exponent;
+    }
+}
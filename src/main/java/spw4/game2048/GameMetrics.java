@@ -0,0 +1,148 @@
+package spw4.game2048;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms of the servlets, exported in the Prometheus text format by MetricsServlet.
+// Recording is a few LongAdder increments and a scan over the bucket bounds, so it neither locks nor allocates and
+// stays on in production. Histogram buckets are counted one by one and only summed up into the cumulative buckets of
+// Prometheus when they are exported.
+final class GameMetrics {
+
+    // what a request did, each with a latency histogram of its own
+    enum Operation {
+        // the moves in the order of Direction, see of
+        UP, DOWN, LEFT, RIGHT,
+        NEW, MOVES, UNDO, REDO, HINT, VIEW,
+        // writing the page of a game, part of the operations above
+        RENDER;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        static Operation of(Direction direction) {
+            return values()[direction.ordinal()];
+        }
+    }
+
+    // upper bounds of the buckets in nanoseconds, from 10 microseconds to a second; slower requests are counted in +Inf
+    static final long[] BUCKET_BOUNDS = {
+            10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000,
+            100_000_000, 250_000_000, 500_000_000, 1_000_000_000};
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+    private final LongAdder created = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder won = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    GameMetrics() {
+        for (int i = 0; i < this.latencies.length; i++) this.latencies[i] = new Histogram();
+    }
+
+    // counts an operation that started at the given System.nanoTime
+    void record(Operation operation, long startNanos) {
+        this.latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void created() {
+        this.created.increment();
+    }
+
+    // counts the moves that changed a game, and the game as won or lost, when they finished it
+    void moved(Game game, int moves, boolean wasOver) {
+        this.moves.add(moves);
+        if (wasOver || !game.isOver()) return;
+        if (game.isWon()) this.won.increment();
+        else this.lost.increment();
+    }
+
+    void error() {
+        this.errors.increment();
+    }
+
+    long getCount(Operation operation) {
+        return this.latencies[operation.ordinal()].count.sum();
+    }
+
+    long getErrors() {
+        return this.errors.sum();
+    }
+
+    // writes all metrics and the gauges of the store and the watchers in the Prometheus text format
+    void write(StringBuilder out, GameStore games, GameWatchers watchers) {
+        counter(out, "game2048_games_created_total", "Games started.", this.created.sum());
+        long won = this.won.sum(), lost = this.lost.sum();
+        counter(out, "game2048_games_finished_total", "Games won or lost; a game taken back by undo and finished again counts again.", won + lost);
+        counter(out, "game2048_games_won_total", "Games finished with a 2048 tile.", won);
+        counter(out, "game2048_games_lost_total", "Games finished without a legal move.", lost);
+        counter(out, "game2048_moves_total", "Moves that moved a tile.", this.moves.sum());
+        counter(out, "game2048_errors_total", "Requests that failed with an unexpected error.", this.errors.sum());
+        counter(out, "game2048_store_hits_total", "Lookups of a game that was found.", games.getHits());
+        counter(out, "game2048_store_misses_total", "Lookups of a game that was not found.", games.getMisses());
+        counter(out, "game2048_store_evictions_total", "Games evicted from the store.", games.getEvictions());
+        gauge(out, "game2048_games_live", "Games in the store.", games.size());
+        gauge(out, "game2048_watchers", "Clients watching a game.", watchers.watcherCount());
+
+        String name = "game2048_request_duration_seconds";
+        header(out, name, "Latency of the requests by action.", "histogram");
+        for (Operation operation : OPERATIONS) this.latencies[operation.ordinal()].write(out, name, operation.label);
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static final class Histogram {
+
+        // the last bucket counts everything above the last bound
+        final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        final LongAdder count = new LongAdder();
+        final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < this.buckets.length; i++) this.buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) bucket++;
+            this.buckets[bucket].increment();
+            this.sumNanos.add(nanos);
+            this.count.increment();
+        }
+
+        // the sum may be a few requests off the buckets, as the adders are read one after the other
+        void write(StringBuilder out, String name, String action) {
+            long cumulative = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                cumulative += this.buckets[i].sum();
+                String bound = i < BUCKET_BOUNDS.length ? seconds(BUCKET_BOUNDS[i]) : "+Inf";
+                out.append(name).append("_bucket{action=\"").append(action).append("\",le=\"").append(bound).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{action=\"").append(action).append("\"} ")
+                    .append(seconds(this.sumNanos.sum())).append('\n');
+            out.append(name).append("_count{action=\"").append(action).append("\"} ").append(cumulative).append('\n');
+        }
+
+        private static String seconds(long nanos) {
+            return String.format(Locale.ROOT, "%.6f", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package spw4.game2048;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The last rendered page of recently shown games, so showing a game again that has not changed since, like a reload or
+// a client polling it, costs a lookup instead of a render (see GameServlet). A page is valid for the revision of the
+// game it was rendered for, which every move, undo and redo changes and which never comes back (see Game.getRevision).
+//
+// The cache is direct-mapped: the id of a game picks one of a fixed number of slots, and a page replaces whatever the
+// slot held before. That bounds the memory to the slots times the size of a page, needs no lock and no bookkeeping of
+// which game was used last, and keeps the games that are shown again and again, which are put back right away.
+final class GamePageCache {
+
+    static final int DEFAULT_SIZE = 1024;
+
+    // tells the pages of two runs of the application apart, which may differ in the assets they link to
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    private final AtomicReferenceArray<Page> slots;
+    private final int mask;
+
+    // holds up to size pages, rounded up to a power of two
+    GamePageCache(int size) {
+        if (size <= 0) throw new IllegalArgumentException("The page cache size must be positive.");
+        int slots = Integer.highestOneBit(size);
+        if (slots < size) slots <<= 1;
+        this.slots = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+    }
+
+    // the page of the game in the given revision or null, when it is not cached
+    Page get(UUID id, int revision) {
+        Page page = this.slots.get(slot(id));
+        return page != null && page.revision == revision && page.id.equals(id) ? page : null;
+    }
+
+    Page put(UUID id, int revision, byte[] bytes) {
+        Page page = new Page(id, revision, bytes);
+        // a page that is lost to a concurrent put is rendered again the next time
+        this.slots.lazySet(slot(id), page);
+        return page;
+    }
+
+    int size() {
+        return this.slots.length();
+    }
+
+    // the ETag of the page of the game in the given revision
+    static String etag(UUID id, int revision) {
+        return "\"" + EPOCH + "-" + id + "-" + revision + "\"";
+    }
+
+    private int slot(UUID id) {
+        // random UUIDs are well mixed in every bit
+        long bits = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return ((int) (bits ^ (bits >>> 32))) & this.mask;
+    }
+
+    static final class Page {
+
+        final UUID id;
+        final int revision;
+        final byte[] bytes;
+        final String etag;
+
+        Page(UUID id, int revision, byte[] bytes) {
+            this.id = id;
+            this.revision = revision;
+            this.bytes = bytes;
+            this.etag = etag(id, revision);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package spw4.game2048;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+// Renders the HTML page of a game straight into an output stream. The static parts of the page are encoded to UTF-8
+// once; a render only writes these chunks and the few dynamic parts in between (score, banner, game id and tiles),
+// so no page string or intermediate buffer is ever built. Links name the game either by its id or, for games kept in
+// no store, by its token (see GameTokens). The length of a page is computed up front, so it can be sent as
+// Content-Length. The static assets the page links to are put into the template once, under the URLs given (see
+// StaticAssets.url). Pages of stored games subscribe to the events of their game (see GameEventsServlet) and load the
+// game again when it changed, e.g. on another device, so an open page needs no polling.
+final class GamePageRenderer {
+
+    // placeholders of the template, the index of each is the kind of the dynamic part written in its place
+    private static final String[] PLACEHOLDERS = {"{score}", "{banner}", "{game}", "{tiles}", "{history}", "{watch}"};
+    private static final int SCORE = 0;
+    private static final int BANNER = 1;
+    private static final int GAME = 2;
+    private static final int TILES = 3;
+    private static final int HISTORY = 4;
+    private static final int WATCH = 5;
+
+    private static final byte[] ID_PARAMETER = encode("id=");
+    private static final byte[] TOKEN_PARAMETER = encode("token=");
+
+    // static assets the template links to
+    static final String[] ASSETS = {"css/bootstrap.min.css", "icons/bootstrap-icons.css", "js/bootstrap.min.js"};
+
+    private static final String TEMPLATE =
+            "<!DOCTYPE html>\n" +
+            "<html lang=\"en\">\n" +
+            "<head>\n" +
+            "    <meta charset=\"UTF-8\">\n" +
+            "    <title>2048</title>\n" +
+            "    <link href=\"css/bootstrap.min.css\" rel=\"stylesheet\"/>\n" +
+            "    <link href=\"icons/bootstrap-icons.css\" rel=\"stylesheet\"/>\n" +
+            "    <script src=\"js/bootstrap.min.js\"></script>\n" +
+            "</head>\n" +
+            "<body>\n" +
+            "    <h1 class=\"m-5 text-center\">Play 2048:</h1>\n" +
+            "\n" +
+            "    <div class=\"row\">\n" +
+            "        <div class=\"col-4\"></div>\n" +
+            "        <div class=\"col\">\n" +
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col text-center pb-4\"><h5>Score: {score}</h5></div>\n" +
+            "            </div>\n" +
+            "{banner}" +
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col-2\"></div>\n" +
+            "                <div class=\"col text-center pb-4\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?{game}&action=up\"><i class=\"bi-arrow-up\"></i></a></div>\n" +
+            "                <div class=\"col-2\"></div>\n" +
+            "            </div>\n" +
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col-2 my-auto text-right\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?{game}&action=left\"><i class=\"bi-arrow-left\"></i></a></div>\n" +
+            "                <div class=\"col\">\n" +
+            "                    <div class=\"container text-center bg-secondary\">\n" +
+            "{tiles}" +
+            "                    </div>\n" +
+            "                </div>\n" +
+            "                <div class=\"col-2 my-auto\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?{game}&action=right\"><i class=\"bi-arrow-right\"></i></a></div>\n" +
+            "            </div>\n" +
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col-2\"></div>\n" +
+            "                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?{game}&action=down\"><i class=\"bi-arrow-down\"></i></a></div>\n" +
+            "                <div class=\"col-2\"></div>\n" +
+            "            </div>\n" +
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-danger w-75\" href=\"Game?action=new\">New Game</a></div>\n" +
+            "                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-info w-75\" href=\"Game?{game}\">Refresh</a></div>\n" +
+            "            </div>\n" +
+            "{history}" +
+            "        </div>\n" +
+            "        <div class=\"col-4\"></div>\n" +
+            "    </div>\n" +
+            "{watch}" +
+            "</body>\n" +
+            "</html>\n";
+
+    // the undo and redo buttons, written around the game parameter for stored games that keep a history
+    private static final byte[] HISTORY_START = encode(
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-secondary w-75\" href=\"Game?");
+    private static final byte[] HISTORY_MIDDLE = encode(
+            "&action=undo\">Undo</a></div>\n" +
+            "                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-secondary w-75\" href=\"Game?");
+    private static final byte[] HISTORY_END = encode(
+            "&action=redo\">Redo</a></div>\n" +
+            "            </div>\n");
+
+    // the subscription to the events of a stored game, written around its parameter: the first state tells whether the
+    // game changed since the page was rendered, every delta that it changed; EventSource reconnects on its own
+    private static final byte[] WATCH_START = encode(
+            "    <script>\n" +
+            "        (function () {\n" +
+            "            var game = \"");
+    private static final byte[] WATCH_END = encode(
+            "\";\n" +
+            "            var reload = function () { location.replace(\"Game?\" + game); };\n" +
+            "            var tiles = function () {\n" +
+            "                return Array.prototype.map.call(document.querySelectorAll(\".bg-secondary .bg-light\"), function (tile) { return tile.textContent; }).join();\n" +
+            "            };\n" +
+            "            var events = new EventSource(\"api/game/events?\" + game);\n" +
+            "            events.addEventListener(\"state\", function (event) {\n" +
+            "                if (JSON.parse(event.data).tiles.join() !== tiles()) reload();\n" +
+            "            });\n" +
+            "            events.addEventListener(\"delta\", reload);\n" +
+            "        })();\n" +
+            "    </script>\n");
+
+    private static final byte[] WIN_BANNER = encode(
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col text-center pb-4\"><h1><span class=\"badge badge-success w-75\">YOU WIN</span></h1></div>\n" +
+            "            </div>\n");
+    private static final byte[] LOSE_BANNER = encode(
+            "            <div class=\"row\">\n" +
+            "                <div class=\"col text-center pb-4\"><h1><span class=\"badge badge-danger w-75\">YOU LOSE</span></h1></div>\n" +
+            "            </div>\n");
+
+    private static final byte[] ROW_START = encode("                        <div class=\"row\">\n");
+    private static final byte[] ROW_END = encode("                        </div>\n");
+    // tiles of the last row get a bottom margin, tiles of the last column a right one: index (lastRow << 1) | lastColumn
+    private static final byte[][] TILE_START = {
+            encode("                            <div class=\"col mt-1 ml-1 bg-light\">"),
+            encode("                            <div class=\"col mt-1 ml-1 mr-1 bg-light\">"),
+            encode("                            <div class=\"col mt-1 ml-1 mb-1 bg-light\">"),
+            encode("                            <div class=\"col mt-1 ml-1 mb-1 mr-1 bg-light\">")
+    };
+    private static final byte[] TILE_END = encode("</div>\n");
+    // numbers of all tiles by exponent, 0 for an empty tile
+    private static final byte[][] TILE_NUMBERS = new byte[LineKernel.MAX_EXPONENT + 1][];
+
+    static {
+        TILE_NUMBERS[0] = encode("0");
+        for (int exponent = 1; exponent < TILE_NUMBERS.length; exponent++) TILE_NUMBERS[exponent] = encode(Integer.toString(1 << exponent));
+    }
+
+    // the template cut at its placeholders: chunk i is followed by the dynamic part slots[i], the last one by nothing
+    private final byte[][] chunks;
+    private final int[] slots;
+    private final int staticLength;
+    private final int gameCount;
+    // whether pages of stored games show undo and redo
+    private final boolean history;
+
+    // the encoded parameter naming the game, id=... or token=...
+    private final ThreadLocal<byte[][]> parameters = ThreadLocal.withInitial(() -> new byte[][] {new byte[128]});
+
+    GamePageRenderer() {
+        this(UnaryOperator.identity(), true);
+    }
+
+    // links the static assets under the URLs the given function maps their paths to; with history, the pages of stored
+    // games get buttons for undo and redo
+    GamePageRenderer(UnaryOperator<String> assetUrls, boolean history) {
+        this.history = history;
+        String template = TEMPLATE;
+        for (String asset : ASSETS) template = template.replace("\"" + asset + "\"", "\"" + assetUrls.apply(asset) + "\"");
+
+        List<byte[]> chunks = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int staticLength = 0, gameCount = 0;
+        int start = 0;
+        while (true) {
+            int next = -1, slot = -1;
+            for (int kind = 0; kind < PLACEHOLDERS.length; kind++) {
+                int index = template.indexOf(PLACEHOLDERS[kind], start);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    slot = kind;
+                }
+            }
+            byte[] chunk = encode(next < 0 ? template.substring(start) : template.substring(start, next));
+            chunks.add(chunk);
+            staticLength += chunk.length;
+            if (next < 0) break;
+            slots.add(slot);
+            if (slot == GAME) gameCount++;
+            start = next + PLACEHOLDERS[slot].length();
+        }
+        this.chunks = chunks.toArray(new byte[0][]);
+        this.slots = slots.stream().mapToInt(Integer::intValue).toArray();
+        this.staticLength = staticLength;
+        this.gameCount = gameCount;
+    }
+
+    // number of bytes render writes for the given game
+    int length(Game game) {
+        return length(game, ID_PARAMETER.length + GameStateEncoder.ID_BYTES, true);
+    }
+
+    // number of bytes render writes for the given game with the given token
+    int length(Game game, String token) {
+        return length(game, TOKEN_PARAMETER.length + token.length(), false);
+    }
+
+    void render(UUID id, Game game, OutputStream out) throws IOException {
+        byte[] parameter = parameter(ID_PARAMETER.length + GameStateEncoder.ID_BYTES);
+        System.arraycopy(ID_PARAMETER, 0, parameter, 0, ID_PARAMETER.length);
+        int length = GameStateEncoder.putId(parameter, ID_PARAMETER.length, id);
+        render(parameter, length, game, out, true);
+    }
+
+    // renders the page into an array of its exact length, to be sent more than once (see GamePageCache)
+    byte[] render(UUID id, Game game) {
+        ArrayOutput out = new ArrayOutput(length(game));
+        try {
+            render(id, game, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.bytes;
+    }
+
+    // renders a page whose links carry the token of the game instead of an id; it has no undo and redo buttons, as a
+    // token game keeps no history (the browser history is its undo), and nothing to subscribe to, as nobody can watch it
+    void render(String token, Game game, OutputStream out) throws IOException {
+        byte[] parameter = parameter(TOKEN_PARAMETER.length + token.length());
+        System.arraycopy(TOKEN_PARAMETER, 0, parameter, 0, TOKEN_PARAMETER.length);
+        int length = TOKEN_PARAMETER.length;
+        // tokens are URL-safe Base64, so every character is one byte
+        for (int i = 0; i < token.length(); i++) parameter[length++] = (byte) token.charAt(i);
+        render(parameter, length, game, out, false);
+    }
+
+    // stored tells a game kept in a store from one carried by its token
+    private int length(Game game, int parameterLength, boolean stored) {
+        int length = this.staticLength + this.gameCount * parameterLength + GameStateEncoder.digits(game.getScore());
+        if (stored && this.history) length += HISTORY_START.length + HISTORY_MIDDLE.length + HISTORY_END.length + 2 * parameterLength;
+        if (stored) length += WATCH_START.length + parameterLength + WATCH_END.length;
+        if (game.isOver()) length += game.isWon() ? WIN_BANNER.length : LOSE_BANNER.length;
+
+        Board board = game.getBoard();
+        int size = board.size();
+        length += size * (ROW_START.length + ROW_END.length);
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                length += TILE_START[tileStart(size, r, c)].length + TILE_NUMBERS[board.get(r, c)].length + TILE_END.length;
+            }
+        }
+        return length;
+    }
+
+    private void render(byte[] parameter, int parameterLength, Game game, OutputStream out, boolean stored) throws IOException {
+        for (int i = 0; i < this.chunks.length; i++) {
+            out.write(this.chunks[i]);
+            if (i == this.slots.length) break;
+            switch (this.slots[i]) {
+                case SCORE:
+                    writeNumber(out, game.getScore());
+                    break;
+                case BANNER:
+                    if (game.isOver()) out.write(game.isWon() ? WIN_BANNER : LOSE_BANNER);
+                    break;
+                case GAME:
+                    out.write(parameter, 0, parameterLength);
+                    break;
+                case TILES:
+                    writeTiles(out, game.getBoard());
+                    break;
+                case HISTORY:
+                    if (!stored || !this.history) break;
+                    out.write(HISTORY_START);
+                    out.write(parameter, 0, parameterLength);
+                    out.write(HISTORY_MIDDLE);
+                    out.write(parameter, 0, parameterLength);
+                    out.write(HISTORY_END);
+                    break;
+                case WATCH:
+                    if (!stored) break;
+                    out.write(WATCH_START);
+                    out.write(parameter, 0, parameterLength);
+                    out.write(WATCH_END);
+                    break;
+            }
+        }
+    }
+
+    // the parameter buffer of the calling thread, grown to at least the given length
+    private byte[] parameter(int length) {
+        byte[][] parameter = this.parameters.get();
+        if (parameter[0].length < length) parameter[0] = new byte[length];
+        return parameter[0];
+    }
+
+    private static void writeTiles(OutputStream out, Board board) throws IOException {
+        int size = board.size();
+        for (int r = 0; r < size; r++) {
+            out.write(ROW_START);
+            for (int c = 0; c < size; c++) {
+                out.write(TILE_START[tileStart(size, r, c)]);
+                out.write(TILE_NUMBERS[board.get(r, c)]);
+                out.write(TILE_END);
+            }
+            out.write(ROW_END);
+        }
+    }
+
+    private static int tileStart(int size, int row, int column) {
+        return (row == size - 1 ? 2 : 0) | (column == size - 1 ? 1 : 0);
+    }
+
+    private static void writeNumber(OutputStream out, int number) throws IOException {
+        int power = 1;
+        for (int d = GameStateEncoder.digits(number); d > 1; d--) power *= 10;
+        for (; power > 0; power /= 10) out.write('0' + number / power % 10);
+    }
+
+    // writes into an array that is known to be large enough
+    private static final class ArrayOutput extends OutputStream {
+
+        final byte[] bytes;
+        private int length;
+
+        ArrayOutput(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        @Override
+        public void write(int b) {
+            this.bytes[this.length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) {
+            System.arraycopy(b, offset, this.bytes, this.length, length);
+            this.length += length;
+        }
+    }
+
+    private static byte[] encode(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,223 @@
+package spw4.game2048;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Checks exported games (see GameRecordWriter): plays every recorded game again from its seed and reports each one whose
+// moves, spawned tiles, score or final board come out differently. The block headers of a file are read one after the
+// other, then every block is read, inflated and replayed as a task of its own, so all cores are busy and a file is
+// read about as fast as the disk delivers it. A block that is cut short or fails its checksum is reported, too.
+//
+//   java -cp target/classes spw4.game2048.GameRecordVerifier [--threads n] <file or directory>...
+public final class GameRecordVerifier {
+
+    // mismatches printed at most, the others are only counted
+    static final int MAX_REPORTED = 100;
+
+    private final ExecutorService pool;
+
+    GameRecordVerifier(int threads) {
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "game-record-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(i + 1 < args.length ? args[++i] : "");
+                    continue;
+                }
+                Path path = Paths.get(args[i]);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> paths = Files.list(path)) {
+                        files.addAll(paths.filter(file -> file.getFileName().toString().endsWith(GameRecords.FILE_SUFFIX))
+                                .sorted().collect(Collectors.toList()));
+                    }
+                } else {
+                    files.add(path);
+                }
+            }
+            if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+            if (files.isEmpty()) throw new IllegalArgumentException("no record files given");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: GameRecordVerifier [--threads n] <file or directory>...");
+            System.exit(2);
+            return;
+        }
+
+        GameRecordVerifier verifier = new GameRecordVerifier(threads);
+        long start = System.nanoTime();
+        Result result = verifier.verify(files);
+        verifier.close();
+        result.print(System.out, System.nanoTime() - start);
+        if (!result.isValid()) System.exit(1);
+    }
+
+    // replays all games of the files
+    Result verify(List<Path> files) throws IOException, InterruptedException {
+        List<FileChannel> channels = new ArrayList<>();
+        List<Future<Result>> blocks = new ArrayList<>();
+        Result result = new Result();
+        try {
+            for (Path file : files) {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                ByteBuffer header = ByteBuffer.allocate(GameRecords.HEADER_BYTES);
+                long position = 0, size = channel.size();
+                while (position < size) {
+                    header.clear();
+                    if (!readFully(channel, header, position)) {
+                        result.problem(file + ": block at " + position + " cut short");
+                        break;
+                    }
+                    header.flip();
+                    int magic = header.getInt(), records = header.getInt(), length = header.getInt(), deflatedLength = header.getInt();
+                    int checksum = header.getInt();
+                    if (magic != GameRecords.BLOCK_MAGIC || records < 0 || length < 0 || deflatedLength < 0) {
+                        result.problem(file + ": no block at " + position);
+                        break;
+                    }
+                    long blockPosition = position + GameRecords.HEADER_BYTES;
+                    String name = file + ": block at " + position;
+                    blocks.add(this.pool.submit(() -> verifyBlock(name, channel, blockPosition, deflatedLength, length, records, checksum)));
+                    position = blockPosition + deflatedLength;
+                }
+            }
+            for (Future<Result> block : blocks) result.merge(block.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A block could not be verified.", e.getCause());
+        } finally {
+            for (FileChannel channel : channels) channel.close();
+        }
+        return result;
+    }
+
+    void close() {
+        this.pool.shutdownNow();
+    }
+
+    private static Result verifyBlock(String name, FileChannel channel, long position, int deflatedLength, int length,
+                                      int records, int checksum) {
+        Result result = new Result();
+        ByteBuffer deflated = ByteBuffer.allocate(deflatedLength);
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            if (!readFully(channel, deflated, position)) {
+                result.problem(name + " cut short");
+                return result;
+            }
+            inflater.setInput(deflated.array(), 0, deflatedLength);
+            int inflated = 0;
+            while (inflated < length && !inflater.finished() && !inflater.needsInput()) {
+                inflated += inflater.inflate(raw, inflated, length - inflated);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, inflated);
+            if (inflated != length || (int) crc.getValue() != checksum) {
+                result.problem(name + " is corrupt");
+                return result;
+            }
+        } catch (DataFormatException e) {
+            result.problem(name + " is corrupt");
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        for (int i = 0; i < records; i++) {
+            try {
+                int start = in.position();
+                String mismatch = GameRecords.verify(in);
+                result.games++;
+                result.moves += (in.position() - start) / 2;
+                if (mismatch != null) result.mismatch(mismatch);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                result.problem(name + ": record " + i + " " + e.getMessage());
+                break;
+            }
+        }
+        return result;
+    }
+
+    // reads from the position on until the buffer is full; returns false, when the file ends before
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        return true;
+    }
+
+    static final class Result {
+
+        long games;
+        // approximated by the bytes of the records over two, which is close enough for a rate
+        long moves;
+        long mismatches;
+        long problems;
+        final List<String> reported = new ArrayList<>();
+
+        void mismatch(String mismatch) {
+            this.mismatches++;
+            report(mismatch);
+        }
+
+        void problem(String problem) {
+            this.problems++;
+            report(problem);
+        }
+
+        void merge(Result other) {
+            this.games += other.games;
+            this.moves += other.moves;
+            this.mismatches += other.mismatches;
+            this.problems += other.problems;
+            for (String report : other.reported) report(report);
+        }
+
+        boolean isValid() {
+            return this.mismatches == 0 && this.problems == 0;
+        }
+
+        void print(PrintStream out, long nanos) {
+            double seconds = nanos / 1e9;
+            for (String report : this.reported) out.println(report);
+            out.printf(Locale.ROOT, "%,d games, about %,d moves in %.1f s, %,.0f moves/s%n", this.games, this.moves, seconds, this.moves / seconds);
+            out.printf(Locale.ROOT, "%,d games differ, %,d blocks or records unreadable%n", this.mismatches, this.problems);
+        }
+
+        private void report(String report) {
+            if (this.reported.size() < MAX_REPORTED) this.reported.add(report);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package spw4.game2048;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Exports every finished game as a record (see GameRecords) into block files for analytics and anti-cheat checks.
+// Request threads only encode the record and hand it to a bounded queue; a background thread collects the records
+// into blocks, deflates them and appends them to the current file, which is replaced by a new one once it is full.
+// A request never waits for the writer: when it falls behind, records are dropped and counted instead.
+//
+// A block is written once it is full or when no record came in for flushMillis, so a quiet server still puts its
+// games onto disk soon. The files are not forced to disk, a crash loses the blocks the OS had not written yet. A write
+// that fails, on a full disk or a removed directory, is logged once and ends the export: every record from then on is
+// dropped and counted, the requests go on as before.
+final class GameRecordWriter implements Closeable {
+
+    static final int QUEUE_CAPACITY = 16384;
+    static final long DEFAULT_FLUSH_MILLIS = 1000;
+    static final String FILE_PREFIX = "games-";
+
+    private final Path directory;
+    private final long fileBytes;
+    private final long flushMillis;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final BiConsumer<String, Throwable> log;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    // used by the writer thread only
+    private ByteBuffer block = ByteBuffer.allocate(GameRecords.BLOCK_BYTES);
+    private int blockRecords;
+    private byte[] deflated = new byte[GameRecords.HEADER_BYTES + GameRecords.BLOCK_BYTES + 64];
+    private final Deflater deflater = new Deflater();
+    private final CRC32 checksum = new CRC32();
+    private FileChannel file;
+    private long fileNumber;
+
+    private GameRecordWriter(Path directory, long fileBytes, long flushMillis, BiConsumer<String, Throwable> log) {
+        this.directory = directory;
+        this.fileBytes = fileBytes;
+        this.flushMillis = flushMillis;
+        this.log = log;
+        this.thread = new Thread(this::run, "game-records");
+        this.thread.setDaemon(true);
+    }
+
+    // starts writing into new files in the directory, named after the time they were started
+    static GameRecordWriter open(Path directory, long fileBytes, long flushMillis) throws IOException {
+        return open(directory, fileBytes, flushMillis, (message, e) -> { });
+    }
+
+    // the same, with the failure that ends the export passed to log, such as ServletContext.log
+    static GameRecordWriter open(Path directory, long fileBytes, long flushMillis, BiConsumer<String, Throwable> log) throws IOException {
+        if (fileBytes < GameRecords.HEADER_BYTES) throw new IllegalArgumentException("The record files are too small.");
+        if (flushMillis <= 0) throw new IllegalArgumentException("The flush interval must be positive.");
+        Files.createDirectories(directory);
+        GameRecordWriter writer = new GameRecordWriter(directory, fileBytes, flushMillis, log);
+        writer.thread.start();
+        return writer;
+    }
+
+    // called right after a move finished the game, while it is still locked by its store; returns false, when the game
+    // has no move log or the record was dropped. The move log ends with the first record, so every game is exported at
+    // most once, with the board it had when it ended first; undo can only take it back to a lower or equal score.
+    boolean finished(Game game) {
+        if (game.getMoveLog() == null) return false;
+        byte[] record = new byte[GameRecords.length(game)];
+        GameRecords.encode(game, ByteBuffer.wrap(record));
+        game.endMoveLog();
+        return offer(record);
+    }
+
+    boolean offer(byte[] record) {
+        if (!this.closed && !this.failed && this.queue.offer(record)) return true;
+        this.dropped.increment();
+        return false;
+    }
+
+    // records written into blocks so far
+    long getWritten() {
+        return this.written.sum();
+    }
+
+    long getDropped() {
+        return this.dropped.sum();
+    }
+
+    // whether a write failed and ended the export
+    boolean isFailed() {
+        return this.failed;
+    }
+
+    // writes the records still queued and closes the current file; may be called more than once
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                byte[] record;
+                try {
+                    record = this.queue.poll(this.flushMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (record == null) {
+                    writeBlock();
+                    continue;
+                }
+                if (this.block.remaining() < record.length) writeBlock();
+                // a game longer than a block gets a block of its own
+                if (this.block.capacity() < record.length) this.block = ByteBuffer.allocate(record.length);
+                this.block.put(record);
+                this.blockRecords++;
+            }
+            writeBlock();
+        } catch (IOException e) {
+            this.failed = true;
+            // the records of the block that was not written and the ones still queued are lost
+            this.dropped.add(this.blockRecords + this.queue.size());
+            this.queue.clear();
+            this.log.accept("Could not write the game records into " + this.directory + ", finished games are no longer exported", e);
+        } finally {
+            this.deflater.end();
+            try {
+                if (this.file != null) this.file.close();
+            } catch (IOException e) {
+                // the blocks written are complete, nothing else to do
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (this.blockRecords == 0) return;
+        int length = this.block.position();
+        this.checksum.reset();
+        this.checksum.update(this.block.array(), 0, length);
+        this.deflater.reset();
+        this.deflater.setInput(this.block.array(), 0, length);
+        this.deflater.finish();
+        int needed = GameRecords.HEADER_BYTES + length + length / 1000 + 64;
+        if (this.deflated.length < needed) this.deflated = new byte[needed];
+        int deflatedLength = 0;
+        while (!this.deflater.finished()) {
+            deflatedLength += this.deflater.deflate(this.deflated, GameRecords.HEADER_BYTES + deflatedLength,
+                    this.deflated.length - GameRecords.HEADER_BYTES - deflatedLength);
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(this.deflated, 0, GameRecords.HEADER_BYTES + deflatedLength);
+        out.putInt(GameRecords.BLOCK_MAGIC).putInt(this.blockRecords).putInt(length).putInt(deflatedLength)
+                .putInt((int) this.checksum.getValue());
+        out.position(0);
+        if (this.file == null || this.file.size() >= this.fileBytes) rollFile();
+        while (out.hasRemaining()) this.file.write(out);
+
+        this.written.add(this.blockRecords);
+        this.block.clear();
+        this.blockRecords = 0;
+    }
+
+    private void rollFile() throws IOException {
+        if (this.file != null) this.file.close();
+        Path path;
+        do {
+            path = this.directory.resolve(String.format("%s%d-%04d%s", FILE_PREFIX, System.currentTimeMillis(), this.fileNumber++, GameRecords.FILE_SUFFIX));
+        } while (Files.exists(path));
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,107 @@
+package spw4.game2048;
+
+import java.nio.ByteBuffer;
+
+// Records of finished games, written by GameRecordWriter and checked by GameRecordVerifier. A record holds what it takes
+// to play the game again from its seed, every move with the tile it spawned, and how the game ended, so a replay shows
+// whether the recorded game is the one the server would have played.
+//
+// Record, all numbers in big-endian byte order:
+//   seed, long
+//   board size, byte
+//   score, int
+//   move count, int
+//   final tile exponents in row-major order, two per byte with the first one in the high nibble
+//   per move a short: direction ordinal | spawned tile << 2, the tile as cell index << 2 | exponent or 0 for none
+// That is 25 bytes plus 2 bytes per move for a 4x4 game.
+//
+// Records are written in blocks of up to BLOCK_BYTES, each deflated on its own behind a header, so readers can skip
+// from block to block and inflate and replay the blocks on as many threads as there are:
+//   magic, int
+//   records in the block, int
+//   length of the records, int
+//   length of the deflated records that follow the header, int
+//   CRC32 of the records, int
+final class GameRecords {
+
+    static final int BLOCK_MAGIC = 0x32303452; // "204R"
+    static final int HEADER_BYTES = 20;
+    static final int BLOCK_BYTES = 1 << 20;
+    static final String FILE_SUFFIX = ".rec";
+
+    private static final int FIXED_BYTES = 17;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private GameRecords() {
+    }
+
+    // bytes of the record of the game
+    static int length(Game game) {
+        int size = game.getBoardSize();
+        return FIXED_BYTES + (size * size + 1) / 2 + 2 * game.getMoveCount();
+    }
+
+    // writes the record of a game whose move log is enabled (see Game.enableMoveLog)
+    static void encode(Game game, ByteBuffer out) {
+        short[] moveLog = game.getMoveLog();
+        if (moveLog == null) throw new IllegalArgumentException("The game has no move log.");
+        Board board = game.getBoard();
+        int cells = board.size() * board.size();
+        out.putLong(game.getSeed());
+        out.put((byte) board.size());
+        out.putInt(game.getScore());
+        out.putInt(game.getMoveCount());
+        for (int cell = 0; cell < cells; cell += 2) {
+            int low = cell + 1 < cells ? board.getCell(cell + 1) : 0;
+            out.put((byte) ((board.getCell(cell) << 4) | low));
+        }
+        for (int move = 0; move < game.getMoveCount(); move++) out.putShort(moveLog[move]);
+    }
+
+    // plays the next record of the buffer again from its seed and returns null, when it comes out as recorded, or
+    // what differs; the buffer is left at the record after. Throws IllegalArgumentException, when the record is cut
+    // short or malformed.
+    static String verify(ByteBuffer in) throws IllegalArgumentException {
+        if (in.remaining() < FIXED_BYTES) throw new IllegalArgumentException("record cut short");
+        long seed = in.getLong();
+        int size = in.get();
+        int score = in.getInt();
+        int moveCount = in.getInt();
+        if (size < Game.MIN_BOARD_SIZE || size > Game.MAX_BOARD_SIZE || moveCount < 0) throw new IllegalArgumentException("malformed record");
+        int cells = size * size;
+        if (in.remaining() < (cells + 1) / 2 + 2L * moveCount) throw new IllegalArgumentException("record cut short");
+        int boardStart = in.position();
+        in.position(boardStart + (cells + 1) / 2);
+
+        Game game = new Game(size, true, seed);
+        game.initialize();
+        String mismatch = null;
+        for (int move = 0; move < moveCount; move++) {
+            int entry = in.getShort();
+            if (mismatch != null) continue;
+            if (game.isOver()) {
+                mismatch = "move " + move + " after the game was over";
+            } else if (!game.move(DIRECTIONS[entry & 3]).isChanged()) {
+                mismatch = "move " + move + " moved no tile";
+            } else {
+                int spawn = (entry >>> 2) & 0xFF;
+                int replayed = game.getLastSpawnCell() < 0 ? 0 : game.getLastSpawnCell() << 2 | game.getLastSpawnExponent();
+                if (spawn != replayed) mismatch = "move " + move + " spawned another tile";
+            }
+        }
+        if (mismatch == null && !game.isOver()) mismatch = "game not over";
+        if (mismatch == null && game.getScore() != score) mismatch = "score " + game.getScore() + " instead of " + score;
+        if (mismatch == null) {
+            Board board = game.getBoard();
+            for (int cell = 0; cell < cells; cell++) {
+                int bits = in.get(boardStart + cell / 2);
+                int exponent = (cell & 1) == 0 ? (bits >>> 4) & 0xF : bits & 0xF;
+                if (board.getCell(cell) != exponent) {
+                    mismatch = "board differs at cell " + cell;
+                    break;
+                }
+            }
+        }
+        return mismatch == null ? null : "game " + Long.toHexString(seed) + ": " + mismatch;
+    }
+}
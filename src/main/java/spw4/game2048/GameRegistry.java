@@ -0,0 +1,193 @@
+package spw4.game2048;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Thread-safe, bounded store of all running games on the heap. Lookups never block; updates of a game are serialised
+// by locking the game itself, so requests for different games never wait for each other.
+//
+// Games are evicted when they have been idle for too long, when they are finished (optional) and when the store
+// holds more games than allowed. Eviction is amortised over the inserts: every insert advances a hand that walks the
+// store over a few games, drops the idle ones and, while the store is over capacity, evicts the least recently used
+// one of a few sampled games (approximate LRU). Only one thread sweeps at a time and the others simply skip it, so
+// no request thread ever waits for an eviction.
+final class GameRegistry implements GameStore {
+
+    static final int DEFAULT_MAX_GAMES = 100_000;
+    static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 30;
+
+    // games checked for idleness per insert
+    private static final int SWEEP_STEPS = 4;
+    // games compared per eviction while the store is over capacity
+    private static final int LRU_SAMPLES = 8;
+    private static final int MAX_EVICTIONS_PER_SWEEP = 16;
+
+    private final ConcurrentHashMap<UUID, Entry> games = new ConcurrentHashMap<>();
+    private final int maxGames;
+    private final long idleTimeoutNanos;
+    private final boolean removeFinishedGames;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private Iterator<Entry> clockHand; // guarded by sweepLock
+
+    GameRegistry() {
+        this(DEFAULT_MAX_GAMES, TimeUnit.MINUTES.toMillis(DEFAULT_IDLE_TIMEOUT_MINUTES), false);
+    }
+
+    GameRegistry(int maxGames, long idleTimeoutMillis, boolean removeFinishedGames) {
+        if (maxGames <= 0) throw new IllegalArgumentException("The maximum number of games must be positive.");
+        if (idleTimeoutMillis <= 0) throw new IllegalArgumentException("The idle timeout must be positive.");
+        this.maxGames = maxGames;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.removeFinishedGames = removeFinishedGames;
+    }
+
+    @Override
+    public UUID add(Game game) {
+        Entry entry;
+        do {
+            entry = new Entry(UUID.randomUUID(), game, System.nanoTime());
+        } while (this.games.putIfAbsent(entry.id, entry) != null);
+
+        sweep();
+        return entry.id;
+    }
+
+    @Override
+    public void put(UUID id, Game game) {
+        this.games.put(id, new Entry(id, game, System.nanoTime()));
+        sweep();
+    }
+
+    // returns the game stored under the given id or null, when there is none or it has expired
+    Game get(UUID id) {
+        Entry entry = lookup(id);
+        return entry == null ? null : entry.game;
+    }
+
+    private Entry lookup(UUID id) {
+        Entry entry = this.games.get(id);
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        }
+
+        long now = System.nanoTime();
+        if (isIdle(entry, now)) {
+            evict(entry);
+            this.misses.increment();
+            return null;
+        }
+
+        entry.lastAccess = now;
+        this.hits.increment();
+        return entry;
+    }
+
+    @Override
+    public <T> T update(UUID id, Function<Game, T> action) {
+        Entry entry = lookup(id);
+        if (entry == null) return null;
+
+        synchronized (entry.game) {
+            T result = action.apply(entry.game);
+            if (entry.game.isOver()) entry.finished = true;
+            return result;
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Game> action) {
+        for (Entry entry : this.games.values()) {
+            synchronized (entry.game) {
+                action.accept(entry.id, entry.game);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.games.size();
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    private void sweep() {
+        if (!this.sweepLock.tryLock()) return;
+        try {
+            long now = System.nanoTime();
+            for (int step = 0; step < SWEEP_STEPS; step++) {
+                Entry entry = advanceClockHand();
+                if (entry == null) break;
+                if (isIdle(entry, now) || (this.removeFinishedGames && entry.finished)) evict(entry);
+            }
+
+            // while over capacity, evict the least recently used one of a few sampled games
+            for (int evicted = 0; evicted < MAX_EVICTIONS_PER_SWEEP && this.games.size() > this.maxGames; evicted++) {
+                Entry oldest = null;
+                for (int sample = 0; sample < LRU_SAMPLES; sample++) {
+                    Entry entry = advanceClockHand();
+                    if (entry == null) break;
+                    if (oldest == null || entry.lastAccess - oldest.lastAccess < 0) oldest = entry;
+                }
+                if (oldest == null) break;
+                evict(oldest);
+            }
+        } finally {
+            this.sweepLock.unlock();
+        }
+    }
+
+    // returns the next game of the endless walk over the store or null, when the store is empty
+    private Entry advanceClockHand() {
+        if (this.clockHand == null || !this.clockHand.hasNext()) {
+            this.clockHand = this.games.values().iterator();
+            if (!this.clockHand.hasNext()) return null;
+        }
+        return this.clockHand.next();
+    }
+
+    private boolean isIdle(Entry entry, long now) {
+        return now - entry.lastAccess > this.idleTimeoutNanos;
+    }
+
+    private void evict(Entry entry) {
+        if (this.games.remove(entry.id, entry)) this.evictions.increment();
+    }
+
+    private static final class Entry {
+        final UUID id;
+        final Game game;
+        volatile long lastAccess;
+        volatile boolean finished;
+
+        Entry(UUID id, Game game, long lastAccess) {
+            this.id = id;
+            this.game = game;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
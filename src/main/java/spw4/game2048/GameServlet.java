@@ -2,157 +2,184 @@ package spw4.game2048;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 @WebServlet("/Game")
-public class GameServlet extends HttpServlet {
-    private HashMap<UUID, Game> games;
+public class GameServlet extends AbstractGameServlet {
+
+    GamePageRenderer renderer;
+    // signs the games of the stateless mode, null unless a token secret is configured
+    GameTokens tokens;
+    // the last pages of stored games, null when turned off
+    GamePageCache pages;
 
     @Override
     public void init() throws ServletException {
         super.init();
-        games = new HashMap<>();
+        try {
+            // the page links to the hashed URLs of its assets, which browsers cache for good
+            renderer = new GamePageRenderer(StaticAssets.get(getServletContext())::url, historyDepth > 0);
+        } catch (IOException e) {
+            throw new ServletException("Could not read the static asset manifest: " + e.getMessage(), e);
+        }
+
+        String secret = getParameter(TOKEN_SECRET_PARAM, "");
+        try {
+            tokens = secret.isEmpty() ? null : new GameTokens(secret.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid " + TOKEN_SECRET_PARAM + ": " + e.getMessage(), e);
+        }
+
+        try {
+            int pageCacheSize = Integer.parseInt(getParameter(PAGE_CACHE_PARAM, Integer.toString(GamePageCache.DEFAULT_SIZE)));
+            pages = pageCacheSize == 0 ? null : new GamePageCache(pageCacheSize);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid page cache configuration: " + e.getMessage(), e);
+        }
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        response.setContentType("text/html");
-        PrintWriter writer = response.getWriter();
+        response.setContentType("text/html;charset=UTF-8");
 
+        long start = System.nanoTime();
+        GameMetrics.Operation operation = null;
         try {
             String action = request.getParameter("action");
             if (action == null) action = "";
 
             if ("new".equals(action)) {
-                UUID id = UUID.randomUUID();
-                Game newGame = new Game();
-                newGame.initialize();
-                games.put(id, newGame);
-                writer.println(game2Html(id, newGame));
+                operation = GameMetrics.Operation.NEW;
+                Game newGame = newGame(request.getParameter("size"));
+                if (tokens != null) {
+                    metrics.created();
+                    writePage(response, tokens.encode(newGame), newGame);
+                    return;
+                }
+                UUID id = add(newGame);
+                writePage(request, response, id, newGame);
+                return;
+            }
+
+            // stateless mode: the game comes with the request and goes back with the page, the store is not involved
+            String token = request.getParameter("token");
+            if (tokens != null && token != null) {
+                Game game;
+                try {
+                    game = tokens.decode(token);
+                } catch (IllegalArgumentException e) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    writeText(response, "invalid token");
+                    return;
+                }
+                String moves = request.getParameter("moves");
+                operation = operation(action, moves);
+                // a token game keeps no history, the browser history is its undo
+                MoveTrace trace = traces.get();
+                play(game, action, moves, trace);
+                if (!writeHintOrNoContent(response, action, moves, trace, game)) writePage(response, tokens.encode(game), game);
                 return;
             }
 
             String idString = request.getParameter("id");
             if (idString != null) {
                 UUID id = UUID.fromString(idString);
-                Game game = games.get(id);
-
-                if (!game.isOver()) {
-                    switch (action) {
-                        case "up":
-                            game.move(Direction.up);
-                            break;
-                        case "down":
-                            game.move(Direction.down);
-                            break;
-                        case "left":
-                            game.move(Direction.left);
-                            break;
-                        case "right":
-                            game.move(Direction.right);
-                            break;
-                    }
+
+                // the page shows a copy of the game, so it is written to the client after the game has been released
+                String moves = request.getParameter("moves");
+                operation = operation(action, moves);
+                MoveTrace trace = traces.get();
+                Game page;
+                if ("undo".equals(action) || "redo".equals(action)) {
+                    trace.clear();
+                    page = undo(id, "redo".equals(action));
+                } else {
+                    page = moves == null ? move(id, action, trace) : moves(id, moves, trace);
+                }
+                if (page == null) {
+                    response.setStatus(HttpServletResponse.SC_GONE);
+                    writeText(response, "game expired");
+                    return;
                 }
 
-                writer.println(game2Html(id, games.get(id)));
+                // searched on the copy, so the game can be played on while the hint is worked out
+                if (!writeHintOrNoContent(response, action, moves, trace, page)) writePage(request, response, id, page);
                 return;
             }
 
-            writer.println("invalid request");
+            writeText(response, "invalid request");
         }
         catch (Throwable t) {
-            writer.println(t.toString());
+            metrics.error();
+            log("Request failed", t);
+            writeText(response, t.toString());
+        }
+        finally {
+            if (operation != null) metrics.record(operation, start);
         }
     }
 
-    private String game2Html(UUID id, Game game) {
-        StringBuffer sb = new StringBuffer();
-
-        sb.append("<!DOCTYPE html>\n");
-        sb.append("<html lang=\"en\">\n");
-        sb.append("<head>\n");
-        sb.append("    <meta charset=\"UTF-8\">\n");
-        sb.append("    <title>2048</title>\n");
-        sb.append("    <link href=\"css/bootstrap.min.css\" rel=\"stylesheet\"/>\n");
-        sb.append("    <link href=\"icons/bootstrap-icons.css\" rel=\"stylesheet\"/>\n");
-        sb.append("    <script src=\"js/bootstrap.min.js\"></script>\n");
-        sb.append("</head>\n");
-        sb.append("<body>\n");
-        sb.append("    <h1 class=\"m-5 text-center\">Play 2048:</h1>\n");
-        sb.append("\n");
-        sb.append("    <div class=\"row\">\n");
-        sb.append("        <div class=\"col-4\"></div>\n");
-        sb.append("        <div class=\"col\">\n");
-        sb.append("            <div class=\"row\">\n");
-        sb.append("                <div class=\"col text-center pb-4\"><h5>Score: " + game.getScore() + "</h5></div>\n");
-        sb.append("            </div>\n");
-        if (game.isOver() && game.isWon()) {
-            sb.append("            <div class=\"row\">\n");
-            sb.append("                <div class=\"col text-center pb-4\"><h1><span class=\"badge badge-success w-75\">YOU WIN</span></h1></div>\n");
-            sb.append("            </div>\n");
-        } else if (game.isOver() && !game.isWon()) {
-            sb.append("            <div class=\"row\">\n");
-            sb.append("                <div class=\"col text-center pb-4\"><h1><span class=\"badge badge-danger w-75\">YOU LOSE</span></h1></div>\n");
-            sb.append("            </div>\n");
+    // answers a hint request with the hint and moves that moved no tile with 204, which leaves the page the browser
+    // shows as it is; returns false, when the request needs the page of the game instead
+    private boolean writeHintOrNoContent(HttpServletResponse response, String action, String moves, MoveTrace trace, Game game) throws IOException {
+        if ("hint".equals(action)) {
+            Direction hint = hints.hint(game);
+            response.setContentType("text/plain;charset=UTF-8");
+            writeText(response, hint == null ? "none" : hint.name());
+            return true;
+        }
+        if ((moves != null || toDirection(action) != null) && trace.size() == 0) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            return true;
+        }
+        return false;
+    }
+
+    // writes the page of a stored game with an ETag of its id and revision: a client that has the page already gets
+    // 304 and one that has not gets the cached page, if there is one, so a game that did not change is rendered once
+    private void writePage(HttpServletRequest request, HttpServletResponse response, UUID id, Game game) throws IOException {
+        int revision = game.getRevision();
+        GamePageCache.Page page = pages == null ? null : pages.get(id, revision);
+        String etag = page != null ? page.etag : GamePageCache.etag(id, revision);
+        // the page must be revalidated every time, as the game may have been moved elsewhere in between
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("ETag", etag);
+        if (StaticAssetFilter.matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (pages == null) {
+            writePage(response, id, game);
+            return;
         }
-        sb.append("            <div class=\"row\">\n");
-        sb.append("                <div class=\"col-2\"></div>\n");
-        sb.append("                <div class=\"col text-center pb-4\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?id=" + id + "&action=up\"><i class=\"bi-arrow-up\"></i></a></div>\n");
-        sb.append("                <div class=\"col-2\"></div>\n");
-        sb.append("            </div>\n");
-        sb.append("            <div class=\"row\">\n");
-        sb.append("                <div class=\"col-2 my-auto text-right\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?id=" + id + "&action=left\"><i class=\"bi-arrow-left\"></i></a></div>\n");
-        sb.append("                <div class=\"col\">\n");
-        sb.append("                    <div class=\"container text-center bg-secondary\">\n");
-        sb.append("                        <div class=\"row\">\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(0, 0) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(0, 1) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(0, 2) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mr-1 bg-light\">" + game.getTileAt(0, 3) + "</div>\n");
-        sb.append("                        </div>\n");
-        sb.append("                        <div class=\"row\">\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(1, 0) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(1, 1) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(1, 2) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mr-1 bg-light\">" + game.getTileAt(1, 3) + "</div>\n");
-        sb.append("                        </div>\n");
-        sb.append("                        <div class=\"row\">\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(2, 0) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(2, 1) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 bg-light\">" + game.getTileAt(2, 2) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mr-1 bg-light\">" + game.getTileAt(2, 3) + "</div>\n");
-        sb.append("                        </div>\n");
-        sb.append("                        <div class=\"row\">\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mb-1 bg-light\">" + game.getTileAt(3, 0) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mb-1 bg-light\">" + game.getTileAt(3, 1) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mb-1 bg-light\">" + game.getTileAt(3, 2) + "</div>\n");
-        sb.append("                            <div class=\"col mt-1 ml-1 mb-1 mr-1 bg-light\">" + game.getTileAt(3, 3) + "</div>\n");
-        sb.append("                        </div>\n");
-        sb.append("                    </div>\n");
-        sb.append("                </div>\n");
-        sb.append("                <div class=\"col-2 my-auto\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?id=" + id + "&action=right\"><i class=\"bi-arrow-right\"></i></a></div>\n");
-        sb.append("            </div>\n");
-        sb.append("            <div class=\"row\">\n");
-        sb.append("                <div class=\"col-2\"></div>\n");
-        sb.append("                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-secondary\" href=\"Game?id=" + id + "&action=down\"><i class=\"bi-arrow-down\"></i></a></div>\n");
-        sb.append("                <div class=\"col-2\"></div>\n");
-        sb.append("            </div>\n");
-        sb.append("            <div class=\"row\">\n");
-        sb.append("                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-danger w-75\" href=\"Game?action=new\">New Game</a></div>\n");
-        sb.append("                <div class=\"col text-center pt-4\"><a role=\"button\" class=\"btn btn-info w-75\" href=\"Game?id=" + id + "\">Refresh</a></div>\n");
-        sb.append("            </div>\n");
-        sb.append("        </div>\n");
-        sb.append("        <div class=\"col-4\"></div>\n");
-        sb.append("    </div>\n");
-        sb.append("</body>\n");
-        sb.append("</html>\n");
-
-        return sb.toString();
+        if (page == null) {
+            long start = System.nanoTime();
+            page = pages.put(id, revision, renderer.render(id, game));
+            metrics.record(GameMetrics.Operation.RENDER, start);
+        }
+        response.setContentLength(page.bytes.length);
+        response.getOutputStream().write(page.bytes);
+    }
+
+    private void writePage(HttpServletResponse response, UUID id, Game game) throws IOException {
+        long start = System.nanoTime();
+        response.setContentLength(renderer.length(game));
+        renderer.render(id, game, response.getOutputStream());
+        metrics.record(GameMetrics.Operation.RENDER, start);
+    }
+
+    private void writePage(HttpServletResponse response, String token, Game game) throws IOException {
+        long start = System.nanoTime();
+        response.setContentLength(renderer.length(game, token));
+        renderer.render(token, game, response.getOutputStream());
+        metrics.record(GameMetrics.Operation.RENDER, start);
+    }
+
+    private static void writeText(HttpServletResponse response, String text) throws IOException {
+        response.getOutputStream().write((text + "\n").getBytes(StandardCharsets.UTF_8));
     }
 }
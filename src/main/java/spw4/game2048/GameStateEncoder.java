@@ -0,0 +1,240 @@
+package spw4.game2048;
+
+import java.util.UUID;
+
+// Encodes the state of a game for machine clients, either as minimal JSON or in a fixed-size binary form. Both are
+// written into a buffer of the caller, which is reused for every request.
+//
+// JSON: {"id":"<uuid>","size":4,"score":16,"moves":3,"over":false,"won":false,"tiles":[0,2,...]} with the tile
+// numbers in row-major order, 0 for an empty tile.
+//
+// Binary, all numbers in big-endian byte order:
+//   0  id, 16 bytes
+//   16 score, int
+//   20 move count, int
+//   24 board size, byte
+//   25 status flags, byte: OVER, WON, MOVE_AVAILABLE
+//   26 tile exponents in row-major order, two per byte with the first one in the high nibble, 0 for an empty tile
+//
+// The state may be followed by the trace of a batch of moves: in JSON as "trace":[["L",16,5,2],...] with the move, the
+// score right after it and the cell index and number of the spawned tile (both left out, when none spawned); in binary
+// as the number of moves (short) followed by 6 bytes per move: direction ordinal, score (int) and the spawned tile as
+// cell index << 2 | exponent, 0 when none spawned.
+final class GameStateEncoder {
+
+    static final int MAX_JSON_BYTES = 1024;
+    static final int BINARY_HEADER_BYTES = 26;
+    static final int MAX_BINARY_BYTES = BINARY_HEADER_BYTES + (Board.MAX_SIZE * Board.MAX_SIZE + 1) / 2;
+    static final int ID_BYTES = 36;
+    static final int BINARY_TRACE_BYTES = 6;
+    // ["L",2147483647,63,32768], at most
+    private static final int JSON_TRACE_BYTES = 32;
+
+    static final byte OVER = 1;
+    static final byte WON = 2;
+    static final byte MOVE_AVAILABLE = 4;
+
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] JSON_ID = ascii("{\"id\":\"");
+    private static final byte[] JSON_DELTA_SCORE = ascii("{\"score\":");
+    private static final byte[] JSON_SIZE = ascii("\",\"size\":");
+    private static final byte[] JSON_SCORE = ascii(",\"score\":");
+    private static final byte[] JSON_MOVES = ascii(",\"moves\":");
+    private static final byte[] JSON_OVER = ascii(",\"over\":");
+    private static final byte[] JSON_WON = ascii(",\"won\":");
+    private static final byte[] JSON_TILES = ascii(",\"tiles\":[");
+    private static final byte[] JSON_TRACE = ascii("],\"trace\":[");
+    private static final byte[] JSON_END = ascii("]}");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    // start of a trace entry by direction ordinal: ["U",
+    private static final byte[][] JSON_TRACE_ENTRIES = new byte[Direction.values().length][];
+
+    static {
+        for (Direction direction : Direction.values()) {
+            JSON_TRACE_ENTRIES[direction.ordinal()] = ascii("[\"" + Character.toUpperCase(direction.name().charAt(0)) + "\",");
+        }
+    }
+
+    private GameStateEncoder() {
+    }
+
+    static int binaryLength(int boardSize) {
+        return BINARY_HEADER_BYTES + (boardSize * boardSize + 1) / 2;
+    }
+
+    // size of a buffer that holds either form of any game with the given trace, which may be null
+    static int maxLength(MoveTrace trace) {
+        if (trace == null) return MAX_JSON_BYTES;
+        return MAX_JSON_BYTES + trace.size() * Math.max(JSON_TRACE_BYTES, BINARY_TRACE_BYTES);
+    }
+
+    // writes the binary form, followed by the trace unless it is null, into the buffer and returns its length
+    static int encodeBinary(UUID id, Game game, MoveTrace trace, byte[] buffer) {
+        putLong(buffer, 0, id.getMostSignificantBits());
+        putLong(buffer, 8, id.getLeastSignificantBits());
+        putInt(buffer, 16, game.getScore());
+        putInt(buffer, 20, game.getMoveCount());
+        Board board = game.getBoard();
+        int size = board.size();
+        buffer[24] = (byte) size;
+        buffer[25] = flags(game);
+
+        int cells = size * size;
+        for (int cell = 0; cell < cells; cell += 2) {
+            int high = board.getCell(cell);
+            int low = cell + 1 < cells ? board.getCell(cell + 1) : 0;
+            buffer[BINARY_HEADER_BYTES + cell / 2] = (byte) ((high << 4) | low);
+        }
+        int position = binaryLength(size);
+        if (trace == null) return position;
+
+        buffer[position++] = (byte) (trace.size() >>> 8);
+        buffer[position++] = (byte) trace.size();
+        for (int move = 0; move < trace.size(); move++) {
+            buffer[position] = (byte) trace.getDirection(move).ordinal();
+            putInt(buffer, position + 1, trace.getScore(move));
+            int cell = trace.getSpawnCell(move);
+            buffer[position + 5] = (byte) (cell < 0 ? 0 : (cell << 2) | trace.getSpawnExponent(move));
+            position += BINARY_TRACE_BYTES;
+        }
+        return position;
+    }
+
+    // writes the JSON form, with the trace unless it is null, into the buffer and returns its length
+    static int encodeJson(UUID id, Game game, MoveTrace trace, byte[] buffer) {
+        int position = put(buffer, 0, JSON_ID);
+        position = putId(buffer, position, id);
+        position = put(buffer, position, JSON_SIZE);
+        position = putNumber(buffer, position, game.getBoardSize());
+        position = put(buffer, position, JSON_SCORE);
+        position = putNumber(buffer, position, game.getScore());
+        position = put(buffer, position, JSON_MOVES);
+        position = putNumber(buffer, position, game.getMoveCount());
+        position = put(buffer, position, JSON_OVER);
+        position = put(buffer, position, game.isOver() ? TRUE : FALSE);
+        position = put(buffer, position, JSON_WON);
+        position = put(buffer, position, game.isWon() ? TRUE : FALSE);
+        position = put(buffer, position, JSON_TILES);
+
+        Board board = game.getBoard();
+        int cells = board.size() * board.size();
+        for (int cell = 0; cell < cells; cell++) {
+            if (cell > 0) buffer[position++] = ',';
+            int exponent = board.getCell(cell);
+            position = putNumber(buffer, position, exponent == 0 ? 0 : 1 << exponent);
+        }
+        if (trace != null) {
+            position = put(buffer, position, JSON_TRACE);
+            for (int move = 0; move < trace.size(); move++) {
+                if (move > 0) buffer[position++] = ',';
+                position = put(buffer, position, JSON_TRACE_ENTRIES[trace.getDirection(move).ordinal()]);
+                position = putNumber(buffer, position, trace.getScore(move));
+                if (trace.getSpawnCell(move) >= 0) {
+                    buffer[position++] = ',';
+                    position = putNumber(buffer, position, trace.getSpawnCell(move));
+                    buffer[position++] = ',';
+                    position = putNumber(buffer, position, 1 << trace.getSpawnExponent(move));
+                }
+                buffer[position++] = ']';
+            }
+        }
+        return put(buffer, position, JSON_END);
+    }
+
+    // writes the change from one state of a game to a later one as JSON into the buffer and returns its length:
+    // {"score":16,"moves":3,"over":false,"won":false,"tiles":[[5,2],[6,0]]} lists the cell index and new number of
+    // every tile that changed
+    static int encodeDelta(Game previous, Game current, byte[] buffer) {
+        int position = put(buffer, 0, JSON_DELTA_SCORE);
+        position = putNumber(buffer, position, current.getScore());
+        position = put(buffer, position, JSON_MOVES);
+        position = putNumber(buffer, position, current.getMoveCount());
+        position = put(buffer, position, JSON_OVER);
+        position = put(buffer, position, current.isOver() ? TRUE : FALSE);
+        position = put(buffer, position, JSON_WON);
+        position = put(buffer, position, current.isWon() ? TRUE : FALSE);
+        position = put(buffer, position, JSON_TILES);
+
+        Board before = previous.getBoard(), after = current.getBoard();
+        int cells = after.size() * after.size();
+        boolean first = true;
+        for (int cell = 0; cell < cells; cell++) {
+            int exponent = after.getCell(cell);
+            if (exponent == before.getCell(cell)) continue;
+            if (!first) buffer[position++] = ',';
+            first = false;
+            buffer[position++] = '[';
+            position = putNumber(buffer, position, cell);
+            buffer[position++] = ',';
+            position = putNumber(buffer, position, exponent == 0 ? 0 : 1 << exponent);
+            buffer[position++] = ']';
+        }
+        return put(buffer, position, JSON_END);
+    }
+
+    // writes the id in the same form as UUID.toString, without creating that string, and returns the next position
+    static int putId(byte[] buffer, int position, UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        for (int nibble = 15; nibble >= 0; nibble--) {
+            if (nibble == 7 || nibble == 3) buffer[position++] = '-';
+            buffer[position++] = HEX_DIGITS[(int) (msb >>> (4 * nibble)) & 0xF];
+        }
+        for (int nibble = 15; nibble >= 0; nibble--) {
+            if (nibble == 15 || nibble == 11) buffer[position++] = '-';
+            buffer[position++] = HEX_DIGITS[(int) (lsb >>> (4 * nibble)) & 0xF];
+        }
+        return position;
+    }
+
+    // number of digits of a number that is not negative
+    static int digits(int number) {
+        int digits = 1;
+        while (number >= 10) {
+            number /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    // writes the digits of a number that is not negative and returns the next position
+    static int putNumber(byte[] buffer, int position, int number) {
+        int end = position + digits(number);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        return end;
+    }
+
+    private static byte flags(Game game) {
+        byte flags = 0;
+        if (game.isOver()) flags |= OVER;
+        if (game.isWon()) flags |= WON;
+        if (game.isMoveAvailable()) flags |= MOVE_AVAILABLE;
+        return flags;
+    }
+
+    private static int put(byte[] buffer, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static void putInt(byte[] buffer, int position, int value) {
+        for (int i = 3; i >= 0; i--) {
+            buffer[position + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void putLong(byte[] buffer, int position, long value) {
+        putInt(buffer, position, (int) (value >>> 32));
+        putInt(buffer, position + 4, (int) value);
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) text.charAt(i);
+        return bytes;
+    }
+}
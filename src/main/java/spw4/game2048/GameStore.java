@@ -0,0 +1,31 @@
+package spw4.game2048;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Thread-safe store of the running games behind GameServlet.
+interface GameStore {
+
+    // stores the game under a fresh id and returns that id
+    UUID add(Game game);
+
+    // stores the game under the given id, i.e. when restoring games that were persisted
+    void put(UUID id, Game game);
+
+    // applies the action to the game stored under the given id and returns its result, or null when there is no such
+    // game (anymore). Actions on the same game run one after the other, actions on different games never wait for
+    // each other. The game must not be used once the action has returned.
+    <T> T update(UUID id, Function<Game, T> action);
+
+    // passes every stored game to the action, each one while no other request can touch it
+    void forEach(BiConsumer<UUID, Game> action);
+
+    int size();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+}
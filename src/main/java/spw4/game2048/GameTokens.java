@@ -0,0 +1,140 @@
+package spw4.game2048;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Encodes the whole state of a game into a signed token, so the game can travel in the links of its page instead of
+// being stored on the server (see GameServlet): any node that knows the secret can take the next move of any game.
+//
+// Token, URL-safe Base64 without padding, all numbers in big-endian byte order:
+//   0  version, byte
+//   1  board size | SPAWNING, byte
+//   2  score, int
+//   6  move count, int
+//   10 seed, long
+//   18 number of tiles spawned so far, int; the random state follows from that and the seed, see SplitMix64.draws
+//   22 tile exponents in row-major order, two per byte with the first one in the high nibble
+//   the first MAC_BYTES of the HMAC-SHA256 of everything before
+// That is 46 bytes or 62 characters for a 4x4 game.
+//
+// The token is signed, not encrypted: a player may read the seed and so foresee the tiles to come, and may go back to
+// any token seen before, which works like an unlimited undo. Tokens only ever continue a game the way the server would.
+final class GameTokens {
+
+    static final int MIN_SECRET_BYTES = 16;
+    static final int MAC_BYTES = 16;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final byte SPAWNING = (byte) 0x80;
+    private static final int HEADER_BYTES = 22;
+    private static final int MAX_BYTES = HEADER_BYTES + (Board.MAX_SIZE * Board.MAX_SIZE + 1) / 2 + MAC_BYTES;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    // a Mac and a token buffer per thread, so neither is created per request
+    private final ThreadLocal<Mac> macs;
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[MAX_BYTES]);
+
+    GameTokens(byte[] secret) {
+        if (secret.length < MIN_SECRET_BYTES) throw new IllegalArgumentException("The token secret must have at least " + MIN_SECRET_BYTES + " bytes.");
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // fails right away, not on the first request, when the algorithm is missing
+        newMac();
+    }
+
+    String encode(Game game) {
+        byte[] token = this.buffers.get();
+        Board board = game.getBoard();
+        int size = board.size(), cells = size * size;
+        token[0] = VERSION;
+        token[1] = (byte) (game.isAutomaticSpawningEnabled() ? size | SPAWNING : size);
+        putInt(token, 2, game.getScore());
+        putInt(token, 6, game.getMoveCount());
+        putLong(token, 10, game.getSeed());
+        putInt(token, 18, (int) SplitMix64.draws(game.getSeed(), game.getRandomState()));
+        for (int cell = 0; cell < cells; cell += 2) {
+            int low = cell + 1 < cells ? board.getCell(cell + 1) : 0;
+            token[HEADER_BYTES + cell / 2] = (byte) ((board.getCell(cell) << 4) | low);
+        }
+        int length = HEADER_BYTES + (cells + 1) / 2;
+        sign(token, length);
+        return ENCODER.encodeToString(Arrays.copyOf(token, length + MAC_BYTES));
+    }
+
+    // returns the game encoded by the token; throws IllegalArgumentException, when it is malformed or was not signed
+    // with the secret of this instance
+    Game decode(String encoded) throws IllegalArgumentException {
+        if (encoded.length() > (MAX_BYTES * 4 + 2) / 3) throw new IllegalArgumentException("invalid token");
+        byte[] token = DECODER.decode(encoded);
+        int length = token.length - MAC_BYTES;
+        if (length < HEADER_BYTES) throw new IllegalArgumentException("invalid token");
+        byte[] signature = Arrays.copyOfRange(token, length, token.length);
+        sign(token, length);
+        // compares in constant time, so the time taken tells nothing about the right signature
+        if (!MessageDigest.isEqual(signature, Arrays.copyOfRange(token, length, token.length))) {
+            throw new IllegalArgumentException("invalid token");
+        }
+
+        int size = token[1] & ~SPAWNING;
+        if (token[0] != VERSION || size < Game.MIN_BOARD_SIZE || size > Game.MAX_BOARD_SIZE
+                || length != HEADER_BYTES + (size * size + 1) / 2) {
+            throw new IllegalArgumentException("invalid token");
+        }
+        long seed = getLong(token, 10);
+        Game game = new Game(size, (token[1] & SPAWNING) != 0, seed);
+        Board board = game.getBoard();
+        for (int cell = 0; cell < size * size; cell++) {
+            int bits = token[HEADER_BYTES + cell / 2];
+            board.setCell(cell, (cell & 1) == 0 ? (bits >>> 4) & 0xF : bits & 0xF);
+        }
+        game.restore(getInt(token, 2), getInt(token, 6), seed + getInt(token, 18) * SplitMix64.GAMMA);
+        return game;
+    }
+
+    // writes the signature of the first length bytes right after them
+    private void sign(byte[] token, int length) {
+        Mac mac = this.macs.get();
+        mac.update(token, 0, length);
+        System.arraycopy(mac.doFinal(), 0, token, length, MAC_BYTES);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available.", e);
+        }
+    }
+
+    private static void putInt(byte[] buffer, int position, int value) {
+        for (int i = 3; i >= 0; i--) {
+            buffer[position + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void putLong(byte[] buffer, int position, long value) {
+        putInt(buffer, position, (int) (value >>> 32));
+        putInt(buffer, position + 4, (int) value);
+    }
+
+    private static int getInt(byte[] buffer, int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) value = (value << 8) | (buffer[position + i] & 0xFF);
+        return value;
+    }
+
+    private static long getLong(byte[] buffer, int position) {
+        return ((long) getInt(buffer, position) << 32) | (getInt(buffer, position + 4) & 0xFFFFFFFFL);
+    }
+}
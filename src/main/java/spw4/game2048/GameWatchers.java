@@ -0,0 +1,304 @@
+package spw4.game2048;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes every change of a game to the clients watching it as Server-Sent Events. Watchers are parked as AsyncContexts,
+// so a waiting watcher holds no request thread. One fan-out thread encodes the difference to the state it sent last for
+// a game once and queues the same bytes to every watcher of the game.
+//
+// Games nobody watches cost a single map lookup per move. Joins and changes of a game are taken while the game is
+// locked, so every watcher sees the changes of its game in order, starting right after the full state it got first.
+// Changes the fan-out thread has not encoded yet are merged into the latest state of the game, so however fast a game
+// is played, it has at most one copy waiting.
+//
+// Servlet 3.0 only writes blocking, so the fan-out thread never writes itself: every watcher has a queue of its own,
+// drained by one of a fixed number of writer threads while it is not empty, however many watchers there are. A watcher
+// whose queue grows past maxPendingBytes, or whose write does not return within WRITE_TIMEOUT_MILLIS, is dropped and its
+// stream completed; EventSource reconnects and starts over with the full state. Completing the stream does not
+// necessarily unblock a write in progress: a client that stopped reading holds its writer thread until the container
+// times the connection out. While all writer threads are held that way, the queues of the other watchers fill up and
+// they are dropped in turn, so neither threads nor memory grow with the number of stalled clients.
+final class GameWatchers implements Closeable {
+
+    static final long HEARTBEAT_SECONDS = 15;
+    static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+    static final int DEFAULT_WRITER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    static final long WRITE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ConcurrentHashMap<UUID, Channel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fanOut;
+    // writes the queues of the watchers, one watcher per thread at a time
+    private final ExecutorService writers;
+    private final int maxPendingBytes;
+    private final byte[] buffer = new byte[GameStateEncoder.MAX_JSON_BYTES]; // used by the fan-out thread only
+
+    GameWatchers() {
+        this(DEFAULT_MAX_PENDING_BYTES, DEFAULT_WRITER_THREADS);
+    }
+
+    GameWatchers(int maxPendingBytes, int writerThreads) {
+        if (maxPendingBytes <= 0) throw new IllegalArgumentException("The pending bytes of a watcher must be positive.");
+        if (writerThreads <= 0) throw new IllegalArgumentException("The number of writer threads must be positive.");
+        this.maxPendingBytes = maxPendingBytes;
+        this.fanOut = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-watchers");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the queue of the pool holds at most one task per watcher, see send
+        this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "game-watcher-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fanOut.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // adds a watcher of the game, which first gets the full state; called while the game is locked
+    void watch(UUID id, Game game, AsyncContext context) {
+        Game snapshot = snapshot(game);
+        // a channel with a pending join is never removed, so the changes taken from now on reach the watcher
+        Channel channel = this.channels.compute(id, (key, existing) -> {
+            Channel c = existing == null ? new Channel(id) : existing;
+            c.pendingJoins++;
+            return c;
+        });
+        Watcher watcher = new Watcher(context);
+
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                leave(channel, watcher);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                event.getAsyncContext().complete();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                event.getAsyncContext().complete();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        submit(() -> {
+            this.channels.computeIfPresent(id, (key, c) -> {
+                c.pendingJoins--;
+                return c;
+            });
+            // the others get the changes taken before the join first, then the newer of both states is the one all
+            // watchers of the game have
+            flush(channel);
+            if (channel.last == null || snapshot.getRevision() > channel.last.getRevision()) channel.last = snapshot;
+            channel.watchers.add(watcher);
+            int length = GameStateEncoder.encodeJson(id, channel.last, null, this.buffer);
+            send(watcher, event("state", channel.last.getMoveCount(), length));
+        });
+    }
+
+    // takes the change of the game for its watchers; called while the game is locked
+    void changed(UUID id, Game game) {
+        Channel channel = this.channels.get(id);
+        if (channel == null) return;
+
+        boolean queue;
+        synchronized (channel) {
+            if (channel.pending == null) channel.pending = snapshot(game);
+            else channel.pending.copyFrom(game);
+            queue = !channel.flushQueued;
+            channel.flushQueued = true;
+        }
+        if (queue) submit(() -> flush(channel));
+    }
+
+    int watcherCount() {
+        int count = 0;
+        for (Channel channel : this.channels.values()) count += channel.watchers.size();
+        return count;
+    }
+
+    // ends all watches; may be called more than once
+    @Override
+    public void close() {
+        this.fanOut.shutdownNow();
+        this.writers.shutdownNow();
+        for (Channel channel : this.channels.values()) {
+            for (Watcher watcher : channel.watchers) complete(watcher.context);
+        }
+        this.channels.clear();
+    }
+
+    private void leave(Channel channel, Watcher watcher) {
+        watcher.closed = true;
+        submit(() -> {
+            channel.watchers.remove(watcher);
+            this.channels.computeIfPresent(channel.id, (key, c) -> c.watchers.isEmpty() && c.pendingJoins == 0 ? null : c);
+        });
+    }
+
+    // sends the latest change of the game taken since the last flush, if there is one; called by the fan-out thread only
+    private void flush(Channel channel) {
+        Game next;
+        synchronized (channel) {
+            next = channel.pending;
+            channel.pending = null;
+            channel.flushQueued = false;
+        }
+        if (next == null) return;
+        if (channel.last == null) {
+            // nobody got a state yet, the first join sends it
+            channel.last = next;
+            return;
+        }
+        int length = GameStateEncoder.encodeDelta(channel.last, next, this.buffer);
+        byte[] event = event("delta", next.getMoveCount(), length);
+        channel.last = next;
+        for (Watcher watcher : channel.watchers) send(watcher, event);
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Channel channel : this.channels.values()) {
+            for (Watcher watcher : channel.watchers) {
+                long writeStart = watcher.writeStart;
+                if (writeStart != 0 && now - writeStart > WRITE_TIMEOUT_MILLIS) drop(watcher);
+                else send(watcher, HEARTBEAT);
+            }
+        }
+    }
+
+    // queues the event for the watcher and starts its writer, unless it is running; never blocks
+    private void send(Watcher watcher, byte[] event) {
+        if (watcher.closed) return;
+        if (watcher.pendingBytes.addAndGet(event.length) > this.maxPendingBytes) {
+            drop(watcher);
+            return;
+        }
+        watcher.events.add(event);
+        if (watcher.writing.compareAndSet(false, true)) {
+            try {
+                this.writers.execute(() -> write(watcher));
+            } catch (RejectedExecutionException e) {
+                // closed, the watchers have been completed already
+            }
+        }
+    }
+
+    // writes the queued events of the watcher until there are none left; a watcher that cannot be written to is dropped
+    private void write(Watcher watcher) {
+        try {
+            OutputStream out = watcher.context.getResponse().getOutputStream();
+            while (true) {
+                byte[] event;
+                while ((event = watcher.events.poll()) != null) {
+                    watcher.writeStart = System.currentTimeMillis();
+                    out.write(event);
+                    watcher.pendingBytes.addAndGet(-event.length);
+                }
+                out.flush();
+                watcher.writeStart = 0;
+                watcher.writing.set(false);
+                // an event queued after the last poll, but before the flag was cleared, has no writer started for it
+                if (watcher.events.isEmpty() || !watcher.writing.compareAndSet(false, true)) return;
+            }
+        } catch (IOException | IllegalStateException e) {
+            drop(watcher);
+        }
+    }
+
+    private static void drop(Watcher watcher) {
+        watcher.closed = true;
+        watcher.events.clear();
+        // completing the stream has the container call onComplete, which removes the watcher from its channel
+        complete(watcher.context);
+    }
+
+    // an SSE event whose data is the first length bytes of the buffer
+    private byte[] event(String name, int moveCount, int length) {
+        StringBuilder sb = new StringBuilder(length + 48);
+        sb.append("event: ").append(name).append('\n');
+        sb.append("id: ").append(moveCount).append('\n');
+        sb.append("data: ").append(new String(this.buffer, 0, length, StandardCharsets.US_ASCII)).append("\n\n");
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void submit(Runnable task) {
+        try {
+            this.fanOut.execute(task);
+        } catch (RejectedExecutionException e) {
+            // closed, the watchers have been completed already
+        }
+    }
+
+    private static Game snapshot(Game game) {
+        Game snapshot = new Game(game.getBoardSize(), false);
+        snapshot.copyFrom(game);
+        return snapshot;
+    }
+
+    private static void complete(AsyncContext context) {
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            // completed already
+        }
+    }
+
+    private static final class Channel {
+        final UUID id;
+        // changed by the fan-out thread only, iterated over while it changes them
+        final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+        // guarded by the map entry of the channel
+        int pendingJoins;
+        // state the watchers have been sent last, used by the fan-out thread only
+        Game last;
+        // latest state taken by changed and not sent yet, and whether a flush is queued for it; guarded by the channel
+        Game pending;
+        boolean flushQueued;
+
+        Channel(UUID id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Watcher {
+        final AsyncContext context;
+        final Queue<byte[]> events = new ConcurrentLinkedQueue<>();
+        // bytes queued and not written yet
+        final AtomicInteger pendingBytes = new AtomicInteger();
+        // whether a writer runs for the watcher
+        final AtomicBoolean writing = new AtomicBoolean();
+        // when the write in progress started, 0 if none is
+        volatile long writeStart;
+        volatile boolean closed;
+
+        Watcher(AsyncContext context) {
+            this.context = context;
+        }
+    }
+}
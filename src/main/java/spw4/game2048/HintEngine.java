@@ -0,0 +1,261 @@
+package spw4.game2048;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Suggests the next move of a game by an expectimax search: the player picks the move with the best expected value,
+// a spawned tile is a chance node over every empty tile with a 2 (90%) or a 4 (10%), as in Game.automaticSpawning.
+// Leaves are rated by a heuristic over rows and columns. The search deepens one move at a time until the time budget
+// of the request is used up and answers with the best move of the deepest search that completed. The root moves are
+// searched in parallel on a pool of its own, so hints never occupy more threads than there are cores and never run
+// on the threads that serve requests.
+//
+// Only 4x4 boards are searched, through the BitBoard tables; on every other size the hint is the move that leaves
+// the most empty tiles.
+final class HintEngine implements Closeable {
+
+    static final long DEFAULT_BUDGET_MILLIS = 20;
+    static final int MAX_DEPTH = 8;
+
+    // chance nodes this unlikely to be reached are rated by the heuristic instead of being searched any further
+    private static final float MIN_PROBABILITY = 0.0001f;
+    private static final int CLOCK_CHECK_MASK = 1024 - 1;
+    // a search one move deeper takes about this many times longer, so it is not started without the time for it
+    private static final int DEPTH_GROWTH = 4;
+    private static final int TABLE_BITS = 18;
+
+    // weights of the heuristic, per row or column
+    private static final float LOST_PENALTY = 200000f;
+    private static final float MONOTONICITY_POWER = 4f;
+    private static final float MONOTONICITY_WEIGHT = 47f;
+    private static final float SUM_POWER = 3.5f;
+    private static final float SUM_WEIGHT = 11f;
+    private static final float MERGES_WEIGHT = 700f;
+    private static final float EMPTY_WEIGHT = 270f;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // heuristic of every possible row; a board is rated by the sum over its rows and the rows of its transposition
+    private static final float[] ROW_HEURISTIC = new float[65536];
+
+    static {
+        for (int row = 0; row < 65536; row++) ROW_HEURISTIC[row] = rowHeuristic(row);
+    }
+
+    private final ForkJoinPool pool;
+    private final long budgetNanos;
+    // transposition table shared by all searches, indexed by the canonical board (see BitBoard.canonical), so the
+    // 8 rotations and reflections of a position share one entry; entries are overwritten, which bounds its memory
+    // to two longs per entry. keys holds board ^ entry, so a torn pair written by two searches at once is never used.
+    private final long[] keys = new long[1 << TABLE_BITS];
+    private final long[] entries = new long[1 << TABLE_BITS];
+
+    HintEngine(long budgetMillis, int parallelism) {
+        if (budgetMillis <= 0) throw new IllegalArgumentException("The given time budget is invalid.");
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("game-hints-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    // returns the suggested move or null, when the game is over
+    Direction hint(Game game) {
+        if (game.isOver()) return null;
+        Board board = game.getBoard();
+        if (board.size() != BitBoard.SIZE) return mostEmptyTiles(board);
+        return search(board.getWord(0), System.nanoTime() + this.budgetNanos);
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+
+    private Direction search(long board, long deadline) {
+        // rating the moved boards right away gives an answer, however little time the searches below get
+        Direction best = null;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        int legalMoves = 0;
+        for (Direction direction : DIRECTIONS) {
+            long moved = BitBoard.move(board, direction);
+            if (moved == board) continue;
+            legalMoves++;
+            float value = heuristic(moved);
+            if (value > bestValue) {
+                best = direction;
+                bestValue = value;
+            }
+        }
+        if (legalMoves <= 1) return best;
+
+        List<ForkJoinTask<Float>> tasks = new ArrayList<>(Collections.nCopies(DIRECTIONS.length, null));
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            long start = System.nanoTime();
+            int searchDepth = depth;
+            for (Direction direction : DIRECTIONS) {
+                long moved = BitBoard.move(board, direction);
+                tasks.set(direction.ordinal(), moved == board ? null
+                        : this.pool.submit(() -> new Search(deadline).chance(moved, searchDepth, 1f)));
+            }
+
+            Direction depthBest = null;
+            float depthBestValue = Float.NEGATIVE_INFINITY;
+            for (Direction direction : DIRECTIONS) {
+                ForkJoinTask<Float> task = tasks.get(direction.ordinal());
+                if (task == null) continue;
+                float value = await(task, deadline);
+                // out of time: the moves of this depth are not compared with each other
+                if (Float.isNaN(value)) return best;
+                if (value > depthBestValue) {
+                    depthBest = direction;
+                    depthBestValue = value;
+                }
+            }
+            best = depthBest;
+
+            long now = System.nanoTime();
+            if (now + (now - start) * DEPTH_GROWTH > deadline) break;
+        }
+        return best;
+    }
+
+    // the value of a finished search or NaN, when it ran out of time
+    private static float await(ForkJoinTask<Float> task, long deadline) {
+        try {
+            return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            task.cancel(false);
+            return Float.NaN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Float.NaN;
+        }
+    }
+
+    // the move leaving the most empty tiles, the highest score on a tie
+    private static Direction mostEmptyTiles(Board board) {
+        Board moved = new Board(board.size());
+        Direction best = null;
+        int bestEmpty = -1, bestScore = -1;
+        for (Direction direction : DIRECTIONS) {
+            moved.copyFrom(board);
+            int score = moved.move(direction);
+            if (score < 0) continue;
+            int empty = moved.countEmpty();
+            if (empty > bestEmpty || (empty == bestEmpty && score > bestScore)) {
+                best = direction;
+                bestEmpty = empty;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    static float heuristic(long board) {
+        return rowsHeuristic(board) + rowsHeuristic(BitBoard.transpose(board));
+    }
+
+    private static float rowsHeuristic(long board) {
+        return ROW_HEURISTIC[(int) (board & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 16) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 32) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) (board >>> 48)];
+    }
+
+    // rewards empty tiles and equal neighbours, penalises rows that are not monotonic and large tiles in general
+    private static float rowHeuristic(int row) {
+        float sum = 0;
+        int empty = 0, merges = 0;
+        int previous = 0, equal = 0;
+        for (int i = 0; i < BitBoard.SIZE; i++) {
+            int rank = (row >>> (4 * i)) & 0xF;
+            sum += (float) Math.pow(rank, SUM_POWER);
+            if (rank == 0) {
+                empty++;
+            } else {
+                if (previous == rank) {
+                    equal++;
+                } else if (equal > 0) {
+                    merges += 1 + equal;
+                    equal = 0;
+                }
+                previous = rank;
+            }
+        }
+        if (equal > 0) merges += 1 + equal;
+
+        float towardsFirst = 0, towardsLast = 0;
+        for (int i = 1; i < BitBoard.SIZE; i++) {
+            int before = (row >>> (4 * (i - 1))) & 0xF, rank = (row >>> (4 * i)) & 0xF;
+            float difference = (float) (Math.pow(before, MONOTONICITY_POWER) - Math.pow(rank, MONOTONICITY_POWER));
+            if (difference > 0) towardsFirst += difference;
+            else towardsLast -= difference;
+        }
+
+        return LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+                - MONOTONICITY_WEIGHT * Math.min(towardsFirst, towardsLast) - SUM_WEIGHT * sum;
+    }
+
+    // one search of a root move, run by a single pool thread
+    private final class Search {
+
+        private final long deadline;
+        private int nodes;
+        private boolean outOfTime;
+
+        Search(long deadline) {
+            this.deadline = deadline;
+        }
+
+        // expected value of a board right after a move, over the tiles that may spawn, or NaN when out of time
+        float chance(long board, int depth, float probability) {
+            if ((++this.nodes & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - this.deadline > 0) this.outOfTime = true;
+            if (this.outOfTime) return Float.NaN;
+
+            long key = BitBoard.canonical(board);
+            int index = (int) SplitMix64.mix(key) & ((1 << TABLE_BITS) - 1);
+            long entry = HintEngine.this.entries[index];
+            if ((HintEngine.this.keys[index] ^ entry) == key && (int) (entry & 0xFF) >= depth) {
+                return Float.intBitsToFloat((int) (entry >>> 32));
+            }
+
+            int empty = BitBoard.countEmpty(board);
+            if (empty == 0) return heuristic(board);
+            float twoProbability = probability * 0.9f / empty, fourProbability = probability * 0.1f / empty;
+            float sum = 0;
+            for (int shift = 0; shift < 64; shift += 4) {
+                if (((board >>> shift) & 0xF) != 0) continue;
+                sum += 0.9f * max(board | (1L << shift), depth, twoProbability);
+                sum += 0.1f * max(board | (2L << shift), depth, fourProbability);
+            }
+            if (this.outOfTime) return Float.NaN;
+
+            float value = sum / empty;
+            entry = ((long) Float.floatToIntBits(value) << 32) | depth;
+            HintEngine.this.keys[index] = key ^ entry;
+            HintEngine.this.entries[index] = entry;
+            return value;
+        }
+
+        // value of the best move on a board right after a tile spawned, 0 when there is none
+        private float max(long board, int depth, float probability) {
+            if (depth <= 1 || probability < MIN_PROBABILITY) return heuristic(board);
+
+            float best = 0;
+            for (Direction direction : DIRECTIONS) {
+                long moved = BitBoard.move(board, direction);
+                if (moved != board) best = Math.max(best, chance(moved, depth - 1, probability));
+            }
+            return best;
+        }
+    }
+}
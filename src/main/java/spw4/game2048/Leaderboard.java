@@ -0,0 +1,136 @@
+package spw4.game2048;
+
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The best games played on this server, by score and then by largest tile, fed by every move that changes a game (see
+// AbstractGameServlet) and read by LeaderboardServlet. A game is known by its seed, which it keeps in the journal and in
+// its token, and is listed once, with the best score it ever reached; undo does not take that back.
+//
+// Nearly every move scores less than the last game on a full board, so offer mostly reads one volatile field and
+// returns. Only a move above it updates the entries, a skip list bounded to the size of the board, and the index of
+// the listed games, both in O(log K) and with no lock but the one ConcurrentHashMap holds for a single seed. Readers get
+// an immutable snapshot, which is only built again after the board changed.
+final class Leaderboard {
+
+    static final int DEFAULT_SIZE = 10;
+
+    private final int size;
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Long, Entry> bySeed = new ConcurrentHashMap<>();
+    // the number of entries, which ConcurrentSkipListSet.size would count one by one
+    private final AtomicInteger count = new AtomicInteger();
+    // orders games with the same score and tile by the time they got there
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    // the score a game has to beat to get onto the board; it only ever grows, as listed games never lose their score
+    private volatile int threshold = -1;
+    private volatile Snapshot snapshot;
+
+    Leaderboard(int size) {
+        if (size <= 0) throw new IllegalArgumentException("The leaderboard size must be positive.");
+        this.size = size;
+    }
+
+    // lists the game, if it made it onto the board
+    void offer(Game game) {
+        int score = game.getScore();
+        if (score <= this.threshold) return;
+
+        int maxTile = game.getMaxTile();
+        // the moves of one game may be offered by two threads at once, like the same token played twice, so an entry
+        // is only replaced while the index holds the seed
+        this.bySeed.compute(game.getSeed(), (seed, old) -> {
+            if (old != null && (old.score > score || (old.score == score && old.maxTile >= maxTile))) return old;
+            Entry entry = new Entry(seed, score, maxTile, game.getMoveCount(), game.getBoardSize(), this.sequence.incrementAndGet());
+            if (this.entries.add(entry)) this.count.incrementAndGet();
+            if (old != null && this.entries.remove(old)) this.count.decrementAndGet();
+            return entry;
+        });
+
+        while (this.count.get() > this.size) {
+            Entry last = this.entries.pollLast();
+            if (last == null) break;
+            this.count.decrementAndGet();
+            this.bySeed.remove(last.seed, last);
+        }
+        if (this.count.get() >= this.size) {
+            try {
+                int lowest = this.entries.last().score;
+                if (lowest > this.threshold) this.threshold = lowest;
+            } catch (NoSuchElementException e) {
+                // emptied by other threads in between, the next offer sets it
+            }
+        }
+        this.version.incrementAndGet();
+    }
+
+    // the board, best game first; the same instance until the board changes
+    Snapshot snapshot() {
+        Snapshot snapshot = this.snapshot;
+        // read before the entries, so a change while they are copied makes the next call copy them again
+        long version = this.version.get();
+        if (snapshot != null && snapshot.version == version) return snapshot;
+        snapshot = new Snapshot(version, this.entries.stream().limit(this.size).toArray(Entry[]::new));
+        this.snapshot = snapshot;
+        return snapshot;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    static final class Entry implements Comparable<Entry> {
+
+        final long seed;
+        final int score;
+        final int maxTile;
+        final int moveCount;
+        final int boardSize;
+        private final long sequence;
+
+        Entry(long seed, int score, int maxTile, int moveCount, int boardSize, long sequence) {
+            this.seed = seed;
+            this.score = score;
+            this.maxTile = maxTile;
+            this.moveCount = moveCount;
+            this.boardSize = boardSize;
+            this.sequence = sequence;
+        }
+
+        // the best game first
+        @Override
+        public int compareTo(Entry other) {
+            if (this.score != other.score) return Integer.compare(other.score, this.score);
+            if (this.maxTile != other.maxTile) return Integer.compare(other.maxTile, this.maxTile);
+            return Long.compare(this.sequence, other.sequence);
+        }
+    }
+
+    static final class Snapshot {
+
+        final long version;
+        final Entry[] entries;
+        // [{"score":...,"maxTile":...,"moves":...,"size":...},...], without the seeds, which would tell the tiles to come
+        final byte[] json;
+
+        Snapshot(long version, Entry[] entries) {
+            this.version = version;
+            this.entries = entries;
+            StringBuilder json = new StringBuilder(2 + entries.length * 56).append('[');
+            for (int i = 0; i < entries.length; i++) {
+                Entry entry = entries[i];
+                if (i > 0) json.append(',');
+                json.append("{\"score\":").append(entry.score)
+                        .append(",\"maxTile\":").append(entry.maxTile)
+                        .append(",\"moves\":").append(entry.moveCount)
+                        .append(",\"size\":").append(entry.boardSize).append('}');
+            }
+            this.json = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package spw4.game2048;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Serves the leaderboard (see Leaderboard) as JSON, best game first, for the start page to show. The body is built
+// once per change of the board; a client polling an unchanged board is answered with 304 and no body.
+@WebServlet("/api/leaderboard")
+public class LeaderboardServlet extends AbstractGameServlet {
+
+    // tells the boards of two runs of the application apart, whose versions both start at 0
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Leaderboard.Snapshot snapshot = leaderboard.snapshot();
+        String etag = "\"" + EPOCH + "-" + snapshot.version + "\"";
+        response.setContentType(GameApiServlet.JSON_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("ETag", etag);
+        if (StaticAssetFilter.matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentLength(snapshot.json.length);
+        response.getOutputStream().write(snapshot.json);
+    }
+}
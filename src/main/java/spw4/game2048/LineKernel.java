@@ -0,0 +1,48 @@
+package spw4.game2048;
+
+// Merge kernel shared by every board size. A line is a sequence of up to 8 tile exponents packed into an int,
+// one nibble per tile with the first tile (the one the tiles slide towards) in the lowest nibble.
+final class LineKernel {
+
+    static final int MAX_LENGTH = 8;
+    // highest exponent that fits into a nibble (2^15 = 32768); such tiles are never merged any further
+    static final int MAX_EXPONENT = 15;
+
+    private LineKernel() {
+    }
+
+    // slides the line towards its first tile and merges equal neighbours once;
+    // returns the moved line in the low 32 bits and the score gained in the high 32 bits
+    static long slide(int line, int length) {
+        int moved = 0;
+        int score = 0;
+        int currShift = 0;
+        int pending = 0; // exponent waiting for a merge partner
+        for (int shift = 0; shift < 4 * length; shift += 4) {
+            int exponent = (line >>> shift) & 0xF;
+            if (exponent == 0) continue;
+            if (pending == exponent && exponent < MAX_EXPONENT) {
+                moved |= (exponent + 1) << currShift;
+                currShift += 4;
+                score += 1 << (exponent + 1);
+                pending = 0;
+            } else {
+                if (pending != 0) {
+                    moved |= pending << currShift;
+                    currShift += 4;
+                }
+                pending = exponent;
+            }
+        }
+        if (pending != 0) moved |= pending << currShift;
+        return ((long) score << 32) | (moved & 0xFFFF_FFFFL);
+    }
+
+    static int movedLine(long slid) {
+        return (int) slid;
+    }
+
+    static int score(long slid) {
+        return (int) (slid >>> 32);
+    }
+}
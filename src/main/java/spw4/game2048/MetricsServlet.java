@@ -0,0 +1,25 @@
+package spw4.game2048;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Exports the metrics of the servlets (see GameMetrics) for Prometheus to scrape, in its text format version 0.0.4.
+@WebServlet("/metrics")
+public class MetricsServlet extends AbstractGameServlet {
+
+    static final String CONTENT_TYPE = "text/plain;version=0.0.4;charset=UTF-8";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StringBuilder out = new StringBuilder(16384);
+        metrics.write(out, games, watchers);
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
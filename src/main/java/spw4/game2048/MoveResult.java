@@ -0,0 +1,53 @@
+package spw4.game2048;
+
+// What a call of Game.move did: whether any tile moved, the score gained and the tile spawned right after.
+// A move that moves no tile changes nothing at all: no tile spawns and the move is not counted.
+public final class MoveResult {
+
+    static final MoveResult UNCHANGED = new MoveResult(false, 0, -1, -1, 0);
+
+    private final boolean changed;
+    private final int scoreGained;
+    private final int spawnRow;
+    private final int spawnColumn;
+    private final int spawnedTile;
+
+    MoveResult(boolean changed, int scoreGained, int spawnRow, int spawnColumn, int spawnedTile) {
+        this.changed = changed;
+        this.scoreGained = scoreGained;
+        this.spawnRow = spawnRow;
+        this.spawnColumn = spawnColumn;
+        this.spawnedTile = spawnedTile;
+    }
+
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    public int getScoreGained() {
+        return this.scoreGained;
+    }
+
+    // row of the spawned tile or -1, when none spawned
+    public int getSpawnRow() {
+        return this.spawnRow;
+    }
+
+    // column of the spawned tile or -1, when none spawned
+    public int getSpawnColumn() {
+        return this.spawnColumn;
+    }
+
+    // number of the spawned tile (2 or 4) or 0, when none spawned
+    public int getSpawnedTile() {
+        return this.spawnedTile;
+    }
+
+    @Override
+    public String toString() {
+        if (!this.changed) return "unchanged";
+        String result = "+" + this.scoreGained;
+        if (this.spawnedTile == 0) return result;
+        return result + ", " + this.spawnedTile + " at (" + this.spawnRow + ", " + this.spawnColumn + ")";
+    }
+}
@@ -0,0 +1,53 @@
+package spw4.game2048;
+
+// The moves a batch request applied to a game: per move its direction, the score right after it and the tile it
+// spawned. Filled while the game is locked and encoded after it was released; every thread reuses one trace.
+final class MoveTrace {
+
+    private final Direction[] directions;
+    private final int[] scores;
+    // cell index of the spawned tile or -1
+    private final byte[] spawnCells;
+    private final byte[] spawnExponents;
+    private int size;
+
+    MoveTrace(int capacity) {
+        this.directions = new Direction[capacity];
+        this.scores = new int[capacity];
+        this.spawnCells = new byte[capacity];
+        this.spawnExponents = new byte[capacity];
+    }
+
+    void clear() {
+        this.size = 0;
+    }
+
+    // records the move the game has just made
+    void add(Direction direction, Game game) {
+        this.directions[this.size] = direction;
+        this.scores[this.size] = game.getScore();
+        this.spawnCells[this.size] = (byte) game.getLastSpawnCell();
+        this.spawnExponents[this.size] = (byte) game.getLastSpawnExponent();
+        this.size++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    Direction getDirection(int move) {
+        return this.directions[move];
+    }
+
+    int getScore(int move) {
+        return this.scores[move];
+    }
+
+    int getSpawnCell(int move) {
+        return this.spawnCells[move];
+    }
+
+    int getSpawnExponent(int move) {
+        return this.spawnExponents[move];
+    }
+}
@@ -0,0 +1,480 @@
+package spw4.game2048;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Game store that keeps every game in a fixed-size slot of direct (off-heap) memory instead of in a Game object, so
+// idle games cost neither heap nor GC work. A game is only turned into a Game object while a request updates it.
+// Slots are as large as the board of their game needs: 56 bytes up to 4x4, 64, 72 and 80 bytes for larger boards, each
+// size in chunks of its own. A slot number carries its size class in its upper bits.
+//
+// Ids are mapped to slots by an open-addressing hash index of primitive arrays (linear probing, backward-shift
+// deletion), 20 bytes per position at a load of at most one half. Lookups read the index optimistically and only fall
+// back to a read lock when it changed underneath; adding and evicting games take the write lock. Updates lock one of a
+// fixed set of stripes picked by the slot, so updates of one game run one after the other. Freed slots are recycled
+// before new memory is used.
+//
+// Idle, finished and least recently used games are evicted the same way as in GameRegistry.
+final class OffHeapGameStore implements GameStore {
+
+    // slot layout, all numbers in native byte order
+    private static final int ID_MSB = 0;          // long
+    private static final int ID_LSB = 8;          // long
+    private static final int FLAGS = 16;          // byte
+    private static final int BOARD_SIZE = 17;     // byte
+    private static final int LAST_ACCESS = 20;    // int, seconds since the store was created
+    private static final int SCORE = 24;          // int
+    private static final int MOVE_COUNT = 28;     // int
+    private static final int DRAWS = 32;          // int, tiles spawned since the seed; the random state follows from
+                                                  // both, see SplitMix64.draws
+    private static final int SEED = 40;           // long
+    private static final int WORDS = 48;          // 1 to 4 longs of packed tile exponents, see Board
+
+    // one size class per number of words
+    private static final int MAX_WORDS = (Board.MAX_SIZE * Board.MAX_SIZE + 15) / 16;
+    private static final int CLASS_SHIFT = 29;
+    private static final int SLOT_MASK = (1 << CLASS_SHIFT) - 1;
+
+    private static final byte SPAWNING = 1;
+    private static final byte FINISHED = 2;
+
+    private static final int SLOTS_PER_CHUNK_SHIFT = 16;
+    private static final int SLOTS_PER_CHUNK = 1 << SLOTS_PER_CHUNK_SHIFT;
+    private static final int STRIPES = 256;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private static final int SWEEP_STEPS = 4;
+    private static final int LRU_SAMPLES = 8;
+    private static final int MAX_EVICTIONS_PER_SWEEP = 16;
+
+    private final int maxGames;
+    private final long idleTimeoutSeconds;
+    private final boolean removeFinishedGames;
+    private final long createdNanos = System.nanoTime();
+
+    private final StampedLock indexLock = new StampedLock();
+    private volatile Index index = new Index(INITIAL_INDEX_CAPACITY);
+    private final SlotClass[] classes = new SlotClass[MAX_WORDS];
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // guarded by the write lock of indexLock
+    private int size;
+    private int sweepPosition;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    OffHeapGameStore(int maxGames, long idleTimeoutMillis, boolean removeFinishedGames) {
+        if (maxGames <= 0) throw new IllegalArgumentException("The maximum number of games must be positive.");
+        if (idleTimeoutMillis <= 0) throw new IllegalArgumentException("The idle timeout must be positive.");
+        this.maxGames = maxGames;
+        this.idleTimeoutSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(idleTimeoutMillis));
+        this.removeFinishedGames = removeFinishedGames;
+        for (int i = 0; i < STRIPES; i++) this.stripes[i] = new ReentrantLock();
+        for (int c = 0; c < MAX_WORDS; c++) this.classes[c] = new SlotClass(slotBytes(c + 1));
+    }
+
+    // bytes of the slot of a game whose board takes the given number of words
+    static int slotBytes(int wordCount) {
+        return WORDS + 8 * wordCount;
+    }
+
+    @Override
+    public UUID add(Game game) {
+        long stamp = this.indexLock.writeLock();
+        try {
+            UUID id;
+            do {
+                id = UUID.randomUUID();
+            } while (this.index.find(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0);
+
+            insert(id, game);
+            return id;
+        } finally {
+            this.indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void put(UUID id, Game game) {
+        long stamp = this.indexLock.writeLock();
+        try {
+            int slot = this.index.find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot < 0) {
+                insert(id, game);
+                return;
+            }
+            boolean fits = slotClass(slot) == game.getBoard().wordCount() - 1;
+            ReentrantLock stripe = this.stripes[slot & (STRIPES - 1)];
+            stripe.lock();
+            try {
+                if (fits) write(chunk(slot), offset(slot), game);
+                else remove(this.index.position(id.getMostSignificantBits(), id.getLeastSignificantBits()), slot);
+            } finally {
+                stripe.unlock();
+            }
+            // a board of another size moves to a slot of its size
+            if (!fits) insert(id, game);
+        } finally {
+            this.indexLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public <T> T update(UUID id, Function<Game, T> action) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int slot = lookup(msb, lsb);
+        if (slot < 0) {
+            this.misses.increment();
+            return null;
+        }
+
+        ReentrantLock stripe = this.stripes[slot & (STRIPES - 1)];
+        stripe.lock();
+        try {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            // the game may have been evicted and its slot reused between the lookup and the lock
+            if (chunk.getLong(offset + ID_MSB) != msb || chunk.getLong(offset + ID_LSB) != lsb) {
+                this.misses.increment();
+                return null;
+            }
+            int now = now();
+            if (now - chunk.getInt(offset + LAST_ACCESS) > this.idleTimeoutSeconds) {
+                this.misses.increment();
+                return null;
+            }
+
+            Game game = read(chunk, offset);
+            T result = action.apply(game);
+            write(chunk, offset, game);
+            this.hits.increment();
+            return result;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Game> action) {
+        // walks the slots instead of the index, so adding games is never blocked for long
+        for (int c = 0; c < MAX_WORDS; c++) {
+            ByteBuffer[] chunks = this.classes[c].chunks;
+            for (int number = 0; number < chunks.length * SLOTS_PER_CHUNK; number++) {
+                int slot = c << CLASS_SHIFT | number;
+                ReentrantLock stripe = this.stripes[slot & (STRIPES - 1)];
+                stripe.lock();
+                try {
+                    ByteBuffer chunk = chunks[number >>> SLOTS_PER_CHUNK_SHIFT];
+                    int offset = offset(slot);
+                    long msb = chunk.getLong(offset + ID_MSB), lsb = chunk.getLong(offset + ID_LSB);
+                    // free and never used slots have no id
+                    if (msb == 0 && lsb == 0) continue;
+                    action.accept(new UUID(msb, lsb), read(chunk, offset));
+                } finally {
+                    stripe.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = this.indexLock.readLock();
+        try {
+            return this.size;
+        } finally {
+            this.indexLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    // bytes of direct memory currently reserved for slots
+    long getReservedBytes() {
+        long bytes = 0;
+        for (SlotClass slotClass : this.classes) bytes += (long) slotClass.chunks.length * SLOTS_PER_CHUNK * slotClass.slotBytes;
+        return bytes;
+    }
+
+    private int lookup(long msb, long lsb) {
+        long stamp = this.indexLock.tryOptimisticRead();
+        int slot = this.index.find(msb, lsb);
+        if (this.indexLock.validate(stamp)) return slot;
+
+        stamp = this.indexLock.readLock();
+        try {
+            return this.index.find(msb, lsb);
+        } finally {
+            this.indexLock.unlockRead(stamp);
+        }
+    }
+
+    private Game read(ByteBuffer chunk, int offset) {
+        byte flags = chunk.get(offset + FLAGS);
+        long seed = chunk.getLong(offset + SEED);
+        Game game = new Game(chunk.get(offset + BOARD_SIZE), (flags & SPAWNING) != 0, seed);
+        Board board = game.getBoard();
+        for (int w = 0; w < board.wordCount(); w++) board.setWord(w, chunk.getLong(offset + WORDS + 8 * w));
+        game.restore(chunk.getInt(offset + SCORE), chunk.getInt(offset + MOVE_COUNT), seed + chunk.getInt(offset + DRAWS) * SplitMix64.GAMMA);
+        return game;
+    }
+
+    private void write(ByteBuffer chunk, int offset, Game game) {
+        byte flags = 0;
+        if (game.isAutomaticSpawningEnabled()) flags |= SPAWNING;
+        if (game.isOver()) flags |= FINISHED;
+        chunk.put(offset + FLAGS, flags);
+        chunk.put(offset + BOARD_SIZE, (byte) game.getBoardSize());
+        chunk.putInt(offset + LAST_ACCESS, now());
+        chunk.putInt(offset + SCORE, game.getScore());
+        chunk.putInt(offset + MOVE_COUNT, game.getMoveCount());
+        chunk.putInt(offset + DRAWS, (int) SplitMix64.draws(game.getSeed(), game.getRandomState()));
+        chunk.putLong(offset + SEED, game.getSeed());
+        Board board = game.getBoard();
+        for (int w = 0; w < board.wordCount(); w++) chunk.putLong(offset + WORDS + 8 * w, board.getWord(w));
+    }
+
+    // called with the write lock held and an id that is not stored yet
+    private void insert(UUID id, Game game) {
+        int slot = allocateSlot(game.getBoard().wordCount() - 1);
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        // nobody can look the id up yet, but forEach walks the slots themselves
+        ReentrantLock stripe = this.stripes[slot & (STRIPES - 1)];
+        stripe.lock();
+        try {
+            chunk.putLong(offset + ID_MSB, id.getMostSignificantBits());
+            chunk.putLong(offset + ID_LSB, id.getLeastSignificantBits());
+            write(chunk, offset, game);
+        } finally {
+            stripe.unlock();
+        }
+
+        if (2 * (this.size + 1) > this.index.capacity()) this.index = this.index.resize(2 * this.index.capacity());
+        this.index.insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), slot);
+        this.size++;
+
+        sweep(slot);
+    }
+
+    // called with the write lock held
+    private int allocateSlot(int classIndex) {
+        SlotClass slotClass = this.classes[classIndex];
+        if (slotClass.freeSlotCount > 0) return slotClass.freeSlots[--slotClass.freeSlotCount];
+
+        int number = slotClass.nextSlot++;
+        if (number > SLOT_MASK) throw new IllegalStateException("The store has no slots left.");
+        if ((number >>> SLOTS_PER_CHUNK_SHIFT) >= slotClass.chunks.length) {
+            ByteBuffer[] grown = new ByteBuffer[slotClass.chunks.length + 1];
+            System.arraycopy(slotClass.chunks, 0, grown, 0, slotClass.chunks.length);
+            grown[slotClass.chunks.length] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * slotClass.slotBytes).order(ByteOrder.nativeOrder());
+            slotClass.chunks = grown;
+        }
+        return classIndex << CLASS_SHIFT | number;
+    }
+
+    // called with the write lock held; the given slot was just added and is never evicted
+    private void sweep(int addedSlot) {
+        int now = now();
+        for (int step = 0; step < SWEEP_STEPS && this.size > 0; step++) {
+            int position = advanceSweepPosition();
+            int slot = this.index.slot(position);
+            if (slot == addedSlot) continue;
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            boolean idle = now - chunk.getInt(offset + LAST_ACCESS) > this.idleTimeoutSeconds;
+            boolean finished = this.removeFinishedGames && (chunk.get(offset + FLAGS) & FINISHED) != 0;
+            if (idle || finished) evict(position);
+        }
+
+        // while over capacity, evict the least recently used one of a few sampled games
+        for (int evicted = 0; evicted < MAX_EVICTIONS_PER_SWEEP && this.size > this.maxGames; evicted++) {
+            int oldestPosition = -1, oldestAccess = Integer.MAX_VALUE;
+            for (int sample = 0; sample < LRU_SAMPLES; sample++) {
+                int position = advanceSweepPosition();
+                int slot = this.index.slot(position);
+                if (slot == addedSlot) continue;
+                int lastAccess = chunk(slot).getInt(offset(slot) + LAST_ACCESS);
+                if (lastAccess < oldestAccess) {
+                    oldestPosition = position;
+                    oldestAccess = lastAccess;
+                }
+            }
+            if (oldestPosition < 0) break;
+            evict(oldestPosition);
+        }
+    }
+
+    // returns the next occupied position of the index, called with the write lock held and a non-empty index
+    private int advanceSweepPosition() {
+        do {
+            this.sweepPosition = (this.sweepPosition + 1) & (this.index.capacity() - 1);
+        } while (this.index.slot(this.sweepPosition) < 0);
+        return this.sweepPosition;
+    }
+
+    // called with the write lock held
+    private void evict(int position) {
+        int slot = this.index.slot(position);
+        ReentrantLock stripe = this.stripes[slot & (STRIPES - 1)];
+        // a game that is being updated right now is obviously not idle; never wait for it
+        if (!stripe.tryLock()) return;
+        try {
+            remove(position, slot);
+        } finally {
+            stripe.unlock();
+        }
+        this.evictions.increment();
+    }
+
+    // called with the write lock and the stripe of the slot held
+    private void remove(int position, int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        chunk.putLong(offset + ID_MSB, 0);
+        chunk.putLong(offset + ID_LSB, 0);
+        this.index.removeAt(position);
+
+        SlotClass slotClass = this.classes[slotClass(slot)];
+        if (slotClass.freeSlotCount == slotClass.freeSlots.length) {
+            int[] grown = new int[2 * slotClass.freeSlots.length];
+            System.arraycopy(slotClass.freeSlots, 0, grown, 0, slotClass.freeSlotCount);
+            slotClass.freeSlots = grown;
+        }
+        slotClass.freeSlots[slotClass.freeSlotCount++] = slot;
+        this.size--;
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return this.classes[slotClass(slot)].chunks[(slot & SLOT_MASK) >>> SLOTS_PER_CHUNK_SHIFT];
+    }
+
+    private static int offset(int slot) {
+        return (slot & (SLOTS_PER_CHUNK - 1)) * slotBytes(slotClass(slot) + 1);
+    }
+
+    private static int slotClass(int slot) {
+        return slot >>> CLASS_SHIFT;
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.createdNanos);
+    }
+
+    // the slots of one size; chunks grow under the write lock and are read without it, the rest is guarded by it
+    private static final class SlotClass {
+        final int slotBytes;
+        volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        int nextSlot;
+        int[] freeSlots = new int[64];
+        int freeSlotCount;
+
+        SlotClass(int slotBytes) {
+            this.slotBytes = slotBytes;
+        }
+    }
+
+    // open-addressing hash index from id to slot; a slot of -1 marks an empty position
+    private static final class Index {
+        private final long[] msbs;
+        private final long[] lsbs;
+        private final int[] slots;
+        private final int mask;
+
+        Index(int capacity) {
+            this.msbs = new long[capacity];
+            this.lsbs = new long[capacity];
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(this.slots, -1);
+        }
+
+        int capacity() {
+            return this.slots.length;
+        }
+
+        int slot(int position) {
+            return this.slots[position];
+        }
+
+        // returns the slot of the id or -1; may run concurrently to changes, the caller validates the result then
+        int find(long msb, long lsb) {
+            int position = position(msb, lsb);
+            return position < 0 ? -1 : this.slots[position];
+        }
+
+        // returns the position of the id or -1
+        int position(long msb, long lsb) {
+            int position = home(msb, lsb);
+            for (int probes = 0; probes <= this.mask; probes++) {
+                int slot = this.slots[position];
+                if (slot < 0) return -1;
+                if (this.msbs[position] == msb && this.lsbs[position] == lsb) return position;
+                position = (position + 1) & this.mask;
+            }
+            return -1;
+        }
+
+        void insert(long msb, long lsb, int slot) {
+            int position = home(msb, lsb);
+            while (this.slots[position] >= 0) position = (position + 1) & this.mask;
+            this.msbs[position] = msb;
+            this.lsbs[position] = lsb;
+            this.slots[position] = slot;
+        }
+
+        // removes the entry at the position and shifts the following entries of its probe chain back
+        void removeAt(int position) {
+            int gap = position;
+            int next = (gap + 1) & this.mask;
+            while (this.slots[next] >= 0) {
+                int home = home(this.msbs[next], this.lsbs[next]);
+                // the entry may fill the gap, if the gap lies on its probe path from home to next
+                if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+                    this.msbs[gap] = this.msbs[next];
+                    this.lsbs[gap] = this.lsbs[next];
+                    this.slots[gap] = this.slots[next];
+                    gap = next;
+                }
+                next = (next + 1) & this.mask;
+            }
+            this.slots[gap] = -1;
+        }
+
+        Index resize(int capacity) {
+            Index resized = new Index(capacity);
+            for (int position = 0; position < this.slots.length; position++) {
+                if (this.slots[position] >= 0) resized.insert(this.msbs[position], this.lsbs[position], this.slots[position]);
+            }
+            return resized;
+        }
+
+        private int home(long msb, long lsb) {
+            long h = (msb ^ lsb) * 0x9E37_79B9_7F4A_7C15L;
+            return (int) (h >>> 32) & this.mask;
+        }
+    }
+}
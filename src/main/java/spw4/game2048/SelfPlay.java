@@ -0,0 +1,309 @@
+package spw4.game2048;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Plays games without anybody watching, to study how a policy scores. Every game is played until no move is left,
+// also past 2048. Game n of a study is seeded from the seed of the study and n alone, and so are the random choices
+// of its policy, so a study comes to the same statistics on any number of threads. The games are split in halves
+// on a ForkJoinPool until GAMES_PER_TASK are left, so a thread running out of games steals a half nobody started yet.
+//
+//   java -cp target/classes spw4.game2048.SelfPlay --games 10000000 --policy corner [--size 4] [--seed 1] [--threads n]
+public final class SelfPlay {
+
+    static final int GAMES_PER_TASK = 1024;
+    static final long REPORT_INTERVAL_MILLIS = 1000;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    enum Policy {
+        // any move that changes the board
+        random {
+            @Override
+            Direction choose(Moves moves, long random) {
+                return moves.legal(SplitMix64.bounded(random, moves.legalCount));
+            }
+        },
+        // the move scoring most, the one leaving most empty tiles on a tie
+        greedy {
+            @Override
+            Direction choose(Moves moves, long random) {
+                Direction best = null;
+                for (Direction direction : DIRECTIONS) {
+                    int d = direction.ordinal();
+                    if (!moves.legal[d]) continue;
+                    if (best == null || moves.scores[d] > moves.scores[best.ordinal()]
+                            || (moves.scores[d] == moves.scores[best.ordinal()] && moves.empty[d] > moves.empty[best.ordinal()])) {
+                        best = direction;
+                    }
+                }
+                return best;
+            }
+        },
+        // keeps the large tiles in the bottom left corner: down, left or right, up only when nothing else goes
+        corner {
+            private final Direction[] order = {Direction.down, Direction.left, Direction.right, Direction.up};
+
+            @Override
+            Direction choose(Moves moves, long random) {
+                for (Direction direction : this.order) {
+                    if (moves.legal[direction.ordinal()]) return direction;
+                }
+                return null;
+            }
+        };
+
+        // picks one of the legal moves, given a random number to pick it with
+        abstract Direction choose(Moves moves, long random);
+    }
+
+    private final Policy policy;
+    private final int boardSize;
+    private final long seed;
+    private final ForkJoinPool pool;
+    // progress of a running study, read by the reporting thread
+    private final LongAdder played = new LongAdder();
+    private final LongAdder scored = new LongAdder();
+
+    SelfPlay(Policy policy, int boardSize, long seed, int threads) {
+        if (boardSize < Game.MIN_BOARD_SIZE || boardSize > Game.MAX_BOARD_SIZE) throw new IllegalArgumentException("The given board size is invalid.");
+        this.policy = policy;
+        this.boardSize = boardSize;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long games = 1_000_000;
+        Policy policy = Policy.corner;
+        int size = Game.DEFAULT_BOARD_SIZE;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = i + 1 < args.length ? args[i + 1] : "";
+                switch (args[i]) {
+                    case "--games":
+                        games = Long.parseLong(value);
+                        break;
+                    case "--policy":
+                        policy = Policy.valueOf(value);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option '" + args[i] + "'");
+                }
+            }
+            if (games <= 0 || threads <= 0) throw new IllegalArgumentException("games and threads must be positive");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: SelfPlay [--games n] [--policy random|greedy|corner] [--size n] [--seed n] [--threads n]");
+            System.exit(2);
+            return;
+        }
+
+        SelfPlay study = new SelfPlay(policy, size, seed, threads);
+        long start = System.nanoTime();
+        Statistics statistics = study.run(games, System.err);
+        System.out.printf(Locale.ROOT, "policy %s, size %d, seed %d, %d threads%n", policy, size, seed, threads);
+        statistics.print(System.out, System.nanoTime() - start);
+        study.close();
+    }
+
+    // plays the games 0 to games - 1 and returns their statistics; reports the progress every second, unless the
+    // stream is null
+    Statistics run(long games, PrintStream progress) throws InterruptedException {
+        this.played.reset();
+        this.scored.reset();
+        ForkJoinTask<Statistics> study = this.pool.submit(new Games(0, games));
+        long start = System.nanoTime(), lastTime = start, lastPlayed = 0;
+        while (true) {
+            try {
+                return study.get(REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (progress == null) continue;
+                long now = System.nanoTime(), played = this.played.sum();
+                double seconds = (now - lastTime) / 1e9;
+                progress.printf(Locale.ROOT, "%,d of %,d games, %,.0f games/s, mean score %,.1f%n",
+                        played, games, (played - lastPlayed) / seconds, played == 0 ? 0.0 : (double) this.scored.sum() / played);
+                lastTime = now;
+                lastPlayed = played;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A game failed.", e.getCause());
+            }
+        }
+    }
+
+    void close() {
+        this.pool.shutdownNow();
+    }
+
+    // seed of game n, drawn as the n-th number of a SplitMix64 sequence starting at the seed of the study
+    long gameSeed(long n) {
+        return SplitMix64.mix(this.seed + (n + 1) * SplitMix64.GAMMA);
+    }
+
+    private Statistics play(long from, long to) {
+        Statistics statistics = new Statistics();
+        Moves moves = new Moves(this.boardSize);
+        long score = 0;
+        for (long n = from; n < to; n++) {
+            long gameSeed = gameSeed(n);
+            Game game = new Game(this.boardSize, true, gameSeed);
+            game.initialize();
+            // the policy draws from a sequence of its own, so it does not change where tiles spawn
+            long policyState = ~gameSeed;
+            while (game.isMoveAvailable()) {
+                moves.evaluate(game.getBoard());
+                policyState += SplitMix64.GAMMA;
+                game.move(this.policy.choose(moves, SplitMix64.mix(policyState)));
+            }
+            statistics.add(game);
+            score += game.getScore();
+        }
+        this.played.add(to - from);
+        this.scored.add(score);
+        return statistics;
+    }
+
+    private final class Games extends RecursiveTask<Statistics> {
+
+        private final long from;
+        private final long to;
+
+        Games(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Statistics compute() {
+            if (this.to - this.from <= GAMES_PER_TASK) return play(this.from, this.to);
+
+            long middle = (this.from + this.to) >>> 1;
+            Games first = new Games(this.from, middle);
+            first.fork();
+            Statistics statistics = new Games(middle, this.to).compute();
+            statistics.merge(first.join());
+            return statistics;
+        }
+    }
+
+    // what every move would do to a board, worked out on a scratch board
+    static final class Moves {
+
+        final boolean[] legal = new boolean[DIRECTIONS.length];
+        final int[] scores = new int[DIRECTIONS.length];
+        final int[] empty = new int[DIRECTIONS.length];
+        int legalCount;
+        private final Board scratch;
+
+        Moves(int boardSize) {
+            this.scratch = new Board(boardSize);
+        }
+
+        void evaluate(Board board) {
+            this.legalCount = 0;
+            for (Direction direction : DIRECTIONS) {
+                int d = direction.ordinal();
+                this.scratch.copyFrom(board);
+                int score = this.scratch.move(direction);
+                this.legal[d] = score >= 0;
+                this.scores[d] = Math.max(score, 0);
+                this.empty[d] = this.scratch.countEmpty();
+                if (this.legal[d]) this.legalCount++;
+            }
+        }
+
+        // the n-th legal move
+        Direction legal(int n) {
+            for (Direction direction : DIRECTIONS) {
+                if (this.legal[direction.ordinal()] && n-- == 0) return direction;
+            }
+            return null;
+        }
+    }
+
+    // counts of finished games; scores and move counts are counted in power-of-two buckets: 0, 1, 2-3, 4-7, ...
+    static final class Statistics {
+
+        static final int BUCKETS = 33;
+
+        final long[] scores = new long[BUCKETS];
+        final long[] moves = new long[BUCKETS];
+        // by exponent of the largest tile
+        final long[] maxTiles = new long[LineKernel.MAX_EXPONENT + 1];
+        long games;
+        long scoreSum;
+        long moveSum;
+        int maxScore;
+
+        void add(Game game) {
+            int score = game.getScore(), moveCount = game.getMoveCount();
+            this.scores[bucket(score)]++;
+            this.moves[bucket(moveCount)]++;
+            this.maxTiles[Integer.numberOfTrailingZeros(game.getMaxTile())]++;
+            this.games++;
+            this.scoreSum += score;
+            this.moveSum += moveCount;
+            this.maxScore = Math.max(this.maxScore, score);
+        }
+
+        void merge(Statistics other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.scores[i] += other.scores[i];
+                this.moves[i] += other.moves[i];
+            }
+            for (int i = 0; i < this.maxTiles.length; i++) this.maxTiles[i] += other.maxTiles[i];
+            this.games += other.games;
+            this.scoreSum += other.scoreSum;
+            this.moveSum += other.moveSum;
+            this.maxScore = Math.max(this.maxScore, other.maxScore);
+        }
+
+        void print(PrintStream out, long nanos) {
+            double seconds = nanos / 1e9;
+            out.printf(Locale.ROOT, "%,d games in %.1f s, %,.0f games/s, %,.0f moves/s%n",
+                    this.games, seconds, this.games / seconds, this.moveSum / seconds);
+            out.printf(Locale.ROOT, "score: mean %,.1f, max %,d%n", (double) this.scoreSum / this.games, this.maxScore);
+            printBuckets(out, this.scores);
+            out.println("largest tile:");
+            for (int exponent = 0; exponent < this.maxTiles.length; exponent++) {
+                if (this.maxTiles[exponent] > 0) printLine(out, Integer.toString(1 << exponent), this.maxTiles[exponent]);
+            }
+            out.printf(Locale.ROOT, "moves per game: mean %,.1f%n", (double) this.moveSum / this.games);
+            printBuckets(out, this.moves);
+        }
+
+        private void printBuckets(PrintStream out, long[] buckets) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (buckets[bucket] == 0) continue;
+                long low = bucket == 0 ? 0 : 1L << (bucket - 1), high = bucket == 0 ? 0 : (1L << bucket) - 1;
+                printLine(out, low == high ? Long.toString(low) : low + "-" + high, buckets[bucket]);
+            }
+        }
+
+        private void printLine(PrintStream out, String label, long count) {
+            out.printf(Locale.ROOT, "  %13s %,14d %6.2f%%%n", label, count, 100.0 * count / this.games);
+        }
+
+        static int bucket(int value) {
+            return 32 - Integer.numberOfLeadingZeros(value);
+        }
+    }
+}
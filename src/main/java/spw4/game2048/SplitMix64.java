@@ -0,0 +1,46 @@
+package spw4.game2048;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// SplitMix64 generator as used by java.util.SplittableRandom, reduced to static functions over a state kept by the
+// caller, so drawing a number allocates nothing. The state only ever advances by GAMMA, so the state after n draws
+// is seed + n * GAMMA.
+final class SplitMix64 {
+
+    static final long GAMMA = 0x9E37_79B9_7F4A_7C15L;
+
+    // multiplicative inverse of GAMMA modulo 2^64, by Newton's iteration (every step doubles the correct low bits)
+    private static final long GAMMA_INVERSE;
+
+    static {
+        long inverse = GAMMA;
+        for (int i = 0; i < 5; i++) inverse *= 2 - GAMMA * inverse;
+        GAMMA_INVERSE = inverse;
+    }
+
+    private SplitMix64() {
+    }
+
+    // number of draws that led from the seed to the state
+    static long draws(long seed, long state) {
+        return (state - seed) * GAMMA_INVERSE;
+    }
+
+    // returns the number drawn from the given state, the caller advances the state by GAMMA first
+    static long mix(long state) {
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // maps the upper 32 bits of a drawn number onto 0 to bound - 1 without division
+    static int bounded(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+
+    // a fresh seed for a game nobody asked to reproduce; thread-local, so games created in parallel do not contend
+    static long newSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+}
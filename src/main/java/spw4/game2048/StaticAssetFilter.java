@@ -0,0 +1,140 @@
+package spw4.game2048;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// Serves the static assets listed by StaticAssets in front of the default servlet of the container:
+//  * the gzip variant, when the client accepts it, with Vary: Accept-Encoding
+//  * a strong ETag per variant, so a revalidation is answered with 304 and no body
+//  * far-future, immutable caching under the hashed path, which the game page links to, so repeat visits do not
+//    even revalidate; the plain path is revalidated every time, as before
+//  * the file is sent by the container itself (sendfile) where it supports that, from memory otherwise
+// Everything else, like unknown assets, goes on to the default servlet.
+@WebFilter(urlPatterns = {"/css/*", "/js/*", "/icons/*"}, asyncSupported = true)
+public class StaticAssetFilter implements Filter {
+
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    static final String REVALIDATE = "no-cache";
+
+    // request attributes of the sendfile support of Tomcat
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private ServletContext context;
+    private StaticAssets assets;
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        this.context = config.getServletContext();
+        try {
+            this.assets = StaticAssets.get(this.context);
+        } catch (IOException e) {
+            throw new ServletException("Could not read the static asset manifest: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/")) path = path.substring(1);
+        StaticAssets.Asset asset = this.assets.findHashed(path);
+        boolean immutable = asset != null;
+        if (asset == null) asset = this.assets.find(path);
+        if (asset == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean gzip = asset.gzip && acceptsGzip(request.getHeader("Accept-Encoding"));
+        String etag = "\"" + asset.hash + (gzip ? "-gzip\"" : "\"");
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", immutable ? IMMUTABLE : REVALIDATE);
+        if (asset.gzip) response.setHeader("Vary", "Accept-Encoding");
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String contentType = this.context.getMimeType(asset.path);
+        if (contentType != null) response.setContentType(contentType);
+        if (gzip) response.setHeader("Content-Encoding", "gzip");
+
+        String realPath = Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) ? this.context.getRealPath(asset.resource(gzip)) : null;
+        if (realPath != null) {
+            long length = new File(realPath).length();
+            response.setContentLength((int) length);
+            if ("HEAD".equals(method)) return;
+            request.setAttribute(SENDFILE_FILENAME, realPath);
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+
+        byte[] content = asset.content(gzip);
+        response.setContentLength(content.length);
+        if (!"HEAD".equals(method)) response.getOutputStream().write(content);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    // returns true, when the Accept-Encoding header names gzip or * without q=0 and does not refuse gzip explicitly
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) accepted = quality(parameter.substring(2)) > 0;
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) return accepted;
+            if (name.equals("*")) wildcard = accepted;
+        }
+        return wildcard;
+    }
+
+    // returns true, when the If-None-Match header lists the ETag or is *
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // If-None-Match compares weakly
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*")) return true;
+        }
+        return false;
+    }
+
+    static float quality(String value) {
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
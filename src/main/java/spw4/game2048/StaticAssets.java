@@ -0,0 +1,121 @@
+package spw4.game2048;
+
+import javax.servlet.ServletContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// The static assets of the web application as listed by the manifest AssetCompressor writes at build time: their
+// content hashes, which go into their URLs and ETags, and whether a gzip variant exists. Without a manifest, i.e. when
+// the application runs straight from the sources, no asset is known and every URL stays as it is.
+//
+// An asset is reachable under its path (css/bootstrap.min.css) and under its hashed path (css/bootstrap.min.<hash>.css),
+// which changes with its content and so can be cached forever.
+final class StaticAssets {
+
+    static final String ATTRIBUTE = "spw4.game2048.assets";
+
+    private final Map<String, Asset> byPath = new HashMap<>();
+    private final Map<String, Asset> byHashedPath = new HashMap<>();
+
+    StaticAssets(ServletContext context) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = context.getResourceAsStream("/" + AssetCompressor.MANIFEST)) {
+            if (in == null) return;
+            manifest.load(in);
+        }
+        for (String path : manifest.stringPropertyNames()) {
+            boolean gzip = context.getResource("/" + path + AssetCompressor.GZIP_SUFFIX) != null;
+            Asset asset = new Asset(context, path, manifest.getProperty(path).trim(), gzip);
+            this.byPath.put(path, asset);
+            this.byHashedPath.put(asset.hashedPath, asset);
+        }
+    }
+
+    // the assets of the web application, loaded by the first filter or servlet that asks for them
+    static StaticAssets get(ServletContext context) throws IOException {
+        synchronized (context) {
+            StaticAssets assets = (StaticAssets) context.getAttribute(ATTRIBUTE);
+            if (assets == null) {
+                assets = new StaticAssets(context);
+                context.setAttribute(ATTRIBUTE, assets);
+            }
+            return assets;
+        }
+    }
+
+    // the hashed path of the asset at the given path (relative to the web application, without a leading slash) or
+    // the path itself, when there is no such asset
+    String url(String path) {
+        Asset asset = this.byPath.get(path);
+        return asset == null ? path : asset.hashedPath;
+    }
+
+    // the asset at the given path or null
+    Asset find(String path) {
+        return this.byPath.get(path);
+    }
+
+    // the asset at the given hashed path or null
+    Asset findHashed(String hashedPath) {
+        return this.byHashedPath.get(hashedPath);
+    }
+
+    int size() {
+        return this.byPath.size();
+    }
+
+    // css/bootstrap.min.css -> css/bootstrap.min.<hash>.css
+    static String hashedPath(String path, String hash) {
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf('/')) return path + "." + hash;
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    static final class Asset {
+
+        final String path;
+        final String hash;
+        final String hashedPath;
+        final boolean gzip;
+        private final ServletContext context;
+        // read on first use, unless the container sends the file itself
+        private volatile byte[] identity;
+        private volatile byte[] gzipped;
+
+        Asset(ServletContext context, String path, String hash, boolean gzip) {
+            this.context = context;
+            this.path = path;
+            this.hash = hash;
+            this.hashedPath = hashedPath(path, hash);
+            this.gzip = gzip;
+        }
+
+        // path of the variant relative to the web application, with a leading slash
+        String resource(boolean gzipped) {
+            return "/" + this.path + (gzipped ? AssetCompressor.GZIP_SUFFIX : "");
+        }
+
+        // the content of the variant; two threads reading it at once may both read the file, which is harmless
+        byte[] content(boolean gzipped) {
+            byte[] content = gzipped ? this.gzipped : this.identity;
+            if (content != null) return content;
+
+            try (InputStream in = this.context.getResourceAsStream(resource(gzipped))) {
+                if (in == null) throw new IOException("Missing static asset " + resource(gzipped));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                in.transferTo(bytes);
+                content = bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (gzipped) this.gzipped = content;
+            else this.identity = content;
+            return content;
+        }
+    }
+}
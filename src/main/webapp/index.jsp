@@ -16,5 +16,25 @@
     <div class="col-4"></div>
 </div>
 
+<h4 class="mt-5 text-center">Best games</h4>
+<div class="row">
+    <div class="col-4"></div>
+    <div class="col">
+        <table class="table table-sm text-center">
+            <thead><tr><th>#</th><th>Score</th><th>Largest tile</th><th>Moves</th><th>Board</th></tr></thead>
+            <tbody id="leaderboard"><tr><td colspan="5">No games yet</td></tr></tbody>
+        </table>
+    </div>
+    <div class="col-4"></div>
+</div>
+
+<script>
+    fetch("api/leaderboard").then(response => response.json()).then(games => {
+        if (games.length === 0) return;
+        const rows = games.map((game, i) => "<tr><td>" + (i + 1) + "</td><td>" + game.score + "</td><td>" + game.maxTile
+            + "</td><td>" + game.moves + "</td><td>" + game.size + "x" + game.size + "</td></tr>");
+        document.getElementById("leaderboard").innerHTML = rows.join("");
+    });
+</script>
 </body>
 </html>
\ No newline at end of file
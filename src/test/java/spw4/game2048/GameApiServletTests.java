@@ -0,0 +1,206 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class GameApiServletTests {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\":\"([0-9a-f-]{36})\"");
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private GameApiServlet servlet;
+    private HttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        servlet = new GameApiServlet();
+        servlet.init(mockConfig());
+    }
+
+    @DisplayName("GameApiServlet.doGet when a new game is requested returns its state as JSON")
+    @Test
+    void doGetWhenNewGameIsRequestedReturnsJson() throws Exception {
+        String json = new String(get(null, "new", "3", null), StandardCharsets.UTF_8);
+
+        assertThat(json).matches("\\{\"id\":\"[0-9a-f-]{36}\",\"size\":3,\"score\":0,\"moves\":0,\"over\":false,\"won\":false,"
+                + "\"tiles\":\\[[0-9]+(,[0-9]+){8}]}");
+        verify(response).setContentType(GameApiServlet.JSON_TYPE);
+        verify(response).setContentLength(json.length());
+        Game game = servlet.games.<Game>update(id(json), g -> g);
+        assertThat(game.getBoardSize()).isEqualTo(3);
+        assertThat(game.getEmptyTileCount()).isEqualTo(7);
+    }
+
+    @DisplayName("GameApiServlet.doGet when a move is requested applies it to the game")
+    @Test
+    void doGetWhenMoveIsRequestedAppliesIt() throws Exception {
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+        int legalMoves = servlet.games.<Game>update(id, g -> g).legalMoves();
+        Direction direction = Direction.values()[Integer.numberOfTrailingZeros(legalMoves)];
+
+        String json = new String(get(id.toString(), direction.name(), null, null), StandardCharsets.UTF_8);
+
+        assertThat(json).contains("\"moves\":1");
+        assertThat(servlet.games.<Game>update(id, g -> g).getMoveCount()).isEqualTo(1);
+    }
+
+    @DisplayName("GameApiServlet.doGet when the client accepts binary returns the fixed-size binary form")
+    @Test
+    void doGetWhenBinaryIsAcceptedReturnsBinary() throws Exception {
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+        Game game = servlet.games.<Game>update(id, g -> g);
+
+        ByteBuffer binary = ByteBuffer.wrap(get(id.toString(), null, null, GameApiServlet.BINARY_TYPE));
+
+        assertThat(binary.remaining()).isEqualTo(GameStateEncoder.binaryLength(4)).isEqualTo(34);
+        assertThat(new UUID(binary.getLong(0), binary.getLong(8))).isEqualTo(id);
+        assertThat(binary.getInt(16)).isEqualTo(game.getScore());
+        assertThat(binary.get(24)).isEqualTo((byte) 4);
+        assertThat(binary.get(25)).isEqualTo(GameStateEncoder.MOVE_AVAILABLE);
+        for (int cell = 0; cell < 16; cell++) {
+            int exponent = (binary.get(GameStateEncoder.BINARY_HEADER_BYTES + cell / 2) >>> (cell % 2 == 0 ? 4 : 0)) & 0xF;
+            assertThat(exponent == 0 ? 0 : 1 << exponent).isEqualTo(game.getTileAt(cell / 4, cell % 4));
+        }
+        verify(response).setContentType(GameApiServlet.BINARY_TYPE);
+    }
+
+    @DisplayName("GameApiServlet.doGet when the client refuses binary with q=0 or prefers JSON returns JSON")
+    @Test
+    void doGetWhenBinaryIsRefusedReturnsJson() throws Exception {
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+
+        String json = new String(get(id.toString(), null, null, "application/json, application/octet-stream;q=0"), StandardCharsets.UTF_8);
+
+        assertThat(json).startsWith("{\"id\":\"" + id + "\"");
+        verify(response).setContentType(GameApiServlet.JSON_TYPE);
+        assertThat(GameApiServlet.acceptsBinary("application/octet-stream; q=0.0")).isFalse();
+        assertThat(GameApiServlet.acceptsBinary("application/json;q=0.9, application/octet-stream;q=0.5")).isFalse();
+        assertThat(GameApiServlet.acceptsBinary("application/json;q=0.5, Application/Octet-Stream")).isTrue();
+        assertThat(GameApiServlet.acceptsBinary("*/*")).isFalse();
+    }
+
+    @DisplayName("GameApiServlet.doGet when a batch of moves is requested applies them in order and traces them")
+    @Test
+    void doGetWhenBatchIsRequestedAppliesAndTracesMoves() throws Exception {
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+        Game expected = new Game(4, true, servlet.games.<Game>update(id, g -> g).getSeed());
+        expected.initialize();
+        StringBuilder trace = new StringBuilder();
+        for (Direction direction : new Direction[] {Direction.up, Direction.up, Direction.left, Direction.down}) {
+            // depending on the spawned tiles the second up may move nothing, which the trace leaves out
+            if (!expected.move(direction).isChanged()) continue;
+            trace.append(trace.length() == 0 ? "" : ",").append("\\[\"").append(direction.name().substring(0, 1).toUpperCase()).append("\",\\d+(,\\d+,[24])?]");
+        }
+
+        String json = new String(get(id.toString(), null, null, null, "UuLd", "true"), StandardCharsets.UTF_8);
+
+        assertThat(json).contains("\"moves\":" + expected.getMoveCount(), "\"score\":" + expected.getScore());
+        assertThat(json).containsPattern("\"trace\":\\[" + trace + "]}$");
+        assertThat(servlet.games.<Game>update(id, g -> g).toString()).isEqualTo(expected.toString());
+    }
+
+    @DisplayName("GameApiServlet.doGet when the game is over stops a batch of moves early")
+    @Test
+    void doGetWhenGameIsOverStopsBatch() throws Exception {
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+        servlet.games.update(id, g -> { g.setTileAt(0, 0, 2048); return null; });
+
+        ByteBuffer binary = ByteBuffer.wrap(get(id.toString(), null, null, GameApiServlet.BINARY_TYPE, "LRUD", "true"));
+
+        assertThat(binary.getInt(20)).isEqualTo(0);
+        assertThat(binary.get(25) & GameStateEncoder.WON).isNotZero();
+        // an empty trace: only the number of moves follows the state
+        assertThat(binary.remaining()).isEqualTo(GameStateEncoder.binaryLength(4) + 2);
+        assertThat(binary.getShort(GameStateEncoder.binaryLength(4))).isEqualTo((short) 0);
+    }
+
+    @DisplayName("GameApiServlet.doGet when the request is invalid or the game unknown responds with an error status")
+    @Test
+    void doGetWhenRequestIsInvalidRespondsWithErrorStatus() throws Exception {
+        assertThat(new String(get(UUID.randomUUID().toString(), "up", null, null), StandardCharsets.UTF_8))
+                .isEqualTo("{\"error\":\"game expired\"}");
+        verify(response).setStatus(HttpServletResponse.SC_GONE);
+
+        get("not-a-game", "up", null, null);
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+        get(null, "new", "42", null);
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+        get(id.toString(), null, null, null, "UXD", null);
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        assertThat(servlet.games.<Game>update(id, g -> g).getMoveCount()).isEqualTo(0);
+    }
+
+    @DisplayName("GameApiServlet shares its games with GameServlet")
+    @Test
+    void sharesGamesWithGameServlet() throws Exception {
+        GameServlet pages = new GameServlet();
+        pages.init(mockConfig());
+
+        UUID id = id(new String(get(null, "new", null, null), StandardCharsets.UTF_8));
+
+        assertThat(pages.games).isSameAs(servlet.games);
+        assertThat(pages.games.<Game>update(id, g -> g)).isNotNull();
+    }
+
+    private ServletConfig mockConfig() {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getInitParameter(anyString())).thenReturn(null);
+        when(context.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).setAttribute(anyString(), any());
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        return config;
+    }
+
+    private byte[] get(String id, String action, String size, String accept) throws Exception {
+        return get(id, action, size, accept, null, null);
+    }
+
+    private byte[] get(String id, String action, String size, String accept, String moves, String trace) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter("moves")).thenReturn(moves);
+        when(request.getParameter("trace")).thenReturn(trace);
+        when(request.getParameter("id")).thenReturn(id);
+        when(request.getParameter("action")).thenReturn(action);
+        when(request.getParameter("size")).thenReturn(size);
+        when(request.getHeader("Accept")).thenReturn(accept);
+        response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        servlet.doGet(request, response);
+
+        return body.toByteArray();
+    }
+
+    private static UUID id(String json) {
+        Matcher matcher = ID_PATTERN.matcher(json);
+        assertThat(matcher.find()).isTrue();
+        return UUID.fromString(matcher.group(1));
+    }
+}
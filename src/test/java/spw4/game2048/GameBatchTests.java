@@ -0,0 +1,87 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameBatchTests {
+
+    @DisplayName("GameBatch.move keeps every game identical to a Game making the same moves")
+    @Test
+    void moveMatchesGame() {
+        int size = 64;
+        GameBatch batch = new GameBatch(size);
+        Game[] games = new Game[size];
+        for (int i = 0; i < size; i++) {
+            games[i] = new Game(4, true, 1000 + i);
+            games[i].initialize();
+            batch.initialize(i, 1000 + i);
+        }
+
+        byte[] directions = new byte[size];
+        long random = 7;
+        Game stored = new Game(4, false);
+        for (int step = 0; step < 2000 && batch.getOverCount() < size; step++) {
+            for (int i = 0; i < size; i++) {
+                random += SplitMix64.GAMMA;
+                directions[i] = (byte) SplitMix64.bounded(SplitMix64.mix(random), 4);
+                if (!games[i].isOver()) games[i].move(Direction.values()[directions[i]]);
+            }
+            batch.move(directions);
+
+            for (int i = 0; i < size; i++) {
+                batch.store(i, stored);
+                assertThat(stored.toString()).isEqualTo(games[i].toString());
+                assertThat(batch.getMoveCount(i)).isEqualTo(games[i].getMoveCount());
+                assertThat(batch.isOver(i)).isEqualTo(games[i].isOver());
+                assertThat(stored.getRandomState()).isEqualTo(games[i].getRandomState());
+            }
+        }
+        assertThat(batch.getOverCount()).isEqualTo(size);
+    }
+
+    @DisplayName("GameBatch.load takes over a game, which then goes on exactly like the game itself")
+    @Test
+    void loadContinuesGame() {
+        Game game = new Game(4, true, 5);
+        game.initialize();
+        for (int i = 0; i < 10; i++) game.move(Direction.values()[i % 4]);
+        GameBatch batch = new GameBatch(1);
+
+        batch.load(0, game);
+        batch.move(new byte[] {(byte) Direction.left.ordinal()});
+        game.move(Direction.left);
+
+        assertThat(batch.getBoard(0)).isEqualTo(game.getBoard().getWord(0));
+        assertThat(batch.getScore(0)).isEqualTo(game.getScore());
+    }
+
+    @DisplayName("GameBatch leaves games that are won alone")
+    @Test
+    void moveLeavesWonGamesAlone() {
+        Game game = new Game(4, false);
+        game.setTileAt(3, 3, 2048);
+        GameBatch batch = new GameBatch(1);
+
+        batch.load(0, game);
+        batch.move(new byte[] {(byte) Direction.left.ordinal()});
+
+        assertThat(batch.isOver(0)).isTrue();
+        assertThat(batch.getOverCount()).isEqualTo(1);
+        assertThat(batch.getBoard(0)).isEqualTo(game.getBoard().getWord(0));
+        assertThat(batch.getMoveCount(0)).isZero();
+    }
+
+    @DisplayName("BitBoard.hasWinningTile is true exactly for boards with a tile of 2048 or more")
+    @Test
+    void hasWinningTileFindsLargeTiles() {
+        for (int exponent = 0; exponent <= LineKernel.MAX_EXPONENT; exponent++) {
+            for (int cell = 0; cell < 16; cell++) {
+                // cells 4 and 10 hold a 512 and a 1024, the largest tiles that are no win
+                if (cell == 4 || cell == 10) continue;
+                long board = 0x0000_0A00_0009_0000L | ((long) exponent << (4 * cell));
+                assertThat(BitBoard.hasWinningTile(board)).isEqualTo(Math.max(exponent, 10) >= 11);
+            }
+        }
+    }
+}
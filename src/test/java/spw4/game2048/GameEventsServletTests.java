@@ -0,0 +1,225 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class GameEventsServletTests {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private GameEventsServlet servlet;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private AsyncContext asyncContext;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        servlet = new GameEventsServlet();
+        servlet.init(mockConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        servlet.destroy();
+    }
+
+    @DisplayName("GameEventsServlet.doGet sends the full state first and then the changed tiles of every move")
+    @Test
+    void doGetSendsStateAndThenDeltas() throws Exception {
+        Game game = AbstractGameServlet.newGame("3");
+        UUID id = servlet.add(game);
+
+        ByteArrayOutputStream events = watch(id.toString());
+        awaitContaining(events, "event: state\n");
+        servlet.move(id, legalMove(game).name(), null);
+        // changes not sent yet are merged into one delta, so the batch waits for the first one
+        awaitContaining(events, "id: 1\n");
+        // the two moves of the batch are picked on a copy, which spawns the same tiles
+        Game probe = new Game(3, true, game.getSeed());
+        probe.copyFrom(game);
+        Direction second = legalMove(probe);
+        probe.move(second);
+        servlet.moves(id, second.name().substring(0, 1) + legalMove(probe).name().substring(0, 1), null);
+        String text = awaitContaining(events, "id: 3\n");
+
+        verify(response).setContentType("text/event-stream;charset=UTF-8");
+        verify(request).startAsync();
+        assertThat(text).startsWith("event: state\nid: 0\ndata: {\"id\":\"" + id + "\",\"size\":3,");
+        // one delta for the single move and one for the whole batch
+        assertThat(text).containsOnlyOnce("event: delta\nid: 1\ndata: {\"score\":");
+        assertThat(text).containsOnlyOnce("event: delta\nid: 3\ndata: {\"score\":");
+        assertThat(text).doesNotContain("id: 2\n");
+        assertThat(servlet.watchers.watcherCount()).isEqualTo(1);
+    }
+
+    @DisplayName("GameEventsServlet.doGet when a watcher does not read keeps sending to the others and drops it")
+    @Test
+    void doGetWhenWatcherStallsDropsItOnly() throws Exception {
+        servlet.watchers.close();
+        servlet.watchers = new GameWatchers(1024, 2);
+        Game game = AbstractGameServlet.newGame("8");
+        UUID id = servlet.add(game);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // the first write of this watcher blocks until the end of the test, like a client with a full TCP window
+            watch(id.toString(), new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            });
+            AsyncContext stalled = asyncContext;
+            ByteArrayOutputStream events = watch(id.toString());
+            awaitContaining(events, "event: state\n");
+
+            for (int move = 1; move <= 40; move++) {
+                servlet.move(id, legalMove(game).name(), null);
+                awaitContaining(events, "id: " + move + "\n");
+            }
+
+            verify(stalled, timeout(5000)).complete();
+            verify(asyncContext, never()).complete();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @DisplayName("GameEventsServlet.doGet when more watchers stall than there are writer threads drops them all on their limit")
+    @Test
+    void doGetWhenManyWatchersStallKeepsWriterThreadsBounded() throws Exception {
+        servlet.watchers.close();
+        servlet.watchers = new GameWatchers(1024, 2);
+        Game game = AbstractGameServlet.newGame("8");
+        UUID id = servlet.add(game);
+        CountDownLatch release = new CountDownLatch(1);
+        long writersBefore = writerThreads();
+        try {
+            List<AsyncContext> stalled = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                watch(id.toString(), new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                });
+                stalled.add(asyncContext);
+            }
+
+            // changes sent apart, so they are not merged into a few deltas
+            for (int move = 1; move <= 40 && !game.isOver(); move++) {
+                servlet.move(id, legalMove(game).name(), null);
+                Thread.sleep(10);
+            }
+
+            for (AsyncContext context : stalled) verify(context, timeout(5000)).complete();
+            assertThat(writerThreads() - writersBefore).isLessThanOrEqualTo(2);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @DisplayName("GameEventsServlet.doGet when the game is unknown responds with 410 and ends the stream")
+    @Test
+    void doGetWhenGameIsUnknownRespondsGone() throws Exception {
+        watch(UUID.randomUUID().toString());
+
+        verify(response).setStatus(HttpServletResponse.SC_GONE);
+        verify(asyncContext).complete();
+        assertThat(servlet.watchers.watcherCount()).isZero();
+    }
+
+    @DisplayName("GameEventsServlet.doGet when the id is invalid responds with 400")
+    @Test
+    void doGetWhenIdIsInvalidRespondsBadRequest() throws Exception {
+        watch("not-a-game");
+
+        verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+        verify(request, never()).startAsync();
+    }
+
+    private static Direction legalMove(Game game) {
+        return Direction.values()[Integer.numberOfTrailingZeros(game.legalMoves())];
+    }
+
+    private ServletConfig mockConfig() {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getInitParameter(anyString())).thenReturn(null);
+        when(context.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).setAttribute(anyString(), any());
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        return config;
+    }
+
+    private ByteArrayOutputStream watch(String id) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        watch(id, new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                synchronized (body) {
+                    body.write(b);
+                }
+            }
+        });
+        return body;
+    }
+
+    private void watch(String id, ServletOutputStream out) throws Exception {
+        request = mock(HttpServletRequest.class);
+        when(request.getParameter("id")).thenReturn(id);
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(out);
+        asyncContext = mock(AsyncContext.class);
+        when(asyncContext.getResponse()).thenReturn(response);
+        when(request.startAsync()).thenReturn(asyncContext);
+
+        servlet.doGet(request, response);
+    }
+
+    private static long writerThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("game-watcher-writer")).count();
+    }
+
+    // waits for the writers to have written the text; returns the events written completely so far
+    private static String awaitContaining(ByteArrayOutputStream body, String text) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (true) {
+            String written;
+            synchronized (body) {
+                written = new String(body.toByteArray(), StandardCharsets.UTF_8);
+            }
+            // the writers write byte by byte here, an event is complete with its blank line
+            int end = written.lastIndexOf("\n\n");
+            written = end < 0 ? "" : written.substring(0, end + 2);
+            if (written.contains(text) || System.nanoTime() > deadline) {
+                assertThat(written).contains(text);
+                return written;
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameJournalTests {
+
+    private static final int SEGMENT_BYTES = 1 << 16;
+    private static final long ONE_HOUR = 3_600_000;
+    private static final int HISTORY_DEPTH = 8;
+
+    @TempDir
+    Path directory;
+
+    @DisplayName("GameJournal.open after new games and moves have been journaled restores every game")
+    @Test
+    void openWhenJournalHasGamesRestoresThem() throws IOException {
+        Map<UUID, Game> played = new HashMap<>();
+        try (GameJournal journal = open(new GameRegistry())) {
+            for (int size : new int[] {3, 4, 8}) {
+                Game game = new Game(size);
+                game.initialize();
+                UUID id = UUID.randomUUID();
+                journal.created(id, game);
+                play(journal, id, game, 30);
+                played.put(id, game);
+            }
+        }
+
+        GameRegistry restored = new GameRegistry();
+        open(restored).close();
+
+        assertRestored(restored, played);
+    }
+
+    @DisplayName("GameJournal.open after a snapshot followed by more moves applies every move exactly once")
+    @Test
+    void openWhenSnapshotIsFollowedByMovesAppliesEveryMoveOnce() throws IOException {
+        GameRegistry store = new GameRegistry();
+        Map<UUID, Game> played = new HashMap<>();
+        try (GameJournal journal = open(store)) {
+            Game game = new Game();
+            game.initialize();
+            UUID id = store.add(game);
+            journal.created(id, game);
+            play(journal, id, game, 20);
+
+            journal.snapshot();
+            play(journal, id, game, 20);
+            played.put(id, game);
+        }
+
+        GameRegistry restored = new GameRegistry();
+        open(restored).close();
+
+        assertRestored(restored, played);
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(this.directory, "snapshot-*")) {
+            assertThat(snapshots).hasSize(1);
+        }
+    }
+
+    @DisplayName("GameJournal.open after undo and redo before and after a snapshot restores the game with its history")
+    @Test
+    void openWhenUndoneRestoresGameWithHistory() throws IOException {
+        GameRegistry store = new GameRegistry();
+        Game game = new Game(4, true, 7);
+        UUID id;
+        try (GameJournal journal = open(store)) {
+            game.initialize();
+            game.enableHistory(HISTORY_DEPTH);
+            id = store.add(game);
+            journal.created(id, game);
+            play(journal, id, game, 20);
+            undo(journal, id, game, 3);
+            game.redo();
+            journal.undone(id, game, true);
+
+            journal.snapshot();
+            undo(journal, id, game, 2);
+            play(journal, id, game, 5);
+            undo(journal, id, game, 1);
+        }
+
+        GameRegistry restored = new GameRegistry();
+        open(restored).close();
+
+        Game recovered = restored.get(id);
+        while (true) {
+            assertThat(recovered.toString()).isEqualTo(game.toString());
+            assertThat(recovered.getMoveCount()).isEqualTo(game.getMoveCount());
+            assertThat(recovered.canRedo()).isEqualTo(game.canRedo());
+            if (!game.undo()) break;
+            assertThat(recovered.undo()).isTrue();
+        }
+        assertThat(recovered.canUndo()).isFalse();
+    }
+
+    @DisplayName("GameJournal.open when the last record is torn ignores it and keeps the ones before")
+    @Test
+    void openWhenLastRecordIsTornIgnoresIt() throws IOException {
+        Game game = new Game(false);
+        game.setTileAt(0, 0, 2);
+        game.setTileAt(0, 1, 2);
+        UUID id = UUID.randomUUID();
+        try (GameJournal journal = open(new GameRegistry())) {
+            journal.created(id, game);
+            game.move(Direction.left);
+            journal.moved(id, game, Direction.left);
+            game.move(Direction.down);
+            journal.moved(id, game, Direction.down);
+        }
+
+        // a crash in the middle of writing the last record leaves part of it behind
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(this.directory, "journal-*");
+             FileChannel channel = FileChannel.open(segments.iterator().next(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 2L * GameJournal.RECORD_BYTES + 3);
+        }
+
+        GameRegistry restored = new GameRegistry();
+        open(restored).close();
+
+        Game recovered = restored.get(id);
+        assertThat(recovered.getMoveCount()).isEqualTo(1);
+        assertThat(recovered.getTileAt(0, 0)).isEqualTo(4);
+        assertThat(recovered.getTileAt(3, 0)).isEqualTo(0);
+    }
+
+    private GameJournal open(GameStore store) throws IOException {
+        // no background snapshots, the tests take them themselves
+        return GameJournal.open(this.directory, store, SEGMENT_BYTES, 10, ONE_HOUR, HISTORY_DEPTH);
+    }
+
+    private static void play(GameJournal journal, UUID id, Game game, int moves) {
+        Direction[] directions = Direction.values();
+        Random random = new Random(42);
+        for (int i = 0; i < moves && !game.isOver(); i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            game.move(direction);
+            journal.moved(id, game, direction);
+        }
+    }
+
+    private static void undo(GameJournal journal, UUID id, Game game, int undos) {
+        for (int i = 0; i < undos; i++) {
+            assertThat(game.undo()).isTrue();
+            journal.undone(id, game, false);
+        }
+    }
+
+    private static void assertRestored(GameRegistry restored, Map<UUID, Game> played) {
+        assertThat(restored.size()).isEqualTo(played.size());
+        for (Map.Entry<UUID, Game> entry : played.entrySet()) {
+            Game game = restored.get(entry.getKey());
+            assertThat(game).isNotNull();
+            assertThat(game.toString()).isEqualTo(entry.getValue().toString());
+            assertThat(game.getScore()).isEqualTo(entry.getValue().getScore());
+            assertThat(game.getMoveCount()).isEqualTo(entry.getValue().getMoveCount());
+
+            // the restored game goes on spawning the same tiles as the one that was played
+            game.move(Direction.up);
+            entry.getValue().move(Direction.up);
+            assertThat(game.toString()).isEqualTo(entry.getValue().toString());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameMetricsTests {
+
+    @DisplayName("GameMetrics.record counts every latency into the first bucket it fits and exports cumulative buckets")
+    @Test
+    void recordCountsLatencyIntoCumulativeBuckets() {
+        GameMetrics metrics = new GameMetrics();
+        long now = System.nanoTime();
+        // far enough in the past for the +Inf bucket, and right now for the first one
+        metrics.record(GameMetrics.Operation.UP, now - 2_000_000_000L);
+        metrics.record(GameMetrics.Operation.UP, System.nanoTime());
+
+        String text = write(metrics, new GameRegistry());
+
+        assertThat(metrics.getCount(GameMetrics.Operation.UP)).isEqualTo(2);
+        assertThat(text).contains("game2048_request_duration_seconds_bucket{action=\"up\",le=\"0.000010\"} 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_bucket{action=\"up\",le=\"1.000000\"} 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_bucket{action=\"up\",le=\"+Inf\"} 2\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"up\"} 2\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"down\"} 0\n");
+        assertThat(text).containsOnlyOnce("# TYPE game2048_request_duration_seconds histogram\n");
+    }
+
+    @DisplayName("GameMetrics.moved counts a game as won or lost only by the moves that finished it")
+    @Test
+    void movedCountsFinishedGamesOnce() {
+        GameMetrics metrics = new GameMetrics();
+        Game won = new Game(false);
+        won.setTileAt(0, 0, 1024);
+        won.setTileAt(0, 1, 1024);
+        won.move(Direction.left);
+        Game lost = new Game(3, false);
+        for (int cell = 0; cell < 9; cell++) lost.setTileAt(cell / 3, cell % 3, cell % 2 == 0 ? 2 : 4);
+
+        metrics.moved(won, 1, false);
+        metrics.moved(lost, 3, false);
+        metrics.moved(lost, 0, true);
+        metrics.moved(new Game(), 2, false);
+
+        String text = write(metrics, new GameRegistry());
+        assertThat(text).contains("game2048_moves_total 6\n");
+        assertThat(text).contains("game2048_games_finished_total 2\n");
+        assertThat(text).contains("game2048_games_won_total 1\n");
+        assertThat(text).contains("game2048_games_lost_total 1\n");
+    }
+
+    @DisplayName("GameMetrics.write exports the games of the store as a gauge")
+    @Test
+    void writeExportsLiveGames() {
+        GameMetrics metrics = new GameMetrics();
+        GameRegistry games = new GameRegistry();
+        games.add(new Game());
+        games.add(new Game());
+        metrics.created();
+
+        String text = write(metrics, games);
+
+        assertThat(text).contains("# TYPE game2048_games_live gauge\ngame2048_games_live 2\n");
+        assertThat(text).contains("# TYPE game2048_games_created_total counter\ngame2048_games_created_total 1\n");
+    }
+
+    private static String write(GameMetrics metrics, GameStore games) {
+        StringBuilder out = new StringBuilder();
+        try (GameWatchers watchers = new GameWatchers()) {
+            metrics.write(out, games, watchers);
+        }
+        return out.toString();
+    }
+}
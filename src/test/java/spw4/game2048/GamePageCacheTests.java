@@ -0,0 +1,43 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GamePageCacheTests {
+
+    @DisplayName("GamePageCache.get returns the page put for the game in the same revision only")
+    @Test
+    void getReturnsPageOfSameRevisionOnly() {
+        GamePageCache cache = new GamePageCache(4);
+        UUID id = UUID.randomUUID();
+        byte[] bytes = {1, 2, 3};
+
+        GamePageCache.Page page = cache.put(id, 7, bytes);
+
+        assertThat(cache.get(id, 7)).isSameAs(page);
+        assertThat(page.bytes).isSameAs(bytes);
+        assertThat(page.etag).isEqualTo(GamePageCache.etag(id, 7)).contains(id.toString());
+        assertThat(cache.get(id, 8)).isNull();
+        assertThat(cache.get(UUID.randomUUID(), 7)).isNull();
+    }
+
+    @DisplayName("GamePageCache holds a page per slot, rounded up to a power of two, and replaces the page a slot held")
+    @Test
+    void putReplacesPageOfSameSlot() {
+        GamePageCache cache = new GamePageCache(3);
+        assertThat(cache.size()).isEqualTo(4);
+        // ids whose halves are equal except for the last one pick the same slots as their index
+        UUID first = new UUID(0, 1), second = new UUID(0, 5);
+
+        cache.put(first, 0, new byte[0]);
+        cache.put(second, 0, new byte[0]);
+
+        assertThat(cache.get(first, 0)).isNull();
+        assertThat(cache.get(second, 0)).isNotNull();
+        assertThrows(IllegalArgumentException.class, () -> new GamePageCache(0));
+    }
+}
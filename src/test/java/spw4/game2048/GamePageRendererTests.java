@@ -0,0 +1,140 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GamePageRendererTests {
+
+    private final GamePageRenderer renderer = new GamePageRenderer();
+
+    @DisplayName("GamePageRenderer.length returns the number of bytes render writes")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 8})
+    void lengthReturnsRenderedBytes(int size) throws IOException {
+        Game game = new Game(size, true, 7);
+        game.initialize();
+        assertThat(render(UUID.randomUUID(), game).length).isEqualTo(renderer.length(game));
+
+        // a won game, with a banner and the largest tile
+        game.setTileAt(0, 0, 2048);
+        game.setTileAt(size - 1, size - 1, Game.MAX_TILE);
+        assertThat(render(UUID.randomUUID(), game).length).isEqualTo(renderer.length(game));
+    }
+
+    @DisplayName("GamePageRenderer.render writes score, banner, links and tiles of the game")
+    @Test
+    void renderWritesGame() throws IOException {
+        UUID id = UUID.randomUUID();
+        Game game = new Game(3, false);
+        game.setTileAt(0, 0, 2); game.setTileAt(0, 1, 4); game.setTileAt(0, 2, 8);
+        game.setTileAt(1, 0, 4); game.setTileAt(1, 1, 8); game.setTileAt(1, 2, 2);
+        game.setTileAt(2, 0, 2); game.setTileAt(2, 1, 4); game.setTileAt(2, 2, 1024);
+        game.restore(1234567, 0, 0);
+
+        String page = new String(render(id, game), StandardCharsets.UTF_8);
+
+        assertThat(page).startsWith("<!DOCTYPE html>\n").endsWith("</html>\n");
+        assertThat(page).contains("<h5>Score: 1234567</h5>", "YOU LOSE");
+        for (String action : new String[] {"&action=up", "&action=left", "&action=right", "&action=down", "\">Refresh"}) {
+            assertThat(page).contains("href=\"Game?id=" + id + action);
+        }
+        assertThat(page).containsSubsequence(
+                "<div class=\"col mt-1 ml-1 bg-light\">2</div>", "<div class=\"col mt-1 ml-1 bg-light\">4</div>",
+                "<div class=\"col mt-1 ml-1 mr-1 bg-light\">8</div>", "<div class=\"col mt-1 ml-1 bg-light\">4</div>",
+                "<div class=\"col mt-1 ml-1 mb-1 bg-light\">2</div>", "<div class=\"col mt-1 ml-1 mb-1 mr-1 bg-light\">1024</div>");
+    }
+
+    @DisplayName("GamePageRenderer.render shows undo and redo only when games keep a history")
+    @Test
+    void renderShowsUndoWithHistoryOnly() throws IOException {
+        UUID id = UUID.randomUUID();
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        GamePageRenderer withoutHistory = new GamePageRenderer(path -> path, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        withoutHistory.render(id, game, out);
+        String page = new String(render(id, game), StandardCharsets.UTF_8);
+
+        assertThat(page).contains("href=\"Game?id=" + id + "&action=undo\">Undo", "href=\"Game?id=" + id + "&action=redo\">Redo");
+        assertThat(out.toString(StandardCharsets.UTF_8)).doesNotContain("action=undo", "action=redo").endsWith("</html>\n");
+        assertThat(out.size()).isEqualTo(withoutHistory.length(game));
+    }
+
+    @DisplayName("GamePageRenderer.render subscribes the page of a stored game to its events, but not a token page")
+    @Test
+    void renderSubscribesStoredGameToEvents() throws IOException {
+        UUID id = UUID.randomUUID();
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        String token = new GameTokens("0123456789abcdef".getBytes(StandardCharsets.UTF_8)).encode(game);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        renderer.render(token, game, out);
+        String page = new String(render(id, game), StandardCharsets.UTF_8);
+
+        assertThat(page).contains("var game = \"id=" + id + "\";", "new EventSource(\"api/game/events?\" + game)",
+                "location.replace(\"Game?\" + game)").endsWith("</script>\n</body>\n</html>\n");
+        assertThat(out.toString(StandardCharsets.UTF_8)).doesNotContain("EventSource", "<script>");
+    }
+
+    @DisplayName("GamePageRenderer with asset URLs links the page to them")
+    @Test
+    void renderWithAssetUrlsLinksThem() throws IOException {
+        GamePageRenderer hashed = new GamePageRenderer(path -> StaticAssets.hashedPath(path, "0123456789abcdef"), true);
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        hashed.render(UUID.randomUUID(), game, out);
+
+        assertThat(out.size()).isEqualTo(hashed.length(game));
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains(
+                "href=\"css/bootstrap.min.0123456789abcdef.css\"",
+                "href=\"icons/bootstrap-icons.0123456789abcdef.css\"",
+                "src=\"js/bootstrap.min.0123456789abcdef.js\"");
+    }
+
+    @DisplayName("GamePageRenderer.render with a token links the page to the token instead of an id")
+    @Test
+    void renderWithTokenLinksToken() throws IOException {
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        String token = new GameTokens("0123456789abcdef".getBytes(StandardCharsets.UTF_8)).encode(game);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        renderer.render(token, game, out);
+
+        String page = out.toString(StandardCharsets.UTF_8);
+        assertThat(out.size()).isEqualTo(renderer.length(game, token));
+        assertThat(page).contains("href=\"Game?token=" + token + "&action=up\"").doesNotContain("id=");
+    }
+
+    @DisplayName("GamePageRenderer.render with a token shows no undo and redo, which token games do not have")
+    @Test
+    void renderWithTokenHasNoUndo() throws IOException {
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        String token = new GameTokens("0123456789abcdef".getBytes(StandardCharsets.UTF_8)).encode(game);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        renderer.render(token, game, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).doesNotContain("action=undo", "action=redo", ">Undo<", ">Redo<");
+        assertThat(out.size()).isEqualTo(renderer.length(game, token));
+    }
+
+    private byte[] render(UUID id, Game game) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.render(id, game, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,148 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameRecordVerifierTests {
+
+    private static final long FLUSH_MILLIS = 10;
+
+    @TempDir
+    Path directory;
+
+    @DisplayName("GameRecordVerifier.verify of the games GameRecordWriter exported replays every one without a mismatch")
+    @Test
+    void verifyWhenGamesWereWrittenFindsNoMismatch() throws IOException, InterruptedException {
+        // small files, so the games are spread across several of them
+        try (GameRecordWriter writer = GameRecordWriter.open(this.directory, 4096, FLUSH_MILLIS)) {
+            for (int seed = 0; seed < 200; seed++) assertThat(writer.finished(play(seed))).isTrue();
+        }
+
+        GameRecordVerifier.Result result = verify();
+
+        assertThat(result.games).isEqualTo(200);
+        assertThat(result.mismatches).isZero();
+        assertThat(result.problems).isZero();
+        assertThat(result.isValid()).isTrue();
+    }
+
+    @DisplayName("GameRecordWriter.finished exports a game once, also when it is taken back with undo and ends again")
+    @Test
+    void finishedWhenGameEndsAgainExportsItOnce() throws IOException, InterruptedException {
+        Game game = new Game(3, true, 1);
+        game.initialize();
+        game.enableHistory(4);
+        game.enableMoveLog();
+        Direction[] directions = Direction.values();
+        Random random = new Random(1);
+        try (GameRecordWriter writer = GameRecordWriter.open(this.directory, 1 << 20, FLUSH_MILLIS)) {
+            while (!game.isOver()) game.move(directions[random.nextInt(directions.length)]);
+            assertThat(writer.finished(game)).isTrue();
+
+            assertThat(game.undo()).isTrue();
+            while (!game.isOver()) game.move(directions[random.nextInt(directions.length)]);
+            assertThat(writer.finished(game)).isFalse();
+        }
+
+        assertThat(verify().games).isEqualTo(1);
+    }
+
+    @DisplayName("GameRecordWriter when a write fails logs it once and drops every record from then on")
+    @Test
+    void writerWhenWriteFailsLogsAndDropsRecords() throws IOException, InterruptedException {
+        Path removed = this.directory.resolve("removed");
+        CountDownLatch logged = new CountDownLatch(1);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        try (GameRecordWriter writer = GameRecordWriter.open(removed, 1 << 20, FLUSH_MILLIS, (message, e) -> {
+            failures.add(e);
+            logged.countDown();
+        })) {
+            Files.delete(removed);
+            assertThat(writer.finished(play(1))).isTrue();
+            assertThat(logged.await(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(writer.finished(play(2))).isFalse();
+            assertThat(writer.isFailed()).isTrue();
+            assertThat(writer.getWritten()).isZero();
+            assertThat(writer.getDropped()).isEqualTo(2);
+        }
+        assertThat(failures).hasSize(1).first().isInstanceOf(IOException.class);
+    }
+
+    @DisplayName("GameRecordVerifier.verify of a game whose score or board was changed reports that game only")
+    @Test
+    void verifyWhenRecordWasChangedReportsIt() throws IOException, InterruptedException {
+        try (GameRecordWriter writer = GameRecordWriter.open(this.directory, 1 << 20, FLUSH_MILLIS)) {
+            writer.finished(play(1));
+            Game game = play(2);
+            byte[] record = new byte[GameRecords.length(game)];
+            GameRecords.encode(game, ByteBuffer.wrap(record));
+            // the score follows seed and board size
+            ByteBuffer.wrap(record).putInt(9, game.getScore() + 4);
+            writer.offer(record);
+            writer.finished(play(3));
+        }
+
+        GameRecordVerifier.Result result = verify();
+
+        assertThat(result.games).isEqualTo(3);
+        assertThat(result.mismatches).isEqualTo(1);
+        assertThat(result.reported).containsExactly("game 2: score " + play(2).getScore() + " instead of " + (play(2).getScore() + 4));
+    }
+
+    @DisplayName("GameRecordVerifier.verify of a file whose last block is cut short reports it and replays the blocks before")
+    @Test
+    void verifyWhenBlockIsCutShortReportsIt() throws IOException, InterruptedException {
+        try (GameRecordWriter writer = GameRecordWriter.open(this.directory, 1 << 20, FLUSH_MILLIS)) {
+            writer.finished(play(1));
+            writer.finished(play(2));
+        }
+        Path file = files().get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+
+        GameRecordVerifier.Result result = verify();
+
+        assertThat(result.problems).isEqualTo(1);
+        assertThat(result.isValid()).isFalse();
+    }
+
+    // plays a 3x3 game, which is soon over, with its moves logged
+    private static Game play(long seed) {
+        Game game = new Game(3, true, seed);
+        game.initialize();
+        game.enableMoveLog();
+        Direction[] directions = Direction.values();
+        Random random = new Random(seed);
+        while (!game.isOver()) game.move(directions[random.nextInt(directions.length)]);
+        return game;
+    }
+
+    private GameRecordVerifier.Result verify() throws IOException, InterruptedException {
+        GameRecordVerifier verifier = new GameRecordVerifier(2);
+        try {
+            return verifier.verify(files());
+        } finally {
+            verifier.close();
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + GameRecords.FILE_SUFFIX)) {
+            List<Path> list = new ArrayList<>();
+            files.forEach(list::add);
+            return list.stream().sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameRegistryTests {
+
+    @DisplayName("GameRegistry.get when the game has been added returns it and counts a hit")
+    @Test
+    void getWhenGameIsPresentReturnsGame() {
+        GameRegistry registry = new GameRegistry();
+        Game game = new Game();
+
+        UUID id = registry.add(game);
+
+        assertThat(registry.get(id)).isSameAs(game);
+        assertThat(registry.get(UUID.randomUUID())).isNull();
+        assertThat(registry.getHits()).isEqualTo(1);
+        assertThat(registry.getMisses()).isEqualTo(1);
+    }
+
+    @DisplayName("GameRegistry.add when the registry is full evicts games that were not used recently")
+    @Test
+    void addWhenFullEvictsLeastRecentlyUsedGames() {
+        GameRegistry registry = new GameRegistry(3, 60_000, false);
+        UUID kept = registry.add(new Game());
+        registry.add(new Game());
+        registry.add(new Game());
+
+        for (int i = 0; i < 10; i++) {
+            registry.get(kept);
+            registry.add(new Game());
+        }
+
+        assertThat(registry.size()).isLessThanOrEqualTo(3);
+        assertThat(registry.get(kept)).isNotNull();
+        assertThat(registry.getEvictions()).isEqualTo(10);
+    }
+
+    @DisplayName("GameRegistry.get when the game has been idle for too long returns null")
+    @Test
+    void getWhenGameIsIdleReturnsNull() throws InterruptedException {
+        GameRegistry registry = new GameRegistry(10, 1, false);
+        UUID id = registry.add(new Game());
+
+        Thread.sleep(20);
+
+        assertThat(registry.get(id)).isNull();
+        assertThat(registry.size()).isEqualTo(0);
+        assertThat(registry.getEvictions()).isEqualTo(1);
+    }
+
+    @DisplayName("GameRegistry.add when finished games are removed early evicts them")
+    @Test
+    void addWhenFinishedGamesAreRemovedEvictsThem() {
+        GameRegistry registry = new GameRegistry(10, 60_000, true);
+        Game won = new Game(false);
+        UUID finished = registry.add(won);
+        UUID running = registry.add(new Game());
+
+        registry.update(finished, game -> { game.setTileAt(0, 0, 2048); return game; });
+        registry.add(new Game());
+
+        assertThat(registry.get(finished)).isNull();
+        assertThat(registry.get(running)).isNotNull();
+    }
+}
@@ -0,0 +1,336 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class GameServletTests {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("Game\\?id=([0-9a-f-]{36})");
+
+    private GameServlet servlet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        servlet = new GameServlet();
+        servlet.init(mockConfig(new HashMap<>()));
+    }
+
+    @DisplayName("GameServlet.doGet when many threads create games at once keeps every game")
+    @Test
+    void doGetWhenCreatingGamesConcurrentlyKeepsEveryGame() throws Exception {
+        int threads = 8, gamesPerThread = 200;
+
+        List<Future<List<UUID>>> results = runConcurrently(threads, () -> {
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < gamesPerThread; i++) ids.add(newGame(null));
+            return ids;
+        });
+
+        Set<UUID> ids = new HashSet<>();
+        for (Future<List<UUID>> result : results) ids.addAll(result.get());
+        assertThat(ids).hasSize(threads * gamesPerThread);
+        assertThat(servlet.games.size()).isEqualTo(threads * gamesPerThread);
+        for (UUID id : ids) assertThat(servlet.games.<Game>update(id, g -> g)).isNotNull();
+    }
+
+    @DisplayName("GameServlet.doGet when many threads move the same game at once applies every move")
+    @Test
+    void doGetWhenMovingOneGameConcurrentlyAppliesEveryMove() throws Exception {
+        // an 8x8 board cannot be lost or won within the few hundred moves made here
+        UUID id = newGame("8");
+        int threads = 8, movesPerThread = 50;
+        String[] actions = {"up", "left", "down", "right"};
+
+        List<Future<int[]>> results = runConcurrently(threads, () -> {
+            int lastScore = 0, pages = 0;
+            for (int i = 0; i < movesPerThread; i++) {
+                String html = get(id.toString(), actions[i % actions.length], null);
+                // a move that moved no tile is answered without a page and not counted
+                if (html.isEmpty()) continue;
+                pages++;
+                int score = parseScore(html);
+                // every page shows the state right after its own move, so the score never goes back
+                assertThat(score).isGreaterThanOrEqualTo(lastScore);
+                lastScore = score;
+            }
+            return new int[] {lastScore, pages};
+        });
+
+        int maxScore = 0, pages = 0;
+        for (Future<int[]> result : results) {
+            maxScore = Math.max(maxScore, result.get()[0]);
+            pages += result.get()[1];
+        }
+        Game game = servlet.games.<Game>update(id, g -> g);
+        assertThat(game.isOver()).isFalse();
+        assertThat(game.getMoveCount()).isEqualTo(pages).isGreaterThan(0);
+        assertThat(game.getScore()).isEqualTo(maxScore);
+        assertThat(servlet.games.size()).isEqualTo(1);
+    }
+
+    @DisplayName("GameServlet.doGet when a batch of moves is requested applies all of them and shows the page once")
+    @Test
+    void doGetWhenBatchIsRequestedAppliesAllMoves() throws Exception {
+        UUID id = newGame("8");
+        Game expected = new Game(8, true, servlet.games.<Game>update(id, g -> g).getSeed());
+        expected.initialize();
+        for (char move : "ULDRULDR".toCharArray()) expected.move(GameServlet.toDirection(move));
+
+        String html = get(id.toString(), null, null, "ULDRULDR");
+
+        assertThat(html).contains("Score: ");
+        assertThat(servlet.games.<Game>update(id, g -> g).toString()).isEqualTo(expected.toString());
+        assertThat(servlet.games.<Game>update(id, g -> g).getMoveCount()).isEqualTo(expected.getMoveCount());
+    }
+
+    @DisplayName("GameServlet.doGet when a move moves no tile answers without a page and leaves the game as it is")
+    @Test
+    void doGetWhenMoveChangesNothingAnswersNoContent() throws Exception {
+        UUID id = newGame(null);
+        String board = servlet.games.update(id, g -> {
+            for (int r = 0; r < 4; r++) {
+                for (int c = 0; c < 4; c++) g.setTileAt(r, c, r == 0 && c == 0 ? 2 : 0);
+            }
+            return g.toString();
+        });
+
+        assertThat(get(id.toString(), "up", null)).isEmpty();
+        assertThat(get(id.toString(), null, null, "LULU")).isEmpty();
+
+        Game game = servlet.games.<Game>update(id, g -> g);
+        assertThat(game.toString()).isEqualTo(board);
+        assertThat(game.getMoveCount()).isZero();
+        assertThat(get(id.toString(), "right", null)).contains("Score: ");
+    }
+
+    @DisplayName("GameServlet.doGet when undo and redo are requested takes the last moves back and makes them again")
+    @Test
+    void doGetWhenUndoIsRequestedTakesMovesBack() throws Exception {
+        // deep enough to take back the whole batch
+        servlet.init(mockConfig(Map.of(GameServlet.HISTORY_DEPTH_PARAM, "16")));
+        UUID id = newGame("8");
+        String start = get(id.toString(), null, null);
+        String moved = get(id.toString(), null, null, "ULDRULDR");
+        int moveCount = servlet.games.<Game>update(id, g -> g).getMoveCount();
+
+        for (int i = 1; i < moveCount; i++) assertThat(get(id.toString(), "undo", null)).isNotEqualTo(moved);
+        assertThat(get(id.toString(), "undo", null)).isEqualTo(start);
+        assertThat(servlet.games.<Game>update(id, g -> g).getMoveCount()).isZero();
+        for (int i = 1; i < moveCount; i++) get(id.toString(), "redo", null);
+        assertThat(get(id.toString(), "redo", null)).isEqualTo(moved);
+    }
+
+    @DisplayName("GameServlet.doGet when a hint is requested names a move without making it")
+    @Test
+    void doGetWhenHintIsRequestedNamesMove() throws Exception {
+        UUID id = newGame(null);
+
+        String hint = get(id.toString(), "hint", null);
+
+        assertThat(hint).matches("(up|down|left|right)\n");
+        assertThat(servlet.games.<Game>update(id, g -> g).getMoveCount()).isEqualTo(0);
+    }
+
+    @DisplayName("GameServlet.doGet when the game has been evicted responds with 'game expired'")
+    @Test
+    void doGetWhenGameIsEvictedRespondsGameExpired() throws Exception {
+        servlet.init(mockConfig(Map.of(GameServlet.MAX_GAMES_PARAM, "1")));
+        UUID first = newGame(null);
+        UUID second = newGame(null);
+        // the first game was never looked at again, so it is the one that has to go
+        assertThat(servlet.games.size()).isEqualTo(1);
+
+        String html = get(first.toString(), "up", null);
+
+        assertThat(html).isEqualToIgnoringNewLines("game expired");
+        assertThat(get(second.toString(), null, null)).contains("Score: ");
+        assertThat(servlet.games.getEvictions()).isEqualTo(1);
+    }
+
+    @DisplayName("GameServlet.doGet in token mode plays games in their links without storing them and rejects forged tokens")
+    @Test
+    void doGetWithTokensPlaysGamesWithoutStore() throws Exception {
+        servlet.init(mockConfig(Map.of(GameServlet.TOKEN_SECRET_PARAM, "0123456789abcdef")));
+        Pattern tokenPattern = Pattern.compile("Game\\?token=([A-Za-z0-9_-]+)&action=up");
+
+        Matcher matcher = tokenPattern.matcher(get(null, "new", "8"));
+        assertThat(matcher.find()).isTrue();
+        String token = matcher.group(1);
+        Game expected = servlet.tokens.decode(token);
+        for (char move : "ULDRULDR".toCharArray()) expected.move(GameServlet.toDirection(move));
+
+        String html = getWithToken(token, null, "ULDRULDR");
+        matcher = tokenPattern.matcher(html);
+        assertThat(matcher.find()).isTrue();
+
+        Game game = servlet.tokens.decode(matcher.group(1));
+        assertThat(game.toString()).isEqualTo(expected.toString());
+        assertThat(game.getMoveCount()).isEqualTo(expected.getMoveCount());
+        assertThat(html).contains("Score: " + expected.getScore());
+        assertThat(servlet.games.size()).isZero();
+        assertThat(getWithToken(token.substring(0, token.length() - 2) + "AA", "up", null)).isEqualToIgnoringNewLines("invalid token");
+    }
+
+    @DisplayName("GameServlet.doGet when the page is requested again answers 304 until the game changes and serves the cached page")
+    @Test
+    void doGetWhenPageIsUnchangedAnswersNotModified() throws Exception {
+        UUID id = newGame(null);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        String page = get(id.toString(), null, null, null, null, response);
+        String etag = etag(response);
+
+        response = mock(HttpServletResponse.class);
+        assertThat(get(id.toString(), null, null, null, etag, response)).isEmpty();
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertThat(get(id.toString(), null, null)).isEqualTo(page);
+
+        String moved = get(id.toString(), null, null, "ULDR");
+        response = mock(HttpServletResponse.class);
+        assertThat(get(id.toString(), null, null, null, etag, response)).isEqualTo(moved).isNotEqualTo(page);
+        verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertThat(etag(response)).isNotEqualTo(etag);
+        Game game = servlet.games.<Game>update(id, g -> g);
+        assertThat(moved.getBytes(StandardCharsets.UTF_8)).isEqualTo(servlet.renderer.render(id, game));
+    }
+
+    @DisplayName("GameServlet.init when the game store configuration is invalid throws ServletException")
+    @Test
+    void initWhenConfigurationIsInvalidThrowsException() {
+        ServletConfig config = mockConfig(Map.of(GameServlet.MAX_GAMES_PARAM, "none"));
+
+        assertThrows(ServletException.class, () -> { new GameServlet().init(config); });
+    }
+
+    @DisplayName("GameServlet.init with the offheap store keeps no history and rejects a history depth")
+    @Test
+    void initWithOffHeapStoreRejectsHistory() throws Exception {
+        ServletConfig config = mockConfig(Map.of(GameServlet.STORE_PARAM, "offheap", GameServlet.HISTORY_DEPTH_PARAM, "4"));
+
+        ServletException e = assertThrows(ServletException.class, () -> { new GameServlet().init(config); });
+
+        assertThat(e.getMessage()).contains("offheap", GameServlet.HISTORY_DEPTH_PARAM);
+        servlet.init(mockConfig(Map.of(GameServlet.STORE_PARAM, "offheap")));
+        assertThat(servlet.historyDepth).isZero();
+        assertThat(get(null, "new", null)).contains("action=up").doesNotContain("action=undo");
+    }
+
+    @DisplayName("GameServlet.init with the offheap store rejects exporting the games, which it keeps no move log for")
+    @Test
+    void initWithOffHeapStoreRejectsRecords(@TempDir Path directory) {
+        ServletConfig config = mockConfig(Map.of(GameServlet.STORE_PARAM, "offheap", GameServlet.RECORD_DIRECTORY_PARAM, directory.toString()));
+
+        ServletException e = assertThrows(ServletException.class, () -> { new GameServlet().init(config); });
+
+        assertThat(e.getMessage()).contains("offheap", GameServlet.RECORD_DIRECTORY_PARAM);
+    }
+
+    private static ServletConfig mockConfig(Map<String, String> contextParameters) {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getInitParameter(anyString())).thenAnswer(invocation -> contextParameters.get(invocation.<String>getArgument(0)));
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        return config;
+    }
+
+    private <T> List<Future<T>> runConcurrently(int threads, Callable<T> task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        return results;
+    }
+
+    private UUID newGame(String size) throws Exception {
+        Matcher matcher = ID_PATTERN.matcher(get(null, "new", size));
+        assertThat(matcher.find()).isTrue();
+        return UUID.fromString(matcher.group(1));
+    }
+
+    private String get(String id, String action, String size) throws Exception {
+        return get(id, action, size, null);
+    }
+
+    private String get(String id, String action, String size, String moves) throws Exception {
+        return get(id, action, size, moves, null, mock(HttpServletResponse.class));
+    }
+
+    private String get(String id, String action, String size, String moves, String ifNoneMatch, HttpServletResponse response) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter("moves")).thenReturn(moves);
+        when(request.getParameter("id")).thenReturn(id);
+        when(request.getParameter("action")).thenReturn(action);
+        when(request.getParameter("size")).thenReturn(size);
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        servlet.doGet(request, response);
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String etag(HttpServletResponse response) {
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+        return etag.getValue();
+    }
+
+    private String getWithToken(String token, String action, String moves) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter("token")).thenReturn(token);
+        when(request.getParameter("action")).thenReturn(action);
+        when(request.getParameter("moves")).thenReturn(moves);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        servlet.doGet(request, response);
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static int parseScore(String html) {
+        Matcher matcher = Pattern.compile("Score: (\\d+)").matcher(html);
+        assertThat(matcher.find()).isTrue();
+        return Integer.parseInt(matcher.group(1));
+    }
+}
@@ -3,6 +3,10 @@ package spw4.game2048;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -48,6 +52,64 @@ public class GameTests {
         assertThat(result).isTrue();
     }
 
+    @DisplayName("Game.isOver when the only equal neighbours are in the inner rows and columns returns false")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {4, 5})
+    void isOverWhenOnlyInnerNeighboursAreEqualReturnsFalse(int size) {
+        Game game = new Game(size, false);
+        // a checkerboard of 2s and 4s cannot move
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) game.setTileAt(r, c, (r + c) % 2 == 0 ? 2 : 4);
+        }
+        assertThat(game.isOver()).isTrue();
+
+        // now equal tiles meet in row 1 and in column 1 only
+        game.setTileAt(1, 1, 4);
+
+        assertThat(game.isOver()).isFalse();
+        assertThat(game.isMoveAvailable()).isTrue();
+    }
+
+    @DisplayName("Game.isOver when a full board has just two equal tiles, one of them in row or column 1, returns false")
+    @ParameterizedTest(name = "({0},{1}) and ({2},{3})")
+    @CsvSource({"0,0,1,0", "1,0,2,0", "0,3,1,3", "1,2,2,2", "0,0,0,1", "0,1,0,2", "3,0,3,1", "2,1,2,2"})
+    void isOverWhenOnlyPairTouchesRowOrColumnOneReturnsFalse(int firstRow, int firstColumn, int secondRow, int secondColumn) {
+        Game game = new Game(false);
+        // neighbours in a row differ by 2, in a column by 1 modulo 3, so no two of them are equal
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) game.setTileAt(r, c, 2 << ((r + 2 * c) % 3));
+        }
+        assertThat(game.isOver()).isTrue();
+
+        game.setTileAt(firstRow, firstColumn, 16);
+        game.setTileAt(secondRow, secondColumn, 16);
+
+        assertThat(game.isOver()).isFalse();
+    }
+
+    @DisplayName("Game.getEmptyTileCount and Game.getMaxTile stay equal to the board after every move and spawn")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 6})
+    void statusFollowsEveryMove(int size) {
+        Game game = new Game(size, true, size);
+        game.initialize();
+        Direction[] directions = {Direction.left, Direction.down, Direction.right, Direction.down};
+
+        for (int i = 0; i < 500 && !game.isOver(); i++) {
+            game.move(directions[i % directions.length]);
+
+            int empty = 0, max = 0;
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    if (game.getTileAt(r, c) == 0) empty++;
+                    max = Math.max(max, game.getTileAt(r, c));
+                }
+            }
+            assertThat(game.getEmptyTileCount()).isEqualTo(empty);
+            assertThat(game.getMaxTile()).isEqualTo(max);
+        }
+    }
+
     @DisplayName("Game.isOver when the game is won returns true")
     @Test
     void isOverWhenGameIsWonReturnsTrue() {
@@ -271,6 +333,162 @@ public class GameTests {
         assertThat(game.getTileAt(3, 3)).isEqualTo(0);
     }
 
+    @DisplayName("Game.move when two games have the same seed and moves spawns the same tiles")
+    @Test
+    void moveWhenSeedAndMovesAreEqualSpawnsSameTiles() {
+        Game game = new Game(4, true, 2048);
+        Game twin = new Game(4, true, 2048);
+        game.initialize();
+        twin.initialize();
+
+        Direction[] directions = {Direction.up, Direction.left, Direction.down, Direction.right, Direction.left};
+        for (int i = 0; i < 40; i++) {
+            game.move(directions[i % directions.length]);
+            twin.move(directions[i % directions.length]);
+            assertThat(twin.toString()).isEqualTo(game.toString());
+        }
+        assertThat(twin.getSeed()).isEqualTo(2048);
+
+        // initialize starts the sequence over, the score is kept
+        Game fresh = new Game(4, true, 2048);
+        fresh.initialize();
+        game.initialize();
+        assertThat(game.toString()).endsWith(fresh.toString().substring(fresh.toString().indexOf('\n')));
+    }
+
+    @DisplayName("Game.move merges every tile at most once per move")
+    @Test
+    void moveMergesEveryTileAtMostOnce() {
+        Game game = new Game(false);
+        game.setTileAt(0, 0, 2); game.setTileAt(0, 1, 2); game.setTileAt(0, 2, 4); game.setTileAt(0, 3, 4);
+        game.setTileAt(1, 0, 2); game.setTileAt(1, 1, 2); game.setTileAt(1, 2, 2); game.setTileAt(1, 3, 2);
+        game.setTileAt(2, 0, 4); game.setTileAt(2, 1, 4); game.setTileAt(2, 2, 8);
+
+        game.move(Direction.left);
+
+        assertThat(game.getTileAt(0, 0)).isEqualTo(4);
+        assertThat(game.getTileAt(0, 1)).isEqualTo(8);
+        assertThat(game.getTileAt(0, 2)).isEqualTo(0);
+        assertThat(game.getTileAt(1, 0)).isEqualTo(4);
+        assertThat(game.getTileAt(1, 1)).isEqualTo(4);
+        assertThat(game.getTileAt(1, 2)).isEqualTo(0);
+        assertThat(game.getTileAt(2, 0)).isEqualTo(8);
+        assertThat(game.getTileAt(2, 1)).isEqualTo(8);
+        assertThat(game.getTileAt(2, 2)).isEqualTo(0);
+        assertThat(game.getScore()).isEqualTo(4 + 8 + 4 + 4 + 8);
+    }
+
+    @DisplayName("Game.move never merges two tiles of the largest supported number")
+    @Test
+    void moveDoesNotMergeMaxTiles() {
+        Game game = new Game(false);
+        game.setTileAt(0, 0, Game.MAX_TILE); game.setTileAt(0, 1, Game.MAX_TILE);
+
+        game.move(Direction.left);
+
+        assertThat(game.getTileAt(0, 0)).isEqualTo(Game.MAX_TILE);
+        assertThat(game.getTileAt(0, 1)).isEqualTo(Game.MAX_TILE);
+        assertThat(game.getScore()).isEqualTo(0);
+    }
+
+    @DisplayName("Game.move when no tile moves spawns nothing and does not count the move")
+    @Test
+    void moveWhenNothingMovesChangesNothing() {
+        Game game = new Game(4, true, 1);
+        game.setTileAt(0, 0, 2);
+        game.setTileAt(0, 1, 4);
+        long randomState = game.getRandomState();
+
+        MoveResult result = game.move(Direction.left);
+
+        assertThat(result.isChanged()).isFalse();
+        assertThat(result.getSpawnedTile()).isZero();
+        assertThat(game.getMoveCount()).isZero();
+        assertThat(game.getEmptyTileCount()).isEqualTo(14);
+        assertThat(game.getRandomState()).isEqualTo(randomState);
+    }
+
+    @DisplayName("Game.move returns the score gained and the tile spawned afterwards")
+    @Test
+    void moveReturnsScoreAndSpawnedTile() {
+        Game game = new Game(4, true, 1);
+        game.setTileAt(0, 0, 2);
+        game.setTileAt(0, 1, 2);
+
+        MoveResult result = game.move(Direction.right);
+
+        assertThat(result.isChanged()).isTrue();
+        assertThat(result.getScoreGained()).isEqualTo(4);
+        assertThat(result.getSpawnedTile()).isIn(2, 4);
+        assertThat(game.getTileAt(result.getSpawnRow(), result.getSpawnColumn())).isEqualTo(result.getSpawnedTile());
+        assertThat(game.getMoveCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Game.legalMoves returns exactly the directions that move a tile, without changing the game")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 5, 8})
+    void legalMovesAreTheDirectionsThatMoveTiles(int size) {
+        Game game = new Game(size, true, size);
+        game.initialize();
+        for (int step = 0; step < 300 && !game.isOver(); step++) {
+            String before = game.toString();
+            int legalMoves = game.legalMoves();
+            assertThat(game.toString()).isEqualTo(before);
+
+            for (Direction direction : Direction.values()) {
+                Game trial = new Game(size, false);
+                trial.copyFrom(game);
+                assertThat(game.isLegalMove(direction)).isEqualTo(trial.move(direction).isChanged());
+            }
+            assertThat(legalMoves != 0).isEqualTo(game.isMoveAvailable());
+            game.move(Direction.values()[step * 7 % 4]);
+        }
+    }
+
+    @DisplayName("Game.move on boards of other sizes slides and merges whole lines")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 5, 6, 7, 8})
+    void moveOnOtherBoardSizes(int size) {
+        Game game = new Game(size, false);
+        game.setTileAt(0, 0, 2); game.setTileAt(0, size - 1, 2);
+        game.setTileAt(size - 1, size - 1, 8);
+
+        game.move(Direction.right);
+
+        assertThat(game.getTileAt(0, size - 1)).isEqualTo(4);
+        assertThat(game.getTileAt(0, 0)).isEqualTo(0);
+        assertThat(game.getScore()).isEqualTo(4);
+
+        game.move(Direction.down);
+
+        assertThat(game.getTileAt(size - 1, size - 1)).isEqualTo(8);
+        assertThat(game.getTileAt(size - 2, size - 1)).isEqualTo(4);
+        assertThat(game.getTileAt(0, size - 1)).isEqualTo(0);
+        assertThat(game.toString()).hasLineCount(size + 1);
+    }
+
+    @DisplayName("Game.isOver on a full board without equal neighbours of another size returns true")
+    @Test
+    void isOverOnFullBoardOfOtherSize() {
+        Game game = new Game(3, false);
+        game.setTileAt(0, 0, 2); game.setTileAt(0, 1, 4); game.setTileAt(0, 2, 8);
+        game.setTileAt(1, 0, 4); game.setTileAt(1, 1, 8); game.setTileAt(1, 2, 16);
+        game.setTileAt(2, 0, 2); game.setTileAt(2, 1, 4); game.setTileAt(2, 2, 8);
+
+        assertThat(game.isOver()).isTrue();
+
+        game.setTileAt(2, 2, 16);
+
+        assertThat(game.isOver()).isFalse();
+    }
+
+    @DisplayName("Game constructor when the board size is not supported throws IllegalArgumentException")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {-1, 0, 2, 9})
+    void constructorWhenBoardSizeIsInvalidThrowsException(int size) {
+        assertThrows(IllegalArgumentException.class, () -> { new Game(size); });
+    }
+
     @DisplayName("Game.initialize at any given point clears the board and adds 2 random tiles")
     @Test
     void initializeAtAnyGivenPointCreatesANewBoardWithTwoTiles() { 
@@ -280,8 +498,8 @@ public class GameTests {
 
         // Count non-zero tiles; should be 2
         int tileCount = 0;
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
+        for (int r = 0; r < game.getBoardSize(); r++) {
+            for (int c = 0; c < game.getBoardSize(); c++) {
                 assertThat(game.getTileAt(r, c)).isIn(0, 2, 4);
                 if (game.getTileAt(r, c) != 0) tileCount++;
             }
@@ -299,8 +517,8 @@ public class GameTests {
 
         assertThat(game.getTileAt(row, col)).isEqualTo(number);
         // Assert that every other tile is set to zero
-        for (int r = 0; r < Game.BOARD_SIZE; r++) {
-            for (int c = 0; c < Game.BOARD_SIZE; c++) {
+        for (int r = 0; r < game.getBoardSize(); r++) {
+            for (int c = 0; c < game.getBoardSize(); c++) {
                 if (!(row == r && col == c)) {
                     assertThat(game.getTileAt(r, c)).isEqualTo(0);
                 }
@@ -310,7 +528,7 @@ public class GameTests {
 
     @DisplayName("Game.setTileAt when the given position or tile number is invalid throws IllegalArgumentException")
     @ParameterizedTest(name = "row = {0}, column = {1}, number = {2}")
-    @CsvSource({"0, 0, 3", "3, 1, -1", "5, 0, 8", "-1, 3, 32", "3, 3, 1023"})
+    @CsvSource({"0, 0, 3", "3, 1, -1", "5, 0, 8", "-1, 3, 32", "3, 3, 1023", "1, 1, 65536"})
     void setTileAtWhenPositionIsInvalidThrowsException(int row, int col, int number) {
         Game game = new Game(false);
 
@@ -326,4 +544,119 @@ public class GameTests {
         assertThrows(IllegalArgumentException.class, () -> { game.getTileAt(row, col); });
     }
 
+    @DisplayName("Game.undo after moves restores every state before and Game.redo the ones after, spawns included")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 8})
+    void undoAndRedoRestoreEveryState(int size) {
+        Game game = new Game(size, true, 11);
+        game.initialize();
+        game.enableHistory(8);
+        List<String> states = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        states.add(game.toString());
+        scores.add(game.getScore());
+        Direction[] directions = Direction.values();
+        for (int i = 0; states.size() <= 8; i++) {
+            if (game.move(directions[i % directions.length]).isChanged()) {
+                states.add(game.toString());
+                scores.add(game.getScore());
+            }
+        }
+
+        for (int i = states.size() - 2; i >= 0; i--) {
+            assertThat(game.undo()).isTrue();
+            assertThat(game.toString()).isEqualTo(states.get(i));
+            assertThat(game.getScore()).isEqualTo(scores.get(i));
+            assertThat(game.getMoveCount()).isEqualTo(i);
+        }
+        assertThat(game.undo()).isFalse();
+        for (int i = 1; i < states.size(); i++) {
+            assertThat(game.redo()).isTrue();
+            assertThat(game.toString()).isEqualTo(states.get(i));
+        }
+        assertThat(game.redo()).isFalse();
+    }
+
+    @DisplayName("Game.move after Game.undo spawns the tile the undone move spawned and drops the states to redo")
+    @Test
+    void moveAfterUndoSpawnsSameTile() {
+        Game game = new Game(4, true, 5);
+        Game reference = new Game(4, true, 5);
+        game.initialize();
+        reference.initialize();
+        game.enableHistory(4);
+        Direction direction = game.isLegalMove(Direction.left) ? Direction.left : Direction.right;
+        game.move(direction);
+
+        assertThat(game.undo()).isTrue();
+        assertThat(game.canRedo()).isTrue();
+        game.move(direction);
+        reference.move(direction);
+
+        assertThat(game.toString()).isEqualTo(reference.toString());
+        assertThat(game.canRedo()).isFalse();
+        assertThat(game.redo()).isFalse();
+    }
+
+    @DisplayName("Game.undo takes back the last depth moves at most, however many were made")
+    @Test
+    void undoTakesBackDepthMovesAtMost() {
+        Game game = new Game(4, true, 3);
+        game.initialize();
+        game.enableHistory(3);
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < 200 && !game.isOver(); i++) game.move(directions[i % directions.length]);
+        int moveCount = game.getMoveCount();
+
+        int undos = 0;
+        while (game.undo()) undos++;
+
+        assertThat(undos).isEqualTo(Math.min(3, moveCount));
+        assertThat(game.getMoveCount()).isEqualTo(moveCount - undos);
+    }
+
+    @DisplayName("Game.undo without a history or when set up with Game.setTileAt returns false and changes nothing")
+    @Test
+    void undoWithoutHistoryChangesNothing() {
+        Game game = new Game(false);
+        game.setTileAt(0, 0, 2);
+        game.setTileAt(0, 1, 2);
+        game.move(Direction.left);
+        assertThat(game.undo()).isFalse();
+
+        game.enableHistory(4);
+        game.setTileAt(3, 3, 8);
+        assertThat(game.undo()).isFalse();
+        assertThat(game.getTileAt(0, 0)).isEqualTo(4);
+        assertThat(game.getTileAt(3, 3)).isEqualTo(8);
+    }
+
+    @DisplayName("Game.getMoveLog after moves, undo, redo and other moves holds the moves that lead from the seed to the game")
+    @Test
+    void moveLogFollowsUndoAndRedo() {
+        Game game = new Game(4, true, 13);
+        game.initialize();
+        game.enableHistory(4);
+        game.enableMoveLog();
+        Direction[] directions = Direction.values();
+        for (int i = 0; game.getMoveCount() < 100 && !game.isOver(); i++) game.move(directions[i % directions.length]);
+        game.undo();
+        game.undo();
+        game.redo();
+        for (int i = 0; i < 4 && !game.isOver(); i++) game.move(directions[(i + 2) % directions.length]);
+
+        Game replayed = new Game(4, true, 13);
+        replayed.initialize();
+        short[] moveLog = game.getMoveLog();
+        for (int move = 0; move < game.getMoveCount(); move++) {
+            assertThat(replayed.move(directions[moveLog[move] & 3]).isChanged()).isTrue();
+            assertThat(replayed.getLastSpawnCell() << 2 | replayed.getLastSpawnExponent()).isEqualTo(moveLog[move] >>> 2);
+        }
+        assertThat(replayed.toString()).isEqualTo(game.toString());
+        assertThat(replayed.getScore()).isEqualTo(game.getScore());
+
+        game.setTileAt(0, 0, 2);
+        assertThat(game.getMoveLog()).isNull();
+    }
+
 }
@@ -0,0 +1,81 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GameTokensTests {
+
+    private final GameTokens tokens = new GameTokens("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+
+    @DisplayName("GameTokens.decode returns the game that was encoded, which plays on the same way")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 8})
+    void decodeReturnsEncodedGame(int size) {
+        Game game = new Game(size, true, 42);
+        game.initialize();
+        for (int i = 0; i < 20; i++) game.move(Direction.values()[i % 4]);
+
+        Game decoded = tokens.decode(tokens.encode(game));
+
+        assertThat(decoded.toString()).isEqualTo(game.toString());
+        assertThat(decoded.getScore()).isEqualTo(game.getScore());
+        assertThat(decoded.getMoveCount()).isEqualTo(game.getMoveCount());
+        assertThat(decoded.getRandomState()).isEqualTo(game.getRandomState());
+        // the same tiles spawn after the next moves
+        for (int i = 0; i < 20; i++) {
+            game.move(Direction.values()[i % 3]);
+            decoded.move(Direction.values()[i % 3]);
+        }
+        assertThat(decoded.toString()).isEqualTo(game.toString());
+    }
+
+    @DisplayName("GameTokens.encode of a 4x4 game returns 62 characters")
+    @Test
+    void encodeReturnsCompactToken() {
+        Game game = new Game(4, true, 7);
+        game.initialize();
+
+        assertThat(tokens.encode(game)).hasSize(62).matches("[A-Za-z0-9_-]+");
+    }
+
+    @DisplayName("GameTokens.decode when a token was tampered with throws IllegalArgumentException")
+    @Test
+    void decodeWhenTokenIsTamperedThrowsException() {
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        byte[] token = Base64.getUrlDecoder().decode(tokens.encode(game));
+
+        for (int i = 0; i < token.length; i++) {
+            byte[] tampered = token.clone();
+            tampered[i] ^= 1;
+            String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(tampered);
+            assertThrows(IllegalArgumentException.class, () -> tokens.decode(encoded));
+        }
+    }
+
+    @DisplayName("GameTokens.decode when a token was signed with another secret, is cut short or no Base64 throws IllegalArgumentException")
+    @Test
+    void decodeWhenTokenIsForeignThrowsException() {
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        String token = new GameTokens("fedcba9876543210".getBytes(StandardCharsets.UTF_8)).encode(game);
+
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode(token));
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode(tokens.encode(game).substring(0, 40)));
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode("not a token!"));
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode(""));
+    }
+
+    @DisplayName("new GameTokens when the secret is too short throws IllegalArgumentException")
+    @Test
+    void newWhenSecretIsShortThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new GameTokens(new byte[GameTokens.MIN_SECRET_BYTES - 1]));
+    }
+}
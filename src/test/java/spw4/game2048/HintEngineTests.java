@@ -0,0 +1,100 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HintEngineTests {
+
+    private HintEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new HintEngine(HintEngine.DEFAULT_BUDGET_MILLIS, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @DisplayName("HintEngine.hint when the game is over returns null")
+    @Test
+    void hintWhenGameIsOverReturnsNull() {
+        Game game = new Game(4, false);
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) game.setTileAt(r, c, (r + c) % 2 == 0 ? 2 : 4);
+        }
+
+        assertThat(engine.hint(game)).isNull();
+    }
+
+    @DisplayName("HintEngine.hint when a single move changes the board returns that move")
+    @Test
+    void hintWhenOnlyOneMoveIsLegalReturnsIt() {
+        Game game = new Game(4, false);
+        // the first column is empty, no other tile has an equal neighbour: the tiles can only go left
+        int[][] tiles = {{0, 2, 4, 8}, {0, 4, 8, 16}, {0, 8, 16, 32}, {0, 16, 32, 64}};
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) game.setTileAt(r, c, tiles[r][c]);
+        }
+
+        assertThat(engine.hint(game)).isEqualTo(Direction.left);
+    }
+
+    @DisplayName("HintEngine.hint answers within its time budget")
+    @Test
+    void hintAnswersWithinBudget() {
+        Game game = new Game(4, true, 42);
+        game.initialize();
+        for (int i = 0; i < 20; i++) game.move(Direction.values()[i % 4]);
+
+        long start = System.nanoTime();
+        Direction hint = engine.hint(game);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(hint).isNotNull();
+        assertThat(millis).isLessThan(HintEngine.DEFAULT_BUDGET_MILLIS + 30);
+    }
+
+    @DisplayName("HintEngine.hint leads a game to a far larger tile than the moves of a fixed cycle")
+    @Test
+    void hintPlaysWell() {
+        HintEngine fast = new HintEngine(2, 2);
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        while (!game.isOver() && game.getMaxTile() < 1024) game.move(fast.hint(game));
+        fast.close();
+
+        assertThat(game.getMaxTile()).isGreaterThanOrEqualTo(1024);
+    }
+
+    @DisplayName("HintEngine.hint on boards other than 4x4 returns the move that leaves the most empty tiles")
+    @Test
+    void hintOnOtherSizesReturnsMoveLeavingMostEmptyTiles() {
+        Game game = new Game(5, false);
+        game.setTileAt(0, 0, 2);
+        game.setTileAt(1, 0, 2);
+        game.setTileAt(0, 4, 8);
+
+        assertThat(engine.hint(game)).isIn(Direction.up, Direction.down);
+    }
+
+    @DisplayName("BitBoard.canonical is the same for every rotation and reflection of a board")
+    @Test
+    void canonicalIsSameForAllSymmetries() {
+        long board = 0x1234_5678_9ABC_DEF1L;
+        long expected = BitBoard.canonical(board);
+
+        long rotated = board;
+        for (int i = 0; i < 4; i++) {
+            // a rotation by 90 degrees is a transposition followed by a mirror
+            rotated = BitBoard.mirror(BitBoard.transpose(rotated));
+            assertThat(BitBoard.canonical(rotated)).isEqualTo(expected);
+            assertThat(BitBoard.canonical(BitBoard.mirror(rotated))).isEqualTo(expected);
+        }
+        assertThat(rotated).isEqualTo(board);
+    }
+}
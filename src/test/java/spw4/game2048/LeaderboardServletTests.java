@@ -0,0 +1,96 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class LeaderboardServletTests {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private GameServlet pages;
+    private LeaderboardServlet servlet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pages = new GameServlet();
+        pages.init(mockConfig());
+        servlet = new LeaderboardServlet();
+        servlet.init(mockConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        servlet.destroy();
+    }
+
+    @DisplayName("LeaderboardServlet.doGet lists the games played with GameServlet and answers an unchanged board with 304")
+    @Test
+    void doGetListsGamesAndAnswersUnchangedBoardWithNotModified() throws Exception {
+        UUID id = pages.add(AbstractGameServlet.newGame("8"));
+        pages.moves(id, "ULDRULDRULDR", null);
+        int score = pages.games.<Integer>update(id, Game::getScore);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        String json = get(response, null);
+
+        assertThat(json).startsWith("[{\"score\":" + score + ",").endsWith("}]");
+        verify(response).setContentType(GameApiServlet.JSON_TYPE);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+
+        HttpServletResponse notModified = mock(HttpServletResponse.class);
+        assertThat(get(notModified, etag.getValue())).isEmpty();
+        verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @DisplayName("LeaderboardServlet.doGet never lists games played by token")
+    @Test
+    void doGetDoesNotListTokenGames() throws Exception {
+        Game game = AbstractGameServlet.newGame("8");
+        pages.play(game, null, "ULDRULDRULDR", pages.traces.get());
+        assertThat(game.getScore()).isPositive();
+
+        assertThat(get(mock(HttpServletResponse.class), null)).isEqualTo("[]");
+    }
+
+    private ServletConfig mockConfig() {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getInitParameter(anyString())).thenReturn(null);
+        when(context.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).setAttribute(anyString(), any());
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        return config;
+    }
+
+    private String get(HttpServletResponse response, String ifNoneMatch) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        servlet.service(request, response);
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
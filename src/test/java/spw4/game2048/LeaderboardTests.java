@@ -0,0 +1,105 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LeaderboardTests {
+
+    @DisplayName("Leaderboard.snapshot lists the best games by score and then by largest tile")
+    @Test
+    void snapshotListsBestGames() {
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.offer(game(1, 100, 16));
+        leaderboard.offer(game(2, 300, 32));
+        leaderboard.offer(game(3, 200, 16));
+        leaderboard.offer(game(4, 200, 64));
+        leaderboard.offer(game(5, 50, 8));
+
+        Leaderboard.Snapshot snapshot = leaderboard.snapshot();
+
+        assertThat(snapshot.entries).extracting(entry -> entry.seed).containsExactly(2L, 4L, 3L);
+        assertThat(new String(snapshot.json, StandardCharsets.UTF_8)).startsWith("[{\"score\":300,\"maxTile\":32,\"moves\":0,\"size\":4},");
+    }
+
+    @DisplayName("Leaderboard.offer lists a game once, with the best score it reached")
+    @Test
+    void offerListsGameOnceWithBestScore() {
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.offer(game(1, 100, 16));
+        leaderboard.offer(game(1, 500, 64));
+        // taken back by undo
+        leaderboard.offer(game(1, 200, 32));
+
+        Leaderboard.Snapshot snapshot = leaderboard.snapshot();
+
+        assertThat(snapshot.entries).hasSize(1);
+        assertThat(snapshot.entries[0].score).isEqualTo(500);
+    }
+
+    @DisplayName("Leaderboard.snapshot returns the same snapshot until the board changes")
+    @Test
+    void snapshotIsCachedUntilBoardChanges() {
+        Leaderboard leaderboard = new Leaderboard(1);
+        leaderboard.offer(game(1, 100, 16));
+        Leaderboard.Snapshot snapshot = leaderboard.snapshot();
+
+        // too low for the full board
+        leaderboard.offer(game(2, 50, 8));
+        assertThat(leaderboard.snapshot()).isSameAs(snapshot);
+
+        leaderboard.offer(game(3, 150, 16));
+        assertThat(leaderboard.snapshot()).isNotSameAs(snapshot);
+        assertThat(leaderboard.snapshot().entries).extracting(entry -> entry.seed).containsExactly(3L);
+    }
+
+    @DisplayName("Leaderboard.offer when many threads offer games at once keeps the best of them")
+    @Test
+    void offerWhenCalledConcurrentlyKeepsBestGames() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(10);
+        int threads = 8, gamesPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < gamesPerThread; i++) {
+                    // every game is offered with rising scores, like its moves would
+                    long seed = (long) i * threads + thread;
+                    leaderboard.offer(game(seed, (int) seed, 2));
+                    leaderboard.offer(game(seed, (int) seed * 2, 4));
+                }
+            }));
+        }
+        for (Future<?> result : results) result.get();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        long best = (long) threads * gamesPerThread - 1;
+        assertThat(leaderboard.snapshot().entries).extracting(entry -> entry.seed)
+                .containsExactly(best, best - 1, best - 2, best - 3, best - 4, best - 5, best - 6, best - 7, best - 8, best - 9);
+        assertThat(leaderboard.snapshot().entries).extracting(entry -> entry.score).allMatch(score -> score >= 2 * (best - 9));
+    }
+
+    @DisplayName("new Leaderboard when the size is not positive throws IllegalArgumentException")
+    @Test
+    void newWhenSizeIsNotPositiveThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new Leaderboard(0));
+    }
+
+    private static Game game(long seed, int score, int maxTile) {
+        Game game = new Game(4, false, seed);
+        game.setTileAt(0, 0, maxTile);
+        game.restore(score, 0, seed);
+        return game;
+    }
+}
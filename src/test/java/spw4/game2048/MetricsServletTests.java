@@ -0,0 +1,96 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class MetricsServletTests {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("Game\\?id=([0-9a-f-]{36})");
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private GameServlet pages;
+    private MetricsServlet servlet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pages = new GameServlet();
+        pages.init(mockConfig());
+        servlet = new MetricsServlet();
+        servlet.init(mockConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        servlet.destroy();
+    }
+
+    @DisplayName("MetricsServlet.doGet exports the requests, games and errors of GameServlet in the Prometheus text format")
+    @Test
+    void doGetExportsRequestsOfGameServlet() throws Exception {
+        Matcher matcher = ID_PATTERN.matcher(get(pages, null, "new"));
+        assertThat(matcher.find()).isTrue();
+        String id = matcher.group(1);
+        get(pages, id, "hint");
+        get(pages, "not-an-id", "up");
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        String text = get(servlet, response, null, null);
+
+        verify(response).setContentType(MetricsServlet.CONTENT_TYPE);
+        assertThat(text).contains("game2048_games_created_total 1\n");
+        assertThat(text).contains("game2048_games_live 1\n");
+        assertThat(text).contains("game2048_errors_total 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"new\"} 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"hint\"} 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"render\"} 1\n");
+        assertThat(text).contains("game2048_request_duration_seconds_count{action=\"up\"} 0\n");
+    }
+
+    private ServletConfig mockConfig() {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getInitParameter(anyString())).thenReturn(null);
+        when(context.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).setAttribute(anyString(), any());
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        return config;
+    }
+
+    private static String get(AbstractGameServlet servlet, String id, String action) throws Exception {
+        return get(servlet, mock(HttpServletResponse.class), id, action);
+    }
+
+    private static String get(AbstractGameServlet servlet, HttpServletResponse response, String id, String action) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getParameter("id")).thenReturn(id);
+        when(request.getParameter("action")).thenReturn(action);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        servlet.service(request, response);
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
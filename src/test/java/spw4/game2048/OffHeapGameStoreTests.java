@@ -0,0 +1,140 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapGameStoreTests {
+
+    @DisplayName("OffHeapGameStore.update returns the stored game with board, score and moves unchanged")
+    @ParameterizedTest(name = "size = {0}")
+    @ValueSource(ints = {3, 4, 5, 8})
+    void updateReturnsStoredGame(int size) {
+        OffHeapGameStore store = new OffHeapGameStore(100, 60_000, false);
+        Game game = new Game(size, false);
+        game.setTileAt(0, 0, 2); game.setTileAt(0, 1, 2); game.setTileAt(size - 1, size - 1, 1024);
+        game.move(Direction.left);
+
+        UUID id = store.add(game);
+        Game stored = store.<Game>update(id, g -> g);
+
+        assertThat(stored.toString()).isEqualTo(game.toString());
+        assertThat(stored.getMoveCount()).isEqualTo(1);
+        assertThat(store.<Game>update(UUID.randomUUID(), g -> g)).isNull();
+        assertThat(store.getHits()).isEqualTo(1);
+        assertThat(store.getMisses()).isEqualTo(1);
+    }
+
+    @DisplayName("OffHeapGameStore.update keeps seed and random state, so the stored game spawns the same tiles")
+    @Test
+    void updateKeepsRandomState() {
+        OffHeapGameStore store = new OffHeapGameStore(100, 60_000, false);
+        Game game = new Game(5, true, 42);
+        game.initialize();
+        game.move(Direction.left);
+        UUID id = store.add(game);
+
+        for (Direction direction : new Direction[] {Direction.up, Direction.right, Direction.down}) {
+            game.move(direction);
+            store.update(id, g -> { g.move(direction); return null; });
+        }
+
+        Game stored = store.<Game>update(id, g -> g);
+        assertThat(stored.toString()).isEqualTo(game.toString());
+        assertThat(stored.getSeed()).isEqualTo(42);
+    }
+
+    @DisplayName("OffHeapGameStore.update keeps the changes the action made to the game")
+    @Test
+    void updateKeepsChanges() {
+        OffHeapGameStore store = new OffHeapGameStore(100, 60_000, false);
+        Game game = new Game(false);
+        game.setTileAt(0, 0, 4); game.setTileAt(0, 3, 4);
+        UUID id = store.add(game);
+
+        store.update(id, g -> { g.move(Direction.right); return null; });
+
+        Game stored = store.<Game>update(id, g -> g);
+        assertThat(stored.getTileAt(0, 3)).isEqualTo(8);
+        assertThat(stored.getScore()).isEqualTo(8);
+    }
+
+    @DisplayName("OffHeapGameStore keeps every game in a slot as large as its board needs, 56 bytes up to 4x4")
+    @Test
+    void slotsAreSizedByBoard() {
+        OffHeapGameStore store = new OffHeapGameStore(100, 60_000, false);
+        store.add(new Game(3));
+        store.add(new Game(4));
+        long small = store.getReservedBytes();
+        Game large = new Game(8, true, 42);
+        large.initialize();
+        UUID id = store.add(large);
+
+        assertThat(OffHeapGameStore.slotBytes(1)).isEqualTo(56);
+        assertThat(OffHeapGameStore.slotBytes(4)).isEqualTo(80);
+        assertThat(small % OffHeapGameStore.slotBytes(1)).isZero();
+        assertThat(store.getReservedBytes() - small).isEqualTo(small / OffHeapGameStore.slotBytes(1) * OffHeapGameStore.slotBytes(4));
+
+        // a game put under the id with a smaller board moves to a smaller slot
+        Game game = new Game(4, true, 7);
+        game.initialize();
+        game.move(Direction.left);
+        store.put(id, game);
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.<String>update(id, Game::toString)).isEqualTo(game.toString());
+        assertThat(store.<Long>update(id, Game::getRandomState)).isEqualTo(game.getRandomState());
+    }
+
+    @DisplayName("OffHeapGameStore.add when many games are added finds every one of them")
+    @Test
+    void addWhenManyGamesAreAddedFindsAll() {
+        OffHeapGameStore store = new OffHeapGameStore(200_000, 60_000, false);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            Game game = new Game(false);
+            game.setTileAt(i % 4, 0, 2);
+            ids.add(store.add(game));
+        }
+
+        assertThat(store.size()).isEqualTo(100_000);
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat(store.<Integer>update(ids.get(i), g -> g.getTileAt(0, 0) + g.getTileAt(1, 0) + g.getTileAt(2, 0) + g.getTileAt(3, 0))).isEqualTo(2);
+        }
+    }
+
+    @DisplayName("OffHeapGameStore.add when the store is full evicts games and recycles their slots")
+    @Test
+    void addWhenFullEvictsAndRecyclesSlots() {
+        OffHeapGameStore store = new OffHeapGameStore(1000, 60_000, false);
+        for (int i = 0; i < 1000; i++) store.add(new Game());
+        long reserved = store.getReservedBytes();
+
+        UUID last = null;
+        for (int i = 0; i < 10_000; i++) last = store.add(new Game());
+
+        assertThat(store.size()).isLessThanOrEqualTo(1000);
+        assertThat(store.getEvictions()).isGreaterThanOrEqualTo(10_000);
+        assertThat(store.getReservedBytes()).isEqualTo(reserved);
+        assertThat(store.<Game>update(last, g -> g)).isNotNull();
+    }
+
+    @DisplayName("OffHeapGameStore.add when finished games are removed early evicts them")
+    @Test
+    void addWhenFinishedGamesAreRemovedEvictsThem() {
+        OffHeapGameStore store = new OffHeapGameStore(10, 60_000, true);
+        UUID finished = store.add(new Game(false));
+        UUID running = store.add(new Game());
+
+        store.update(finished, game -> { game.setTileAt(0, 0, 2048); return game; });
+        store.add(new Game());
+
+        assertThat(store.<Game>update(finished, g -> g)).isNull();
+        assertThat(store.<Game>update(running, g -> g)).isNotNull();
+    }
+}
@@ -0,0 +1,69 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SelfPlayTests {
+
+    @DisplayName("SelfPlay.run comes to the same statistics on any number of threads")
+    @Test
+    void runIsIndependentOfThreads() throws Exception {
+        SelfPlay.Statistics single = run(SelfPlay.Policy.random, 1, 3000);
+        SelfPlay.Statistics parallel = run(SelfPlay.Policy.random, 4, 3000);
+
+        assertThat(parallel.games).isEqualTo(single.games).isEqualTo(3000);
+        assertThat(parallel.scoreSum).isEqualTo(single.scoreSum);
+        assertThat(parallel.moveSum).isEqualTo(single.moveSum);
+        assertThat(parallel.scores).isEqualTo(single.scores);
+        assertThat(parallel.maxTiles).isEqualTo(single.maxTiles);
+    }
+
+    @DisplayName("SelfPlay.run plays every game until no move is left")
+    @Test
+    void runPlaysGamesToTheEnd() throws Exception {
+        SelfPlay study = new SelfPlay(SelfPlay.Policy.corner, 4, 1, 1);
+        Game game = new Game(4, true, study.gameSeed(0));
+        game.initialize();
+        SelfPlay.Moves moves = new SelfPlay.Moves(4);
+        while (game.isMoveAvailable()) {
+            moves.evaluate(game.getBoard());
+            game.move(SelfPlay.Policy.corner.choose(moves, 0));
+        }
+
+        SelfPlay.Statistics statistics = study.run(1, null);
+        study.close();
+
+        assertThat(statistics.scoreSum).isEqualTo(game.getScore());
+        assertThat(statistics.moveSum).isEqualTo(game.getMoveCount());
+        assertThat(statistics.maxTiles[Integer.numberOfTrailingZeros(game.getMaxTile())]).isEqualTo(1);
+    }
+
+    @DisplayName("SelfPlay policies that look at the board score more than random moves")
+    @Test
+    void policiesScoreMoreThanRandomMoves() throws Exception {
+        long random = run(SelfPlay.Policy.random, 2, 2000).scoreSum;
+
+        assertThat(run(SelfPlay.Policy.greedy, 2, 2000).scoreSum).isGreaterThan(random);
+        assertThat(run(SelfPlay.Policy.corner, 2, 2000).scoreSum).isGreaterThan(random);
+    }
+
+    @DisplayName("SelfPlay.Statistics counts scores and moves in power-of-two buckets")
+    @Test
+    void statisticsBucketsArePowersOfTwo() {
+        assertThat(SelfPlay.Statistics.bucket(0)).isEqualTo(0);
+        assertThat(SelfPlay.Statistics.bucket(1)).isEqualTo(1);
+        assertThat(SelfPlay.Statistics.bucket(3)).isEqualTo(2);
+        assertThat(SelfPlay.Statistics.bucket(4)).isEqualTo(3);
+        assertThat(SelfPlay.Statistics.bucket(Integer.MAX_VALUE)).isEqualTo(31);
+    }
+
+    private static SelfPlay.Statistics run(SelfPlay.Policy policy, int threads, long games) throws Exception {
+        SelfPlay study = new SelfPlay(policy, 4, 42, threads);
+        try {
+            return study.run(games, null);
+        } finally {
+            study.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package spw4.game2048;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class StaticAssetFilterTests {
+
+    private static final String CSS = "css/app.css";
+    private static final String FONT = "icons/fonts/app.woff2";
+
+    @TempDir
+    Path webapp;
+    @TempDir
+    Path generated;
+
+    private byte[] css;
+    private StaticAssetFilter filter;
+    private StaticAssets assets;
+    private FilterChain chain;
+    private HttpServletResponse response;
+    private ByteArrayOutputStream body;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append(".bi-").append(i).append("::before { content: \"\\f").append(i).append("\"; }\n");
+        css = sb.toString().getBytes(StandardCharsets.UTF_8);
+        // random bytes do not compress, like a font
+        byte[] font = new byte[4096];
+        new Random(1).nextBytes(font);
+        write(webapp.resolve(CSS), css);
+        write(webapp.resolve(FONT), font);
+        assertThat(AssetCompressor.compress(webapp, generated)).isEqualTo(1);
+
+        ServletContext context = mockContext();
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+        filter = new StaticAssetFilter();
+        filter.init(config);
+        assets = StaticAssets.get(context);
+        chain = mock(FilterChain.class);
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter when the client accepts gzip sends the gzip variant with a strong ETag of its own")
+    @Test
+    void doFilterWhenGzipIsAcceptedSendsGzipVariant() throws Exception {
+        get(CSS, "gzip, deflate, br", null, false);
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setHeader("Vary", "Accept-Encoding");
+        verify(response).setHeader("ETag", "\"" + assets.find(CSS).hash + "-gzip\"");
+        verify(response).setHeader("Cache-Control", StaticAssetFilter.REVALIDATE);
+        verify(response).setContentLength(body.size());
+        assertThat(body.size()).isLessThan(css.length);
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())).readAllBytes()).isEqualTo(css);
+        verifyNoInteractions(chain);
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter when gzip is refused or there is no variant sends the asset as it is")
+    @Test
+    void doFilterWhenGzipIsRefusedSendsIdentity() throws Exception {
+        get(CSS, "gzip;q=0, *", null, false);
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).setHeader("ETag", "\"" + assets.find(CSS).hash + "\"");
+        assertThat(body.toByteArray()).isEqualTo(css);
+
+        get(FONT, "gzip", null, false);
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response, never()).setHeader(eq("Vary"), anyString());
+        assertThat(body.toByteArray()).isEqualTo(Files.readAllBytes(webapp.resolve(FONT)));
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter for the hashed path of an asset allows caching it for good")
+    @Test
+    void doFilterWhenPathIsHashedCachesForGood() throws Exception {
+        String hashedPath = assets.url(CSS);
+        assertThat(hashedPath).isEqualTo("css/app." + AssetCompressor.hash(css) + ".css");
+
+        get(hashedPath, null, null, false);
+
+        verify(response).setHeader("Cache-Control", StaticAssetFilter.IMMUTABLE);
+        assertThat(body.toByteArray()).isEqualTo(css);
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter when the client has the asset already answers 304 without a body")
+    @Test
+    void doFilterWhenETagMatchesAnswersNotModified() throws Exception {
+        String etag = "\"" + assets.find(CSS).hash + "-gzip\"";
+
+        get(CSS, "gzip", "\"other\", W/" + etag, false);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertThat(body.size()).isZero();
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter when the container supports sendfile lets it send the file")
+    @Test
+    void doFilterWhenSendfileIsSupportedHandsFileToContainer() throws Exception {
+        HttpServletRequest request = get(CSS, "gzip", null, true);
+
+        Path variant = generated.resolve(CSS + AssetCompressor.GZIP_SUFFIX);
+        verify(request).setAttribute(StaticAssetFilter.SENDFILE_FILENAME, variant.toString());
+        verify(request).setAttribute(StaticAssetFilter.SENDFILE_END, Files.size(variant));
+        verify(response).setContentLength((int) Files.size(variant));
+        assertThat(body.size()).isZero();
+    }
+
+    @DisplayName("StaticAssetFilter.doFilter for an unknown asset passes the request on")
+    @Test
+    void doFilterWhenAssetIsUnknownPassesRequestOn() throws Exception {
+        HttpServletRequest request = get("css/missing.css", "gzip", null, false);
+
+        verify(chain).doFilter(request, response);
+        verify(response, never()).setHeader(anyString(), anyString());
+    }
+
+    private HttpServletRequest get(String path, String acceptEncoding, String ifNoneMatch, boolean sendfile) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getContextPath()).thenReturn("/game2048");
+        when(request.getRequestURI()).thenReturn("/game2048/" + path);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        when(request.getAttribute(StaticAssetFilter.SENDFILE_SUPPORT)).thenReturn(sendfile ? Boolean.TRUE : null);
+        response = mock(HttpServletResponse.class);
+        body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        filter.doFilter(request, response, chain);
+
+        return request;
+    }
+
+    // a web application made of the sources and the generated files, like the war
+    private ServletContext mockContext() throws IOException {
+        ServletContext context = mock(ServletContext.class);
+        Object[] assets = new Object[1];
+        when(context.getAttribute(StaticAssets.ATTRIBUTE)).thenAnswer(invocation -> assets[0]);
+        doAnswer(invocation -> assets[0] = invocation.getArgument(1)).when(context).setAttribute(eq(StaticAssets.ATTRIBUTE), any());
+        when(context.getMimeType(anyString())).thenReturn("text/css");
+        when(context.getRealPath(anyString())).thenAnswer(invocation -> {
+            Path file = resolve(invocation.getArgument(0));
+            return file == null ? null : file.toString();
+        });
+        when(context.getResource(anyString())).thenAnswer(invocation -> {
+            Path file = resolve(invocation.getArgument(0));
+            return file == null ? null : file.toUri().toURL();
+        });
+        when(context.getResourceAsStream(anyString())).thenAnswer(invocation -> {
+            Path file = resolve(invocation.getArgument(0));
+            return file == null ? null : Files.newInputStream(file);
+        });
+        return context;
+    }
+
+    private Path resolve(String resource) {
+        for (Path root : new Path[] {generated, webapp}) {
+            Path file = root.resolve(resource.substring(1));
+            if (Files.isRegularFile(file)) return file;
+        }
+        return null;
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+}